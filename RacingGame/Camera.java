@@ -0,0 +1,194 @@
+/**
+ * The Camera decides which part of the world the race view shows and how large.
+ *
+ * A point in the world is drawn at {@code world * zoom + offset} on screen. In
+ * whole-track mode the camera shows the oval as laid out, at zoom 1. The player
+ * can zoom about the mouse and drag the view, which leaves the camera free where
+ * it was put, or have it follow one car, or whichever car the player drives,
+ * keeping that car in the middle of the view at the chosen zoom.
+ *
+ * Every change to the view bumps a version number, so the race view knows when
+ * its cached background and dirty regions no longer line up with the screen.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+public class Camera {
+    /** How the camera moves. */
+    public enum Mode {
+        /** The oval as laid out, at zoom 1. */
+        WHOLE_TRACK,
+        /** Stays where the player zoomed and dragged it. */
+        FREE,
+        /** Keeps one car, by ID, in the middle. */
+        FOLLOW_CAR,
+        /** Keeps the player's car in the middle. */
+        FOLLOW_PLAYER
+    }
+
+    public static final double MIN_ZOOM = 0.25;
+    public static final double MAX_ZOOM = 8;
+
+    private Mode mode = Mode.WHOLE_TRACK;
+    private int followId;
+    private double zoom = 1;
+    private double offsetX;
+    private double offsetY;
+    private long version;
+
+    /** @return how the camera moves */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** @return ID of the car followed in {@link Mode#FOLLOW_CAR} */
+    public int getFollowId() {
+        return followId;
+    }
+
+    /** Shows the whole oval as laid out. */
+    public void showWholeTrack() {
+        mode = Mode.WHOLE_TRACK;
+        setView(1, 0, 0);
+    }
+
+    /** Leaves the camera where it is until the player moves it. */
+    public void free() {
+        mode = Mode.FREE;
+    }
+
+    /**
+     * Keeps a car in the middle of the view.
+     * @param carId ID of the car to follow
+     */
+    public void follow(int carId) {
+        mode = Mode.FOLLOW_CAR;
+        followId = carId;
+    }
+
+    /** Keeps the player's car in the middle of the view. */
+    public void followPlayer() {
+        mode = Mode.FOLLOW_PLAYER;
+    }
+
+    /**
+     * Zooms about a point on screen, which stays over the same spot of the world.
+     * A camera following a car keeps following it; one showing the whole track is freed.
+     * @param factor  how much larger things get; below 1 zooms out
+     * @param screenX X of the point on screen
+     * @param screenY Y of the point on screen
+     */
+    public void zoomAt(double factor, double screenX, double screenY) {
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        if (mode == Mode.WHOLE_TRACK) {
+            mode = Mode.FREE;
+        }
+        setView(newZoom, screenX - worldX * newZoom, screenY - worldY * newZoom);
+    }
+
+    /**
+     * Moves the view by a distance on screen and frees the camera.
+     * @param dx pixels to move right
+     * @param dy pixels to move down
+     */
+    public void pan(double dx, double dy) {
+        mode = Mode.FREE;
+        setView(zoom, offsetX + dx, offsetY + dy);
+    }
+
+    /**
+     * Moves a following camera onto its car. Call once per frame before drawing.
+     * @param cars   the cars in the race
+     * @param width  width of the view
+     * @param height height of the view
+     */
+    public void update(List<Car> cars, int width, int height) {
+        if (mode != Mode.FOLLOW_CAR && mode != Mode.FOLLOW_PLAYER) {
+            return;
+        }
+        for (Car car : cars) {
+            if (mode == Mode.FOLLOW_CAR ? car.getId() == followId : car.isHumanControlled()) {
+                double x = car.getCurrentX() + RaceDisplay.CAR_WIDTH / 2.0;
+                double y = car.getCurrentY() + RaceDisplay.CAR_HEIGHT / 2.0;
+                setView(zoom, width / 2.0 - x * zoom, height / 2.0 - y * zoom);
+                return;
+            }
+        }
+    }
+
+    private void setView(double zoom, double offsetX, double offsetY) {
+        if (zoom != this.zoom || offsetX != this.offsetX || offsetY != this.offsetY) {
+            this.zoom = zoom;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            version++;
+        }
+    }
+
+    /**
+     * Sets a graphics context to draw in world coordinates.
+     * @param g2 graphics drawing in screen coordinates
+     */
+    public void apply(Graphics2D g2) {
+        g2.translate(offsetX, offsetY);
+        g2.scale(zoom, zoom);
+    }
+
+    /**
+     * Returns the part of the world the view shows.
+     * @param width  width of the view
+     * @param height height of the view
+     * @return the visible world rectangle
+     */
+    public Rectangle2D getVisibleWorld(int width, int height) {
+        return new Rectangle2D.Double(toWorldX(0), toWorldY(0), width / zoom, height / zoom);
+    }
+
+    /**
+     * Returns the screen rectangle covering a square around a point of the world.
+     * @param x      world X of the centre
+     * @param y      world Y of the centre
+     * @param extent half the side of the square, in world units
+     * @return the square on screen, rounded outward
+     */
+    public Rectangle toScreen(float x, float y, int extent) {
+        int x0 = (int) Math.floor((x - extent) * zoom + offsetX);
+        int y0 = (int) Math.floor((y - extent) * zoom + offsetY);
+        int x1 = (int) Math.ceil((x + extent) * zoom + offsetX);
+        int y1 = (int) Math.ceil((y + extent) * zoom + offsetY);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    private double toWorldX(double screenX) {
+        return (screenX - offsetX) / zoom;
+    }
+
+    private double toWorldY(double screenY) {
+        return (screenY - offsetY) / zoom;
+    }
+
+    /** @return pixels per world unit */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /** @return screen X of world X zero */
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    /** @return screen Y of world Y zero */
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    /** @return a number that changes whenever the view does */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -6,24 +6,45 @@
  *
  * Developed by: Abraham Arocha
  */
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Car {
     private final int id;
     private final Engine engine;
-    private final List<Wheel> wheels;
+    // Tyres, packed: per-wheel condition (1.0 => new, 0 => worn out) and base grip.
+    private final float[] wheelCondition;
+    private final float[] wheelGrip;
+    private final float[] startingCondition;
+    private float effectiveGrip;
     private final Route route;
     private float currentSpeed;
-    private float totalTime;
+    private long totalTicks;    // race time in ticks of the SimClock, pits included
     private boolean isFinished;
 
     // For movement interpolation along the oval.
-    private Location startLocation;
-    private Location endLocation;
-    private float travelProgress;  // fraction in [0..1] for the current segment
-    private static final float UPDATE_INTERVAL = 0.1f;
-    private static final float MOVEMENT_FACTOR = 5.0f;
-    private static final int PIT_STOP_DURATION = 20;
+    private float lapDistance;  // distance travelled since the start of the current lap
+    private int checkpoint;     // index of the route location the car last passed
+    static final float UPDATE_INTERVAL = SimClock.TICK_SECONDS;
+    static final float MOVEMENT_FACTOR = 5.0f;
+    static final int PIT_STOP_DURATION = 20;
+
+    // Speed model: engine acceleration scaled by tyre grip, cornering limited by grip and curvature.
+    static final float ACCELERATION_SCALE = 0.1f;
+    static final float BRAKING_PER_TICK = 0.5f;
+    private static final float CORNERING_FACTOR = 1.25f;
+    static final float PIT_EXIT_SPEED = 2f;
+
+    // Tyres are changed once their grip falls below this fraction of new.
+    static final float WORN_GRIP_FRACTION = 0.35f;
+
+    /** Radius used to turn distance travelled into track angle. */
+    public static final float EFFECTIVE_RADIUS = 0.5f * (RaceDisplay.TRACK_A + RaceDisplay.TRACK_B);
+
+    /** The maximum lateral offset that keeps a car on the asphalt. */
+    public static final float MAX_LATERAL_OFFSET = RaceDisplay.TRACK_HALF_WIDTH - (RaceDisplay.CAR_WIDTH / 2f);
 
     // Current position for rendering.
     private float currentX;
@@ -33,15 +54,32 @@ public class Car {
     // Pit-stop handling.
     private int pitStopTimer = 0;
 
+    // Pit strategy: the lap at whose start the car pits whatever its tyres (0 for no
+    // planned stop), and whether it pits on its own once the tyres are worn.
+    private int plannedPitLap;
+    private boolean pitsWhenWorn = true;
+
     // Lateral offset for “lane” movement within the track width.
     private float lateralOffset = 0f;
     private final float maxLateralOffset;
 
+    // Human-controlled cars are steered by a player instead of the AI nudges.
+    private boolean humanControlled;
+
+    // How the AI steers this car while no player is driving it.
+    private DriverStrategy driverStrategy = new RandomDriver();
+
+    // Steering chosen by the race's planning pass, applied on the next move.
+    private float plannedSteer;
+
+    // Whether this car narrates its events to the race display.
+    private boolean logging = true;
+
     // Multi-lap logic.
     private int totalLaps = 1;
     private int currentLap = 1;
-    private float bestLapTime = Float.MAX_VALUE;
-    private float lapStartTime = 0f;
+    private long bestLapTicks = Long.MAX_VALUE;
+    private long lapStartTick = 0;
 
     /**
      * Constructs a Car with a given ID, engine, wheel list, and route.
@@ -54,22 +92,26 @@ public class Car {
     public Car(int id, Engine engine, List<Wheel> wheels, Route route) {
         this.id = id;
         this.engine = engine;
-        this.wheels = wheels;
+        int wheelCount = wheels.size();
+        this.wheelCondition = new float[wheelCount];
+        this.wheelGrip = new float[wheelCount];
+        this.startingCondition = new float[wheelCount];
+        for (int i = 0; i < wheelCount; i++) {
+            startingCondition[i] = wheels.get(i).getCondition();
+            wheelGrip[i] = wheels.get(i).getBaseGripLevel();
+        }
+        fitTyres(startingCondition);
         this.route = route;
-        this.totalTime = 0f;
+        this.totalTicks = 0;
         this.isFinished = false;
 
         // The maximum offset so the car remains on the asphalt.
-        this.maxLateralOffset = RaceDisplay.TRACK_HALF_WIDTH - (RaceDisplay.CAR_WIDTH / 2f);
+        this.maxLateralOffset = MAX_LATERAL_OFFSET;
 
         // Initialize from the route’s first checkpoint.
-        this.startLocation = route.getLocations().get(0);
-        this.endLocation = route.getNextLocation();
-        this.travelProgress = 0f;
+        this.lapDistance = 0f;
 
-        this.currentX = startLocation.getX();
-        this.currentY = startLocation.getY();
-        this.currentAngle = startLocation.getAngle();
+        placeOnTrack();
     }
 
     // Basic getters
@@ -94,12 +136,27 @@ public class Car {
      */
     public Route getRoute() { return route; }
 
+    /**
+     * Returns the index in the route of the checkpoint the car last passed.
+     * The route itself is shared with other cars; this cursor is the car's own.
+     *
+     * @return checkpoint index
+     */
+    public int getCheckpointIndex() { return checkpoint; }
+
     /**
      * Returns the total elapsed time for this car.
      *
      * @return total time in seconds
      */
-    public float getTotalTime() { return totalTime; }
+    public float getTotalTime() { return (float) SimClock.toSeconds(totalTicks); }
+
+    /**
+     * Returns the total elapsed time for this car in simulation ticks.
+     *
+     * @return total time in ticks
+     */
+    public long getTotalTicks() { return totalTicks; }
 
     /**
      * Indicates whether the car has finished the race.
@@ -136,6 +193,212 @@ public class Car {
      */
     public float getCurrentAngle() { return currentAngle; }
 
+    /**
+     * Gets the car's lateral offset from the track centre line.
+     *
+     * @return lateral offset in pixels (positive is towards the right normal)
+     */
+    public float getLateralOffset() { return lateralOffset; }
+
+    /**
+     * Gets the number of ticks the car still has to spend in the pits.
+     *
+     * @return remaining pit-stop ticks, 0 when racing
+     */
+    public int getPitStopTimer() { return pitStopTimer; }
+
+    /**
+     * Plans a pit stop at the start of a lap; the current lap or an earlier one means
+     * the next tick. The stop is made whatever the tyres' condition.
+     *
+     * @param lap lap to pit on, or 0 to drop the planned stop
+     */
+    public void planPitStop(int lap) { plannedPitLap = Math.max(0, lap); }
+
+    /**
+     * Gets the lap the car has a planned pit stop on.
+     *
+     * @return lap of the planned stop, 0 for none
+     */
+    public int getPlannedPitLap() { return plannedPitLap; }
+
+    /**
+     * Sets whether the car pits on its own for fresh tyres once they are worn.
+     * A car that does not runs on worn tyres until it is too slow to go on.
+     *
+     * @param pitsWhenWorn true to pit when worn, as cars do by default
+     */
+    public void setPitsWhenWorn(boolean pitsWhenWorn) { this.pitsWhenWorn = pitsWhenWorn; }
+
+    /**
+     * Indicates whether the car pits on its own for fresh tyres once they are worn.
+     *
+     * @return true if it does
+     */
+    public boolean isPitsWhenWorn() { return pitsWhenWorn; }
+
+    /**
+     * Indicates whether a player steers this car.
+     *
+     * @return true for player cars, false for AI cars
+     */
+    public boolean isHumanControlled() { return humanControlled; }
+
+    /**
+     * Hands the car to a player or back to the AI.
+     *
+     * @param humanControlled true if a player steers this car
+     */
+    public void setHumanControlled(boolean humanControlled) { this.humanControlled = humanControlled; }
+
+    /**
+     * Turns narration of this car's events on or off. Headless races such as
+     * tuning runs switch it off.
+     *
+     * @param logging true to send messages to the race display
+     */
+    public void setLogging(boolean logging) { this.logging = logging; }
+
+    /**
+     * Sends a message about this car to the race display if logging is on.
+     *
+     * @param message the message
+     */
+    void log(String message) {
+        if (logging) {
+            RaceDisplay.log(message);
+        }
+    }
+
+    /**
+     * Returns the strategy the AI uses to steer this car.
+     *
+     * @return the driver strategy
+     */
+    public DriverStrategy getDriverStrategy() { return driverStrategy; }
+
+    /**
+     * Sets the strategy the AI uses to steer this car.
+     *
+     * @param driverStrategy the driver strategy
+     */
+    public void setDriverStrategy(DriverStrategy driverStrategy) { this.driverStrategy = driverStrategy; }
+
+    /**
+     * Returns the average effective grip of the car's tyres.
+     *
+     * @return grip x condition averaged over the wheels
+     */
+    public float getEffectiveGrip() { return effectiveGrip; }
+
+    /**
+     * Returns the base grip of the car's tyres when new, averaged over the wheels.
+     *
+     * @return average base grip
+     */
+    public float getTyreGrip() {
+        float total = 0f;
+        for (float grip : wheelGrip) {
+            total += grip;
+        }
+        return total / wheelGrip.length;
+    }
+
+    /**
+     * Returns the condition the car's tyres start the race in, averaged over the wheels.
+     *
+     * @return average starting condition
+     */
+    public float getStartingCondition() {
+        float total = 0f;
+        for (float condition : startingCondition) {
+            total += condition;
+        }
+        return total / startingCondition.length;
+    }
+
+    /**
+     * Returns a copy of each wheel's base grip.
+     *
+     * @return per-wheel grip
+     */
+    float[] copyWheelGrip() {
+        return wheelGrip.clone();
+    }
+
+    /**
+     * Returns a copy of the condition each wheel starts the race in.
+     *
+     * @return per-wheel starting condition
+     */
+    float[] copyStartingCondition() {
+        return startingCondition.clone();
+    }
+
+    /**
+     * Builds a car with the same ID, engine, tyres, route, laps and driver, for a copy
+     * of the race. Only reads this car; the copy's state is then set from a snapshot.
+     *
+     * @return the new car
+     */
+    Car copy() {
+        List<Wheel> wheels = new ArrayList<>(wheelGrip.length);
+        for (int i = 0; i < wheelGrip.length; i++) {
+            wheels.add(new Wheel(startingCondition[i], wheelGrip[i]));
+        }
+        Car car = new Car(id, engine, wheels, route);
+        car.totalLaps = totalLaps;
+        car.driverStrategy = driverStrategy;
+        return car;
+    }
+
+    /**
+     * Returns the fastest the tyres allow the car to take the track at its current angle.
+     * The limit falls where the oval is tightest and as the tyres wear.
+     *
+     * @return cornering speed limit
+     */
+    public float getCorneringLimit() {
+        return corneringLimit(currentAngle, effectiveGrip);
+    }
+
+    /**
+     * Returns the cornering speed limit at a track angle for a given tyre grip.
+     *
+     * @param angle track angle in radians
+     * @param grip  effective grip of the tyres
+     * @return cornering speed limit
+     */
+    static float corneringLimit(float angle, float grip) {
+        float a = RaceDisplay.TRACK_A;
+        float b = RaceDisplay.TRACK_B;
+        float sin = (float) Math.sin(angle);
+        float cos = (float) Math.cos(angle);
+        float q = a * a * sin * sin + b * b * cos * cos;
+        float radius = q * (float) Math.sqrt(q) / (a * b);
+        return CORNERING_FACTOR * (float) Math.sqrt(grip * radius);
+    }
+
+    /**
+     * Returns how far round the oval the car travels per tick at its current speed.
+     *
+     * @return track angle covered per tick, in radians
+     */
+    public float getAngularSpeed() {
+        return currentSpeed * UPDATE_INTERVAL * MOVEMENT_FACTOR / EFFECTIVE_RADIUS;
+    }
+
+    /**
+     * Asks the driver strategy for this tick's steering. Called by the race for
+     * every AI car in one pass before any car moves.
+     *
+     * @param obstacles index of the obstacles on the track
+     * @param random    the race's random source
+     */
+    void planSteering(ObstacleIndex obstacles, Randomizer random) {
+        plannedSteer = driverStrategy.steer(this, obstacles, random);
+    }
+
     // Multi-lap getters/setters
     /**
      * Gets the current lap number the car is on.
@@ -144,6 +407,13 @@ public class Car {
      */
     public int getCurrentLap() { return currentLap; }
 
+    /**
+     * Gets the distance the car has covered since the start of its current lap.
+     *
+     * @return distance into the lap
+     */
+    public float getLapDistance() { return lapDistance; }
+
     /**
      * Gets the total number of laps for the race.
      *
@@ -158,12 +428,21 @@ public class Car {
      */
     public void setTotalLaps(int laps) { this.totalLaps = laps; }
 
+    /**
+     * Returns the best (shortest) lap time recorded so far in simulation ticks.
+     *
+     * @return best lap in ticks, or {@code Long.MAX_VALUE} before the first lap is done
+     */
+    public long getBestLapTicks() { return bestLapTicks; }
+
     /**
      * Returns the best (shortest) lap time recorded so far.
      *
-     * @return best lap time
+     * @return best lap time in seconds, or {@code Float.MAX_VALUE} before the first lap is done
      */
-    public float getBestLapTime() { return bestLapTime; }
+    public float getBestLapTime() {
+        return bestLapTicks == Long.MAX_VALUE ? Float.MAX_VALUE : (float) SimClock.toSeconds(bestLapTicks);
+    }
 
     /**
      * Starts the car's race logic by setting the initial speed.
@@ -172,7 +451,7 @@ public class Car {
     public void start() {
         // Begin at max speed
         updateSpeedToMax();
-        RaceDisplay.log("Car " + id + " started.");
+        log("Car " + id + " started.");
     }
 
     /**
@@ -183,9 +462,42 @@ public class Car {
         currentSpeed = engine.getMaxSpeed();
     }
 
+    /**
+     * Moves the speed towards the lower of the engine's top speed and the cornering limit.
+     * Below it the car accelerates with the engine's power put down through the tyres;
+     * above it, after a boost or going into a tighter corner, it brakes.
+     */
+    private void updateSpeed() {
+        float limit = Math.min(engine.getMaxSpeed(), getCorneringLimit());
+        if (currentSpeed < limit) {
+            float gain = engine.getAcceleration() * effectiveGrip * ACCELERATION_SCALE * UPDATE_INTERVAL;
+            currentSpeed = Math.min(limit, currentSpeed + gain);
+        } else {
+            currentSpeed = Math.max(limit, currentSpeed - BRAKING_PER_TICK);
+        }
+    }
+
+    /**
+     * Sends the car to the pits, where it is fixed and gets a fresh set of tyres.
+     */
+    private void enterPit() {
+        pitStopTimer = PIT_STOP_DURATION;
+        float[] fresh = new float[wheelCondition.length];
+        Arrays.fill(fresh, 1f);
+        fitTyres(fresh);
+    }
+
+    /**
+     * Sets every wheel's condition and recomputes the effective grip.
+     */
+    private void fitTyres(float[] condition) {
+        System.arraycopy(condition, 0, wheelCondition, 0, wheelCondition.length);
+        effectiveGrip = Wheel.averageGrip(wheelCondition, wheelGrip);
+    }
+
     /**
      * Adjusts the car's lateral offset within the track width.
-     * AI cars use this for simple steering.
+     * Players and AI cars both steer through this.
      *
      * @param delta change in lateral offset
      */
@@ -201,10 +513,25 @@ public class Car {
 
     /**
      * Updates the car's position during each simulation step.
-     * Handles pit-stop delays, wheel wear, AI steering, and route progression.
+     * Handles pit-stop delays, wheel wear, speed, AI steering, and route progression.
      */
     public void move() {
-        if (isFinished) return;
+        if (prepareMove()) {
+            updatePosition();
+        }
+    }
+
+    /**
+     * Does everything {@link #move()} does before the car changes position: pits,
+     * tyre wear, speed and steering.
+     *
+     * @return true if the car drives on this tick, false if it is finished or in the pits
+     */
+    boolean prepareMove() {
+        if (isFinished) return false;
+
+        // Accumulate total race time, time in the pits included
+        totalTicks++;
 
         // Pit-stop check
         if (pitStopTimer > 0) {
@@ -212,162 +539,138 @@ public class Car {
             setCurrentSpeed(0f);
             pitStopTimer--;
             if (pitStopTimer == 0) {
-                RaceDisplay.log("Car " + id + " is fixed and back in the race.");
-                updateSpeedToMax();  // restore to full speed after pit
+                log("Car " + id + " is fixed and back in the race.");
+                currentSpeed = PIT_EXIT_SPEED;  // accelerate away from the pit lane
             }
-            return;
+            return false;
         }
 
         // If speed is extremely low => pit
         if (currentSpeed < 0.1f) {
-            pitStopTimer = PIT_STOP_DURATION;
-            RaceDisplay.log("Car " + id + " has slowed too much and is going to the pits.");
-            return;
+            enterPit();
+            log("Car " + id + " has slowed too much and is going to the pits.");
+            return false;
         }
 
-        // Simulate wheel wear
-        for (Wheel wheel : wheels) {
-            wheel.wearDown();
+        // A planned stop is made as soon as its lap has begun
+        if (plannedPitLap != 0 && currentLap >= plannedPitLap) {
+            plannedPitLap = 0;
+            enterPit();
+            log("Car " + id + " is making its planned pit stop.");
+            return false;
         }
 
-        // Accumulate total race time
-        totalTime += UPDATE_INTERVAL;
+        // If the tyres have lost most of their grip => pit for a fresh set
+        if (pitsWhenWorn && effectiveGrip < WORN_GRIP_FRACTION * Wheel.averageGrip(startingCondition, wheelGrip)) {
+            enterPit();
+            log("Car " + id + " is pitting for fresh tyres.");
+            return false;
+        }
 
-        // AI cars (id != 1) do small lateral nudges (not speed changes)
-        if (id != 1) {
-            float randomDelta = Randomizer.generateRandomLateralDelta();
-            adjustLateralOffset(randomDelta);
+        // Wear the tyres over this tick's distance, then accelerate or brake to what they allow
+        effectiveGrip = Wheel.wear(wheelCondition, wheelGrip, currentSpeed * UPDATE_INTERVAL * MOVEMENT_FACTOR);
+        updateSpeed();
+
+        // AI cars steer as their driver strategy planned (not speed changes)
+        if (!humanControlled) {
+            adjustLateralOffset(plannedSteer);
         }
+        plannedSteer = 0f;
 
-        // Update position with potential sub-steps
-        updatePosition();
+        return true;
     }
 
     /**
      * Updates the car's position on the route using interpolation logic.
      * Handles lap completion, checkpoint crossing, and rendering position updates.
+     * However far the car travels in one update, finding where it ends up costs the same.
      */
     private void updatePosition() {
         if (isFinished) return;
 
-        float centerX = RaceDisplay.TRACK_CENTER_X;
-        float centerY = RaceDisplay.TRACK_CENTER_Y;
-        float a = RaceDisplay.TRACK_A;
-        float b = RaceDisplay.TRACK_B;
-
-        // Current segment angles
-        float startAngle = startLocation.getAngle();
-        float endAngle = (endLocation != null) ? endLocation.getAngle() : startAngle;
+        float lapLength = route.getLapLength();
+        float distance = lapDistance + currentSpeed * UPDATE_INTERVAL * MOVEMENT_FACTOR;
 
-        // Ensure a positive segment angle
-        float segmentAngle = endAngle - startAngle;
-        if (segmentAngle < 0) {
-            segmentAngle += 2f * (float)Math.PI;
+        // Crossed the end of the route => completed one or more laps
+        if (distance >= lapLength) {
+            int lapsDone = lapLength > 0f ? (int) (distance / lapLength) : totalLaps;
+            if (!completeLaps(lapsDone)) {
+                return;
+            }
+            distance = Math.max(0f, distance - lapsDone * lapLength);
         }
+        lapDistance = distance;
+        placeOnTrack();
+    }
 
-        // Approximate radius as average of a & b
-        float effectiveRadius = 0.5f * (a + b);
-        float arcLength = segmentAngle * effectiveRadius;
-        if (arcLength < 0.0001f) {
-            arcLength = 0.0001f;
-        }
+    /**
+     * Adds the car to a {@link CarKinematics}, whose kernel then moves it in place of
+     * {@link #updatePosition()}.
+     *
+     * @param kinematics kinematics for the car's route
+     * @return the car's index in it
+     */
+    int addTo(CarKinematics kinematics) {
+        return kinematics.addCar(checkpoint, lapDistance, currentSpeed, lateralOffset);
+    }
 
-        // fraction of the current segment to travel in this update
-        float distanceIncrement = currentSpeed * UPDATE_INTERVAL * MOVEMENT_FACTOR;
-        float rawIncrement = distanceIncrement / arcLength;
-
-        float remaining = rawIncrement;
-
-        // Break it into sub-steps in case we cross multiple checkpoints in one update
-        while (remaining > 0f && !isFinished) {
-            float spaceLeft = 1f - travelProgress;
-            float step = Math.min(spaceLeft, remaining);
-            travelProgress += step;
-            remaining -= step;
-
-            // If we just reached or passed this checkpoint boundary
-            if (travelProgress >= 1.0f) {
-                // leftover fraction
-                travelProgress -= 1.0f;
-                // move to next checkpoint index
-                route.advance();
-
-                // If we just finished the route => we completed a lap
-                if (route.isComplete()) {
-                    float lapTime = totalTime - lapStartTime;
-                    if (lapTime < bestLapTime) {
-                        bestLapTime = lapTime;
-                    }
-                    lapStartTime = totalTime;
-
-                    if (currentLap < totalLaps) {
-                        // Start the next lap
-                        currentLap++;
-
-                        // EXACT final checkpoint coords & angle
-                        float finalX = (endLocation != null) ? endLocation.getX() : currentX;
-                        float finalY = (endLocation != null) ? endLocation.getY() : currentY;
-                        float finalAngle = (endLocation != null) ? endLocation.getAngle() : currentAngle;
-
-                        // Reset the route for the new lap
-                        route.reset();
-                        travelProgress = 0f;
-
-                        // Overwrite route's first checkpoint so we truly start next lap
-                        Location routeFirst = route.getLocations().get(0);
-                        Location customStart = new Location(
-                                routeFirst.getName(),
-                                finalX,
-                                finalY,
-                                finalAngle
-                        );
-                        this.startLocation = customStart;
-                        this.endLocation = route.getNextLocation();
-
-                        RaceDisplay.log("Car " + id + " begins Lap "
-                                + currentLap + " of " + totalLaps + ".");
-
-                        // Stop leftover movement to avoid jumps
-                        break;
-                    } else {
-                        // Completed all laps => finalize
-                        travelProgress = 1f; // ensures final interpolation is at end
-                        isFinished = true;
-                        RaceDisplay.log("Car " + id + " has FINISHED the race!");
-                        break;
-                    }
-                } else {
-                    // Crossed an intermediate checkpoint => proceed
-                    startLocation = endLocation;
-                    endLocation = route.getNextLocation();
-
-                    // Restore speed to max whenever crossing a checkpoint
-                    updateSpeedToMax();
-
-                    // Recompute for next segment
-                    startAngle = startLocation.getAngle();
-                    endAngle = (endLocation != null) ? endLocation.getAngle() : startAngle;
-                    segmentAngle = endAngle - startAngle;
-                    if (segmentAngle < 0) {
-                        segmentAngle += 2f * (float)Math.PI;
-                    }
-                    arcLength = segmentAngle * effectiveRadius;
-                    if (arcLength < 0.0001f) {
-                        arcLength = 0.0001f;
-                    }
-                }
-            }
+    /**
+     * Takes the position a {@link CarKinematics} kernel moved the car to, with the
+     * laps it completed on the way, as {@link #updatePosition()} would.
+     *
+     * @param kinematics kinematics for the car's route, after a step
+     * @param i          the car's index in it
+     */
+    void completeMove(CarKinematics kinematics, int i) {
+        int lapsDone = kinematics.getLaps(i);
+        if (lapsDone > 0 && !completeLaps(lapsDone)) {
+            return;
         }
+        checkpoint = kinematics.getSegment(i);
+        lapDistance = kinematics.getLapDistance(i);
+        currentAngle = kinematics.getAngle(i);
+        currentX = kinematics.getX(i);
+        currentY = kinematics.getY(i);
+    }
 
-        // Finally, interpolate angle for rendering
-        float sAngle = startLocation.getAngle();
-        float eAngle = (endLocation != null) ? endLocation.getAngle() : sAngle;
-        float segAngle = eAngle - sAngle;
-        if (segAngle < 0) {
-            segAngle += 2f * (float)Math.PI;
+    /**
+     * Records the end of a lap during this tick's move and finishes the car after its last.
+     *
+     * @param lapsDone laps completed
+     * @return true if the car is still racing, false if it just finished
+     */
+    private boolean completeLaps(int lapsDone) {
+        long lapTicks = totalTicks - lapStartTick;
+        if (lapTicks < bestLapTicks) {
+            bestLapTicks = lapTicks;
+        }
+        lapStartTick = totalTicks;
+
+        if (currentLap + lapsDone > totalLaps) {
+            // Completed all laps => finalize at the end of the route
+            lapDistance = route.getLapLength();
+            isFinished = true;
+            placeOnTrack();
+            log("Car " + id + " has FINISHED the race!");
+            return false;
         }
-        currentAngle = sAngle + travelProgress * segAngle;
-        currentAngle = normalizeAngle(currentAngle);
+        currentLap += lapsDone;
+        log("Car " + id + " begins Lap "
+                + currentLap + " of " + totalLaps + ".");
+        return true;
+    }
+
+    /**
+     * Works out the checkpoint, angle and rendering position for the car's distance into the lap.
+     */
+    private void placeOnTrack() {
+        float centerX = RaceDisplay.TRACK_CENTER_X;
+        float centerY = RaceDisplay.TRACK_CENTER_Y;
+        float a = RaceDisplay.TRACK_A;
+        float b = RaceDisplay.TRACK_B;
+
+        checkpoint = route.segmentAt(lapDistance);
+        currentAngle = normalizeAngle(route.angleAt(lapDistance, checkpoint));
 
         // Compute base ellipse position
         float baseX = centerX + a * (float)Math.cos(currentAngle);
@@ -395,25 +698,77 @@ public class Car {
      * Used when starting a new race.
      */
     public void reset() {
-        totalTime = 0f;
+        totalTicks = 0;
         isFinished = false;
         pitStopTimer = 0;
-        route.reset();
-        travelProgress = 0f;
+        plannedPitLap = 0;
+        lapDistance = 0f;
         lateralOffset = 0f;
 
         currentLap = 1;
-        bestLapTime = Float.MAX_VALUE;
-        lapStartTime = 0f;
+        bestLapTicks = Long.MAX_VALUE;
+        lapStartTick = 0;
+        fitTyres(startingCondition);
 
         // Re-init from the route’s first checkpoint
-        startLocation = route.getLocations().get(0);
-        endLocation = route.getNextLocation();
-        currentX = startLocation.getX();
-        currentY = startLocation.getY();
-        currentAngle = startLocation.getAngle();
+        placeOnTrack();
+
+        log("Car " + id + " has been reset.");
+    }
 
-        RaceDisplay.log("Car " + id + " has been reset.");
+    /**
+     * Writes the car's complete simulation state for {@link RaceSnapshot}.
+     *
+     * @param out destination buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putInt(id);
+        out.put((byte) ((isFinished ? 1 : 0) | (humanControlled ? 2 : 0)));
+        out.putFloat(currentSpeed).putLong(totalTicks).putFloat(lapDistance);
+        out.putInt(pitStopTimer).putFloat(lateralOffset);
+        out.putInt(plannedPitLap).put((byte) (pitsWhenWorn ? 1 : 0));
+        out.putInt(totalLaps).putInt(currentLap).putLong(bestLapTicks).putLong(lapStartTick);
+
+        out.putInt(wheelCondition.length);
+        for (float condition : wheelCondition) {
+            out.putFloat(condition);
+        }
+    }
+
+    /**
+     * Restores state written by {@link #writeState(ByteBuffer)} for a car with the same ID and route.
+     *
+     * @param in source buffer
+     */
+    public void readState(ByteBuffer in) {
+        int savedId = in.getInt();
+        if (savedId != id) {
+            throw new IllegalArgumentException("Saved state is for car " + savedId + ", not car " + id);
+        }
+        byte flags = in.get();
+        isFinished = (flags & 1) != 0;
+        humanControlled = (flags & 2) != 0;
+        currentSpeed = in.getFloat();
+        totalTicks = in.getLong();
+        lapDistance = in.getFloat();
+        pitStopTimer = in.getInt();
+        lateralOffset = in.getFloat();
+        plannedPitLap = in.getInt();
+        pitsWhenWorn = in.get() != 0;
+        totalLaps = in.getInt();
+        currentLap = in.getInt();
+        bestLapTicks = in.getLong();
+        lapStartTick = in.getLong();
+        placeOnTrack();
+
+        int wheelCount = in.getInt();
+        if (wheelCount != wheelCondition.length) {
+            throw new IllegalArgumentException("Saved state has " + wheelCount + " wheels for car " + id);
+        }
+        for (int i = 0; i < wheelCount; i++) {
+            wheelCondition[i] = in.getFloat();
+        }
+        effectiveGrip = Wheel.averageGrip(wheelCondition, wheelGrip);
     }
 
     /**
@@ -0,0 +1,373 @@
+/**
+ * The CarKinematics class moves large numbers of cars round the oval at once.
+ *
+ * Car state is held in parallel float arrays (structure of arrays) rather than in
+ * {@link Car} objects, so one tick is the same arithmetic over every index:
+ * advance segment progress by speed x interval / arc length, interpolate the track
+ * angle across the segment, look up the ellipse point and add the lateral offset
+ * along the normal. Cars that reach a checkpoint are moved onto their next segment
+ * one at a time by {@link #stepCar(int)}.
+ *
+ * Sine and cosine come from short polynomials rather than {@link Math}, and every
+ * step is written as the same sequence of float operations, so the scalar loop here and the
+ * optional SIMD kernel in {@code vector/VectorKinematics.java} give bit-identical
+ * results. {@link #bestKernel()} loads the SIMD kernel when it has been compiled and
+ * the JVM was started with {@code --add-modules jdk.incubator.vector}, and falls
+ * back to the scalar kernel otherwise.
+ *
+ * A {@link Race} given a kernel with {@link Race#setKinematics(Kernel)} moves its
+ * cars through one instance per route, made by {@link #forRoute(Route, int)}, in
+ * place of each car's own position update.
+ */
+public class CarKinematics {
+    /**
+     * Advances every car in a {@link CarKinematics} by one tick.
+     */
+    public interface Kernel {
+        /**
+         * Moves every car one tick.
+         * @param cars the cars to move
+         */
+        void step(CarKinematics cars);
+
+        /** @return a short name for reports */
+        String getName();
+    }
+
+    /** The plain loop over {@link #stepCar(int)}. */
+    public static final Kernel SCALAR = new Kernel() {
+        @Override
+        public void step(CarKinematics cars) {
+            for (int i = 0; i < cars.size; i++) {
+                cars.stepCar(i);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    };
+
+    static final float PI = (float) Math.PI;
+    static final float HALF_PI = PI / 2f;
+    static final float TWO_PI = 2f * PI;
+    static final float DISTANCE_PER_SPEED = Car.UPDATE_INTERVAL * Car.MOVEMENT_FACTOR;
+    static final float CENTER_X = RaceDisplay.TRACK_CENTER_X;
+    static final float CENTER_Y = RaceDisplay.TRACK_CENTER_Y;
+    static final float A = RaceDisplay.TRACK_A;
+    static final float B = RaceDisplay.TRACK_B;
+
+    // Taylor coefficients for sin and cos on [-pi/2, pi/2]; both errors are below 1e-7.
+    static final float S3 = -1f / 6f;
+    static final float S5 = 1f / 120f;
+    static final float S7 = -1f / 5040f;
+    static final float S9 = 1f / 362880f;
+    static final float S11 = -1f / 39916800f;
+    static final float C2 = -1f / 2f;
+    static final float C4 = 1f / 24f;
+    static final float C6 = -1f / 720f;
+    static final float C8 = 1f / 40320f;
+    static final float C10 = -1f / 3628800f;
+    static final float C12 = 1f / 479001600f;
+
+    private final float[] checkpoints;
+    private final float[] sweeps;
+    private final float[] arcs;
+    private final float[] distances;  // from the lap start to each segment
+    int size;
+
+    // Per-car state; kernels read and write these directly.
+    final float[] progress;
+    final float[] segmentStart;
+    final float[] segmentSweep;
+    final float[] arcLength;
+    final float[] speed;
+    final float[] lateral;
+    final float[] angle;
+    final float[] x;
+    final float[] y;
+    final int[] segment;
+    final int[] laps;
+
+    /**
+     * Creates room for cars on a track with the given checkpoints.
+     * @param capacity    maximum number of cars
+     * @param checkpoints checkpoint angles in increasing order within [0, 2*pi)
+     */
+    public CarKinematics(int capacity, float[] checkpoints) {
+        this(capacity, checkpoints.clone(), sweepsBetween(checkpoints), null);
+    }
+
+    /**
+     * Creates room for cars on segments given by their start angles and sweeps.
+     * @param distances distance from the lap start to each segment, or null to add up the arcs
+     */
+    private CarKinematics(int capacity, float[] starts, float[] sweeps, float[] distances) {
+        this.checkpoints = starts;
+        this.sweeps = sweeps;
+        int n = starts.length;
+        arcs = new float[n];
+        this.distances = distances != null ? distances : new float[n];
+        float distance = 0f;
+        for (int k = 0; k < n; k++) {
+            arcs[k] = Math.max(0.0001f, sweeps[k] * Car.EFFECTIVE_RADIUS);
+            if (distances == null) {
+                this.distances[k] = distance;
+                distance += arcs[k];
+            }
+        }
+        progress = new float[capacity];
+        segmentStart = new float[capacity];
+        segmentSweep = new float[capacity];
+        arcLength = new float[capacity];
+        speed = new float[capacity];
+        lateral = new float[capacity];
+        angle = new float[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        segment = new int[capacity];
+        laps = new int[capacity];
+    }
+
+    private static float[] sweepsBetween(float[] checkpoints) {
+        if (checkpoints.length < 2) {
+            throw new IllegalArgumentException("Need at least two checkpoints");
+        }
+        int n = checkpoints.length;
+        float[] sweeps = new float[n];
+        for (int k = 0; k < n; k++) {
+            float sweep = checkpoints[(k + 1) % n] - checkpoints[k];
+            if (sweep <= 0f) {
+                sweep += TWO_PI;
+            }
+            sweeps[k] = sweep;
+        }
+        return sweeps;
+    }
+
+    /**
+     * Creates room for the cars driving a route, if the kernels can drive it: every
+     * segment must move forward and together they must make one full lap of the
+     * oval, so that passing the last checkpoint is finishing a lap. Segments are the
+     * route's own, so a car's segment and distance into the lap mean the same here
+     * as in {@link Car}.
+     * @param route    the route
+     * @param capacity maximum number of cars
+     * @return the kinematics, or null if the route does not close on itself
+     */
+    public static CarKinematics forRoute(Route route, int capacity) {
+        int n = route.getSegmentCount();
+        if (n == 0) {
+            return null;
+        }
+        float[] starts = new float[n];
+        float[] sweeps = new float[n];
+        float[] distances = new float[n];
+        float total = 0f;
+        for (int k = 0; k < n; k++) {
+            float sweep = route.getSegmentSweep(k);
+            if (!(sweep > 0f)) {
+                return null;
+            }
+            float start = route.getSegmentStart(k) % TWO_PI;
+            starts[k] = start < 0f ? start + TWO_PI : start;
+            sweeps[k] = sweep;
+            distances[k] = route.getSegmentDistance(k);
+            total += sweep;
+        }
+        return Math.abs(total - TWO_PI) < 1e-4f ? new CarKinematics(capacity, starts, sweeps, distances) : null;
+    }
+
+    /**
+     * Adds a car at a checkpoint.
+     * @param startCheckpoint index of the checkpoint the car starts at
+     * @param carSpeed        the car's speed
+     * @param lateralOffset   the car's lateral offset
+     * @return the car's index
+     */
+    public int addCar(int startCheckpoint, float carSpeed, float lateralOffset) {
+        if (size == progress.length) {
+            throw new IllegalStateException("No room for more cars");
+        }
+        int i = size++;
+        enterSegment(i, startCheckpoint % checkpoints.length);
+        laps[i] = 0;
+        speed[i] = carSpeed;
+        lateral[i] = lateralOffset;
+        place(i);
+        return i;
+    }
+
+    /**
+     * Adds a car part way round the lap. Its angle and position are worked out by
+     * the next step.
+     * @param segmentIndex  index of the segment the car is on
+     * @param lapDistance   the car's distance from the start of the lap
+     * @param carSpeed      the car's speed
+     * @param lateralOffset the car's lateral offset
+     * @return the car's index
+     */
+    public int addCar(int segmentIndex, float lapDistance, float carSpeed, float lateralOffset) {
+        if (size == progress.length) {
+            throw new IllegalStateException("No room for more cars");
+        }
+        int i = size++;
+        enterSegment(i, segmentIndex);
+        progress[i] = (lapDistance - distances[segmentIndex]) / arcLength[i];
+        laps[i] = 0;
+        speed[i] = carSpeed;
+        lateral[i] = lateralOffset;
+        return i;
+    }
+
+    /**
+     * Removes every car, keeping the room made for them.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /** @return number of cars */
+    public int size() {
+        return size;
+    }
+
+    /** @return x coordinate of car i */
+    public float getX(int i) {
+        return x[i];
+    }
+
+    /** @return y coordinate of car i */
+    public float getY(int i) {
+        return y[i];
+    }
+
+    /** @return track angle of car i, in [0, 2*pi) */
+    public float getAngle(int i) {
+        return angle[i];
+    }
+
+    /** @return index of the segment car i is on */
+    public int getSegment(int i) {
+        return segment[i];
+    }
+
+    /** @return car i's distance from the start of its lap */
+    public float getLapDistance(int i) {
+        return distances[segment[i]] + progress[i] * arcLength[i];
+    }
+
+    /** @return number of laps car i has completed */
+    public int getLaps(int i) {
+        return laps[i];
+    }
+
+    /**
+     * Sets the speed of car i.
+     * @param i        car index
+     * @param carSpeed new speed
+     */
+    public void setSpeed(int i, float carSpeed) {
+        speed[i] = carSpeed;
+    }
+
+    /**
+     * Sets the lateral offset of car i.
+     * @param i      car index
+     * @param offset new lateral offset
+     */
+    public void setLateral(int i, float offset) {
+        lateral[i] = offset;
+    }
+
+    /**
+     * Moves car i one tick, crossing as many checkpoints as its speed carries it past.
+     * @param i car index
+     */
+    void stepCar(int i) {
+        float p = progress[i] + speed[i] * DISTANCE_PER_SPEED / arcLength[i];
+        while (p >= 1f) {
+            // Carry the distance left over onto the next segment.
+            float leftover = (p - 1f) * arcLength[i];
+            int next = segment[i] + 1;
+            if (next == checkpoints.length) {
+                next = 0;
+                laps[i]++;
+            }
+            enterSegment(i, next);
+            p = leftover / arcLength[i];
+        }
+        progress[i] = p;
+        place(i);
+    }
+
+    private void enterSegment(int i, int k) {
+        segment[i] = k;
+        segmentStart[i] = checkpoints[k];
+        segmentSweep[i] = sweeps[k];
+        arcLength[i] = arcs[k];
+        progress[i] = 0f;
+    }
+
+    /**
+     * Works out car i's angle and position from its progress. Each operation here
+     * has a lane-wise twin in the SIMD kernel; keep the two in step.
+     */
+    private void place(int i) {
+        float a = segmentStart[i] + progress[i] * segmentSweep[i];
+        if (a >= TWO_PI) {
+            a = a - TWO_PI;
+        }
+
+        // Reduce to r in [-pi/2, pi/2]: sin(a) = -sin(r), cos(a) = +/-cos(r).
+        float q = a - PI;
+        float r = q;
+        boolean flip = false;
+        if (q > HALF_PI) {
+            r = PI - q;
+            flip = true;
+        } else if (q < -HALF_PI) {
+            r = -PI - q;
+            flip = true;
+        }
+        float r2 = r * r;
+        float ps = S11;
+        ps = S9 + r2 * ps;
+        ps = S7 + r2 * ps;
+        ps = S5 + r2 * ps;
+        ps = S3 + r2 * ps;
+        float sinR = r + r * r2 * ps;
+        float pc = C12;
+        pc = C10 + r2 * pc;
+        pc = C8 + r2 * pc;
+        pc = C6 + r2 * pc;
+        pc = C4 + r2 * pc;
+        pc = C2 + r2 * pc;
+        float cosR = 1f + r2 * pc;
+        float sin = -sinR;
+        float cos = flip ? cosR : -cosR;
+
+        float tx = -A * sin;
+        float ty = B * cos;
+        float norm = (float) Math.sqrt(tx * tx + ty * ty);
+        float nx = ty / norm;
+        float ny = -tx / norm;
+        angle[i] = a;
+        x[i] = CENTER_X + A * cos + lateral[i] * nx;
+        y[i] = CENTER_Y + B * sin + lateral[i] * ny;
+    }
+
+    /**
+     * Returns the SIMD kernel if it is available in this JVM, otherwise {@link #SCALAR}.
+     * @return the fastest available kernel
+     */
+    public static Kernel bestKernel() {
+        try {
+            Class<?> type = Class.forName("VectorKinematics");
+            return (Kernel) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
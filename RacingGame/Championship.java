@@ -0,0 +1,274 @@
+/**
+ * The Championship runs a season of headless races and keeps the standings.
+ *
+ * Each round is an independent task that builds the standard race from
+ * {@link RaceSetup}, seeds its random events and runs it to the end. The tasks
+ * share nothing but the interned routes, so races never wait on each other, and a
+ * fixed pool with one worker per core keeps every core busy however many rounds
+ * the season has; a round's race is only built once a worker picks it up.
+ *
+ * Results are collected on the calling thread as rounds finish, in whatever order
+ * that is, so the standings need no locking. A {@link ProgressListener} hears
+ * about every finished round, and {@link #cancel()} stops a season part way: queued
+ * rounds never start and running ones stop at their next tick.
+ * {@link ChampionshipRunner} runs a season from the command line.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Championship {
+    /** Points for first, second, third and fourth place. */
+    static final int[] POINTS = {25, 18, 15, 12};
+
+    private static final long MAX_TICKS = 200_000;
+
+    /**
+     * Notified on the season's calling thread as each round finishes.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after a round's result has been added to the standings.
+         * @param result    the round's result
+         * @param completed rounds finished so far
+         * @param total     rounds in the season
+         */
+        void onRoundFinished(RoundResult result, int completed, int total);
+    }
+
+    /**
+     * The finishing order of one round.
+     */
+    public static final class RoundResult {
+        final int round;
+        final int[] carIds;     // finishing order
+        final float[] times;    // race time of each car in that order, seconds
+
+        RoundResult(int round, int[] carIds, float[] times) {
+            this.round = round;
+            this.carIds = carIds;
+            this.times = times;
+        }
+
+        /** @return the round number, from 1 */
+        public int getRound() {
+            return round;
+        }
+
+        /** @return the ID of the winning car */
+        public int getWinner() {
+            return carIds[0];
+        }
+
+        @Override
+        public String toString() {
+            return "Round " + round + ": " + Arrays.toString(carIds) + " winner time "
+                    + String.format("%.1fs", times[0]);
+        }
+    }
+
+    /**
+     * Season points, wins and race time per car.
+     */
+    public static final class Standings {
+        private final Map<Integer, int[]> table = new LinkedHashMap<>(); // car ID -> {points, wins}
+        private final Map<Integer, Double> totalTime = new LinkedHashMap<>();
+        private int rounds;
+
+        /**
+         * Adds a round's finishing order to the standings.
+         * @param result the round's result
+         */
+        void add(RoundResult result) {
+            for (int place = 0; place < result.carIds.length; place++) {
+                int[] row = table.computeIfAbsent(result.carIds[place], id -> new int[2]);
+                row[0] += place < POINTS.length ? POINTS[place] : 0;
+                if (place == 0) {
+                    row[1]++;
+                }
+                totalTime.merge(result.carIds[place], (double) result.times[place], Double::sum);
+            }
+            rounds++;
+        }
+
+        /** @return number of rounds counted */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * Returns a car's season points.
+         * @param carId car ID
+         * @return points, or 0 if the car has not raced
+         */
+        public int getPoints(int carId) {
+            int[] row = table.get(carId);
+            return row == null ? 0 : row[0];
+        }
+
+        /** @return car IDs ordered by points, then wins */
+        public List<Integer> getOrder() {
+            List<Integer> order = new ArrayList<>(table.keySet());
+            order.sort(Comparator.<Integer>comparingInt(id -> -table.get(id)[0])
+                    .thenComparingInt(id -> -table.get(id)[1]));
+            return order;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-4s %-6s %6s %5s %10s%n", "Pos", "Car", "Points", "Wins", "Avg time"));
+            int pos = 1;
+            for (int id : getOrder()) {
+                int[] row = table.get(id);
+                sb.append(String.format("%-4d Car %-2d %6d %5d %9.1fs%n",
+                        pos++, id, row[0], row[1], totalTime.get(id) / rounds));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final ExecutorService pool;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a championship that races on the given number of worker threads.
+     * @param threads number of races run at once
+     */
+    public Championship(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "championship");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs one round: the standard race, all cars driven by the AI.
+     * @param round round number
+     * @param laps  laps in the race
+     * @param seed  seed for the race's random events
+     * @return the finishing order
+     * @throws CancellationException if the season is cancelled while the race runs
+     */
+    RoundResult runRound(int round, int laps, long seed) {
+        Race race = RaceSetup.createRace(laps);
+        race.setLogging(false);
+        race.getRandomizer().setState(seed);
+        for (Car car : race.getCars()) {
+            car.setHumanControlled(false);
+        }
+        race.startRace();
+        while (race.isRunning() && race.getTick() < MAX_TICKS) {
+            if (cancelled) {
+                throw new CancellationException("Season cancelled");
+            }
+            race.updateRaceStatus();
+        }
+
+        // Finished cars by race time, then any stragglers by distance covered: laps
+        // completed, then distance into the current lap.
+        List<Car> order = new ArrayList<>(race.getCars());
+        order.sort(Comparator.comparing((Car car) -> !car.isFinished())
+                .thenComparingLong(car -> car.isFinished() ? car.getTotalTicks() : 0)
+                .thenComparingInt(car -> -car.getCurrentLap())
+                .thenComparingDouble(car -> -car.getLapDistance()));
+        int[] ids = new int[order.size()];
+        float[] times = new float[order.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = order.get(i).getId();
+            times[i] = order.get(i).getTotalTime();
+        }
+        return new RoundResult(round, ids, times);
+    }
+
+    /**
+     * Runs a season and returns the standings. Blocks until every round has finished
+     * or the season is cancelled, in which case the standings cover the rounds finished.
+     * @param rounds   number of races
+     * @param laps     laps per race
+     * @param seed     seed from which every round's seed is drawn
+     * @param listener told about each finished round; may be null
+     * @return the season standings
+     * @throws IllegalStateException if a round fails; the rounds left are cancelled
+     */
+    public Standings runSeason(int rounds, int laps, long seed, ProgressListener listener) {
+        cancelled = false;
+        Randomizer seeds = new Randomizer(seed);
+        CompletionService<RoundResult> completion = new ExecutorCompletionService<>(pool);
+        List<Future<RoundResult>> futures = new ArrayList<>(rounds);
+        for (int round = 1; round <= rounds; round++) {
+            int r = round;
+            long raceSeed = seeds.nextLong();
+            futures.add(completion.submit(() -> runRound(r, laps, raceSeed)));
+        }
+
+        Standings standings = new Standings();
+        try {
+            for (int done = 1; done <= rounds && !cancelled; done++) {
+                RoundResult result;
+                try {
+                    result = completion.take().get();
+                } catch (CancellationException e) {
+                    continue;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        continue;
+                    }
+                    // Stop the rounds still queued or running; the finally block cancels them.
+                    cancel();
+                    throw new IllegalStateException("Round failed", e.getCause());
+                }
+                standings.add(result);
+                if (listener != null) {
+                    listener.onRoundFinished(result, standings.getRounds(), rounds);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        } finally {
+            if (cancelled) {
+                for (Future<RoundResult> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+        return standings;
+    }
+
+    /**
+     * Cancels the season in progress. May be called from any thread, including a
+     * {@link ProgressListener}; {@link #runSeason} then returns the standings so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** @return true if the current season has been cancelled */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        cancel();
+        pool.shutdownNow();
+    }
+}
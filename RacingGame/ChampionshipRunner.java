@@ -0,0 +1,35 @@
+/**
+ * Runs a {@link Championship} season from the command line, printing progress
+ * every tenth of the season and then the final standings.
+ *
+ * Usage: java ChampionshipRunner [rounds] [laps] [threads]
+ */
+
+public class ChampionshipRunner {
+    /**
+     * Runs a season and prints progress and the final standings.
+     * @param args optional rounds, laps and threads
+     */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int laps = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Season of " + rounds + " races of " + laps + " laps on " + threads + " threads.");
+        Championship championship = new Championship(threads);
+        int step = Math.max(1, rounds / 10);
+        long start = System.nanoTime();
+        try {
+            Championship.Standings standings = championship.runSeason(rounds, laps, System.nanoTime(), (result, done, total) -> {
+                if (done % step == 0 || done == total) {
+                    System.out.printf("%d/%d rounds (%.0f races/s)%n",
+                            done, total, done / ((System.nanoTime() - start) / 1e9));
+                }
+            });
+            System.out.println();
+            System.out.print(standings);
+        } finally {
+            championship.shutdown();
+        }
+    }
+}
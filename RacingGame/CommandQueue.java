@@ -0,0 +1,67 @@
+/**
+ * A lock-free queue of {@link RaceCommand}s with many senders and one reader.
+ *
+ * The queue is a singly linked list. A sender swaps its node in as the new tail
+ * with one atomic exchange and then links the old tail to it, so sending never
+ * blocks or retries, however many threads send at once. Only the simulation
+ * thread reads, following the links from its own head without any atomic
+ * operation. Commands come out in the order their exchanges happened, which is a
+ * single order every sender agrees on.
+ *
+ * Between a sender's exchange and its link the reader sees the list end early;
+ * that command, and any sent after it, are applied on the next drain instead.
+ */
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class CommandQueue {
+    /**
+     * A command in the list. The head is a used node whose command is already gone.
+     */
+    private static final class Node {
+        RaceCommand command;
+        volatile Node next;
+
+        Node(RaceCommand command) {
+            this.command = command;
+        }
+    }
+
+    private final AtomicReference<Node> tail;
+    // Read only by the draining thread.
+    private Node head;
+
+    /** Creates an empty queue. */
+    public CommandQueue() {
+        head = new Node(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Adds a command to the end of the queue. May be called from any thread.
+     * @param command the command to apply
+     */
+    public void send(RaceCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("No command");
+        }
+        Node node = new Node(command);
+        tail.getAndSet(node).next = node;
+    }
+
+    /**
+     * Takes the oldest command that has arrived. Only the thread that advances the
+     * race may call this.
+     * @return the command, or null if there is none yet
+     */
+    RaceCommand poll() {
+        Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        RaceCommand command = next.command;
+        next.command = null;
+        head = next;
+        return command;
+    }
+}
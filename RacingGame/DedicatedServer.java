@@ -0,0 +1,44 @@
+/**
+ * Runs a {@link MultiplayerServer} on its own, without a local player: it waits
+ * for the first {@link MultiplayerClient} to join, then runs the standard race
+ * with every car under AI control until remote players take them over.
+ *
+ * Usage: java DedicatedServer [port] [laps]
+ */
+
+import java.net.InetSocketAddress;
+
+public class DedicatedServer {
+    /**
+     * Runs a dedicated server: waits for the first player, then runs the race in real time.
+     * @param args optional port and lap count
+     * @throws Exception if the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : MultiplayerServer.DEFAULT_PORT;
+        int laps = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        Race race = RaceSetup.createRace(laps);
+        for (Car car : race.getCars()) {
+            car.setHumanControlled(false);
+        }
+        try (MultiplayerServer server = new MultiplayerServer(new InetSocketAddress(port))) {
+            race.addListener(server);
+            System.out.println("Waiting for players on port " + server.getPort() + "...");
+            while (server.getPlayerCount() == 0) {
+                server.poll(race);
+                Thread.sleep(100);
+            }
+            race.startRace();
+            long next = System.nanoTime();
+            while (race.isRunning()) {
+                race.updateRaceStatus();
+                next += SimClock.TICK_MILLIS * 1_000_000L;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                }
+            }
+            System.out.println("Race finished.");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Decides how an AI-driven {@link Car} steers within the track width.
+ *
+ * The race asks every AI car's strategy for a decision once per tick, in a single
+ * pass before any car moves, and hands each strategy the same freshly built
+ * {@link ObstacleIndex}. Cars driven by a player are never asked.
+ */
+public interface DriverStrategy {
+    /** The largest lateral step an AI driver takes in one tick. */
+    float MAX_STEP = 2f;
+
+    /**
+     * Chooses this tick's steering for a car.
+     * @param car       the car being driven
+     * @param obstacles index of the obstacles currently on the track
+     * @param random    the race's random source
+     * @return change in lateral offset, at most {@link #MAX_STEP} either way
+     */
+    float steer(Car car, ObstacleIndex obstacles, Randomizer random);
+}
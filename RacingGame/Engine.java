@@ -21,6 +21,15 @@ public class Engine {
         this.maxSpeed = maxSpeed;
     }
 
+    /**
+     * Returns the engine's horsepower.
+     *
+     * @return the horsepower
+     */
+    public float getHorsePower() {
+        return horsePower;
+    }
+
     /**
      * Returns the maximum speed of the engine.
      *
@@ -0,0 +1,690 @@
+/**
+ * The EventSimulator runs a race as a sequence of events instead of fixed ticks,
+ * jumping straight from one thing happening to the next.
+ *
+ * A car's drive is worked out one slice of the lap at a time, {@link #SLICES_PER_LAP}
+ * timing points to a lap, as knots of time, distance and speed. Where no corner
+ * can slow it, it cruises at top speed through many slices at once in a single
+ * stretch. Elsewhere each tick is a knot, with the speed updated as {@link Car}
+ * updates it: below the lower of its top speed and the cornering limit it
+ * accelerates with the grip its tyres have left, above it, it brakes down to it.
+ * Within a tick its speed is even, so where it is at any time, and when it
+ * reaches any distance, are read off the knots, and with no obstacles every lap
+ * ends on the same tick as in the tick engine. Wear is linear in distance, so
+ * tyres are worn exactly at every event, and the point where they drop below
+ * {@link Car#WORN_GRIP_FRACTION} of their starting grip is found in advance.
+ *
+ * The events in the queue are: a car reaching a timing point, its tyres wearing
+ * out, it reaching an obstacle's track angle, it leaving the pits, an obstacle
+ * appearing and an obstacle expiring. Obstacles appear with the gaps of the tick
+ * engine's per-tick chance, drawn directly, and with its lifetimes and impacts.
+ * Whether a car running past an obstacle hits it is drawn from its driver's lane
+ * (held, random walk, or swerving as far as it can in the ticks since it could
+ * see the obstacle) passing within the collision radius.
+ *
+ * Results are the tick engine's: race and best lap times in whole ticks. They
+ * match it in distribution rather than race by race, since the random draws
+ * differ. A lap costs each car a handful of events, more where worn tyres hold
+ * it to the cornering limit, against hundreds of ticks of the whole field.
+ * {@link EventSimulatorBenchmark} compares the two engines.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class EventSimulator {
+    /** Timing points per lap, where each car's drive is worked out afresh. */
+    public static final int SLICES_PER_LAP = 16;
+
+    // Knots a leg has room for before its arrays grow.
+    private static final int INITIAL_KNOTS = 32;
+    // Distance travelled per tick per unit of speed.
+    private static final double STEP = Car.UPDATE_INTERVAL * Car.MOVEMENT_FACTOR;
+    // Ticks a car stands still in the pits: the tick it pulls in and the stop itself.
+    private static final int PIT_TICKS = Car.PIT_STOP_DURATION + 1;
+    // Variance per tick of the random driver's lateral drift, uniform in +/-MAX_STEP.
+    private static final double DRIFT_VARIANCE = DriverStrategy.MAX_STEP * DriverStrategy.MAX_STEP / 3;
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double EPSILON = 1e-6;
+
+    // Event kinds.
+    private static final int CHECKPOINT = 0;
+    private static final int WORN = 1;
+    private static final int ENCOUNTER = 2;
+    private static final int PIT_EXIT = 3;
+    private static final int SPAWN = 4;
+    private static final int EXPIRE = 5;
+
+    // How a car's lane is modelled.
+    private static final int HOLD = 0;
+    private static final int DRIFT = 1;
+    private static final int AVOID = 2;
+
+    /**
+     * How one car's race came out.
+     */
+    public static final class Result {
+        private final int carId;
+        private final long totalTicks;
+        private final long bestLapTicks;
+        private final int hits;
+        private final int pitStops;
+
+        Result(int carId, long totalTicks, long bestLapTicks, int hits, int pitStops) {
+            this.carId = carId;
+            this.totalTicks = totalTicks;
+            this.bestLapTicks = bestLapTicks;
+            this.hits = hits;
+            this.pitStops = pitStops;
+        }
+
+        /** @return the car's ID */
+        public int getCarId() {
+            return carId;
+        }
+
+        /** @return race time in ticks, as {@link Car#getTotalTicks()} would give */
+        public long getTotalTicks() {
+            return totalTicks;
+        }
+
+        /** @return best lap in ticks, or {@code Long.MAX_VALUE} if no lap was completed */
+        public long getBestLapTicks() {
+            return bestLapTicks;
+        }
+
+        /** @return obstacles the car ran into */
+        public int getHits() {
+            return hits;
+        }
+
+        /** @return pit stops made, for worn tyres or after slowing to a stop */
+        public int getPitStops() {
+            return pitStops;
+        }
+    }
+
+    /**
+     * Something that happens at a moment in the race. Car events carry the car's
+     * version when scheduled and are dropped if it has moved on since.
+     */
+    private static final class Event implements Comparable<Event> {
+        final double time;
+        final int kind;
+        final Runner runner;
+        final int version;
+        final Spot spot;
+        final long order;
+
+        Event(double time, int kind, Runner runner, int version, Spot spot, long order) {
+            this.time = time;
+            this.kind = kind;
+            this.runner = runner;
+            this.version = version;
+            this.spot = spot;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int c = Double.compare(time, other.time);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * An obstacle on the track, by track angle and lane.
+     */
+    private static final class Spot {
+        final double angle;
+        final double lateral;
+        final float impact;
+        final boolean boost;
+        final double spawned;
+        final double expires;
+        boolean gone;
+
+        Spot(Obstacle obstacle, double spawned) {
+            this.angle = obstacle.getTrackAngle();
+            this.lateral = obstacle.getTrackLateral();
+            this.impact = obstacle.getImpact();
+            this.boost = obstacle.getType().equalsIgnoreCase("boost");
+            this.spawned = spawned;
+            // Swept against the cars' paths in every tick of its lifetime but the last.
+            this.expires = spawned + obstacle.getLifetime() - 1;
+        }
+    }
+
+    /**
+     * One car's state, and how it drives its current leg.
+     */
+    private static final class Runner {
+        final Car car;
+        final double lapLength;
+        final double startAngle;
+        final float[] grip;
+        final float[] condition;
+        final float pitGrip;
+        // Grip lost per unit of distance while no wheel is worn out.
+        final double wearRate;
+        final int laneModel;
+        final int lookahead;
+
+        int lap = 1;
+        int slice;
+        long lapStartTick;
+        long bestLapTicks = Long.MAX_VALUE;
+        long finishTick;
+        boolean finished;
+        boolean inPit;
+        double pitDistance;
+        // Time at which worn tyres send the car to the pits, once known.
+        double pitTime = Double.POSITIVE_INFINITY;
+        int hits;
+        int pits;
+
+        // Current leg, to the end of a slice: time, distance and speed at its knots,
+        // the last of which is knots.
+        double[] knotTime = new double[INITIAL_KNOTS];
+        double[] knotDistance = new double[INITIAL_KNOTS];
+        double[] knotSpeed = new double[INITIAL_KNOTS];
+        int knots;
+        // Grip at the start of the leg, where the tyres were last worn to.
+        float effectiveGrip;
+
+        double lateral;
+        double lateralTime;
+
+        int version;
+        double nextTime;
+
+        Runner(Car car) {
+            this.car = car;
+            Route route = car.getRoute();
+            lapLength = route.getLapLength();
+            startAngle = route.angleAt(0f, 0);
+            grip = car.copyWheelGrip();
+            condition = car.copyStartingCondition();
+            pitGrip = Car.WORN_GRIP_FRACTION * Wheel.averageGrip(condition, grip);
+            double squares = 0;
+            for (float g : grip) {
+                squares += g * g;
+            }
+            wearRate = Wheel.WEAR_PER_PIXEL * squares / grip.length;
+            effectiveGrip = Wheel.averageGrip(condition, grip);
+
+            DriverStrategy driver = car.getDriverStrategy();
+            lateral = car.getLateralOffset();
+            if (car.isHumanControlled()) {
+                laneModel = HOLD;
+                lookahead = 0;
+            } else if (driver instanceof LaneKeepingDriver) {
+                laneModel = HOLD;
+                lookahead = 0;
+                lateral = ((LaneKeepingDriver) driver).getLane();
+            } else if (driver instanceof ObstacleAvoidingDriver) {
+                laneModel = AVOID;
+                lookahead = ((ObstacleAvoidingDriver) driver).getLookaheadTicks();
+            } else {
+                laneModel = DRIFT;
+                lookahead = 0;
+            }
+        }
+
+        double legDistance() {
+            return knotDistance[0];
+        }
+
+        double legEnd() {
+            return knotDistance[knots];
+        }
+
+        /** Adds a knot to the end of the current leg. */
+        void addKnot(double time, double distance, double speed) {
+            if (++knots == knotTime.length) {
+                knotTime = Arrays.copyOf(knotTime, knots * 2);
+                knotDistance = Arrays.copyOf(knotDistance, knots * 2);
+                knotSpeed = Arrays.copyOf(knotSpeed, knots * 2);
+            }
+            knotTime[knots] = time;
+            knotDistance[knots] = distance;
+            knotSpeed[knots] = speed;
+        }
+
+        /** Knot interval holding a time on the current leg. */
+        int knotAtTime(double time) {
+            int k = 0;
+            while (k < knots - 1 && knotTime[k + 1] < time) {
+                k++;
+            }
+            return k;
+        }
+
+        double distanceAt(double time) {
+            int k = knotAtTime(time);
+            double span = knotTime[k + 1] - knotTime[k];
+            double f = span > 0 ? Math.min(1, Math.max(0, (time - knotTime[k]) / span)) : 1;
+            return knotDistance[k] + f * (knotDistance[k + 1] - knotDistance[k]);
+        }
+
+        double speedAt(double time) {
+            int k = knotAtTime(time);
+            double span = knotTime[k + 1] - knotTime[k];
+            double f = span > 0 ? Math.min(1, Math.max(0, (time - knotTime[k]) / span)) : 1;
+            return knotSpeed[k] + f * (knotSpeed[k + 1] - knotSpeed[k]);
+        }
+
+        /** Time at which the car reaches a lap distance on the current leg. */
+        double timeAt(double distance) {
+            int k = 0;
+            while (k < knots - 1 && knotDistance[k + 1] < distance) {
+                k++;
+            }
+            double span = knotDistance[k + 1] - knotDistance[k];
+            double f = span > 0 ? Math.min(1, Math.max(0, (distance - knotDistance[k]) / span)) : 1;
+            return knotTime[k] + f * (knotTime[k + 1] - knotTime[k]);
+        }
+
+        double angleAt(double distance) {
+            return startAngle + distance / Car.EFFECTIVE_RADIUS;
+        }
+
+        double sliceEnd() {
+            return lapLength * (slice + 1) / SLICES_PER_LAP;
+        }
+    }
+
+    private final List<Runner> runners = new ArrayList<>();
+    private final double obstacleChance;
+    private final Randomizer random;
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final List<Spot> spots = new ArrayList<>();
+    private int spawned;
+    private long order;
+    private long events;
+    private int running;
+
+    /**
+     * Prepares to simulate a race with the cars, laps, drivers and obstacle chance of
+     * the given one, which is left untouched.
+     * @param race a race that has not started
+     * @param seed seed for this simulation's random draws
+     */
+    public EventSimulator(Race race, long seed) {
+        for (Car car : race.getCars()) {
+            runners.add(new Runner(car));
+        }
+        obstacleChance = race.getObstacleChance();
+        random = new Randomizer(seed);
+    }
+
+    /**
+     * Runs the race to the end. Call once per simulator.
+     * @return each car's result, in the race's car order
+     */
+    public List<Result> run() {
+        running = runners.size();
+        for (Runner r : runners) {
+            if (r.lapLength <= 0) {
+                // No distance to cover: done on the first tick, as in the tick engine.
+                finish(r, 1);
+                continue;
+            }
+            float maxSpeed = r.car.getEngine().getMaxSpeed();
+            wearAhead(r, maxSpeed);
+            startLeg(r, 0, 0, maxSpeed);
+            schedule(r, 0);
+        }
+        scheduleSpawn(-1);
+
+        Event e;
+        while (running > 0 && (e = queue.poll()) != null) {
+            events++;
+            switch (e.kind) {
+                case SPAWN:
+                    spawn(e.time);
+                    break;
+                case EXPIRE:
+                    e.spot.gone = true;
+                    spots.remove(e.spot);
+                    break;
+                default:
+                    if (e.version == e.runner.version) {
+                        carEvent(e);
+                    }
+                    break;
+            }
+        }
+
+        List<Result> results = new ArrayList<>(runners.size());
+        for (Runner r : runners) {
+            results.add(new Result(r.car.getId(), r.finishTick, r.bestLapTicks, r.hits, r.pits));
+        }
+        return results;
+    }
+
+    /** @return events taken off the queue so far, stale ones included */
+    public long getEventsProcessed() {
+        return events;
+    }
+
+    /**
+     * Handles one car's event and schedules its next.
+     */
+    private void carEvent(Event e) {
+        Runner r = e.runner;
+        double time = e.time;
+        switch (e.kind) {
+            case PIT_EXIT:
+                r.inPit = false;
+                wearAhead(r, Car.PIT_EXIT_SPEED);
+                startLeg(r, time, r.pitDistance, Car.PIT_EXIT_SPEED);
+                break;
+            case WORN:
+                enterPit(r, time, r.distanceAt(time));
+                return;
+            case ENCOUNTER:
+                if (!e.spot.gone && hits(r, e.spot, time)) {
+                    e.spot.gone = true;
+                    spots.remove(e.spot);
+                    r.hits++;
+                    double distance = r.distanceAt(time);
+                    double speed = r.speedAt(time) + (e.spot.boost ? e.spot.impact : -e.spot.impact);
+                    speed = Math.max(0, speed);
+                    if (speed < 0.1) {
+                        enterPit(r, time, distance);
+                        return;
+                    }
+                    wearTo(r, distance);
+                    startLeg(r, time, distance, speed);
+                }
+                break;
+            default:
+                double end = r.legEnd();
+                wearTo(r, end);
+                if (r.slice + 1 < SLICES_PER_LAP) {
+                    r.slice++;
+                } else {
+                    long tick = ticks(time);
+                    r.bestLapTicks = Math.min(r.bestLapTicks, tick - r.lapStartTick);
+                    r.lapStartTick = tick;
+                    if (r.lap == r.car.getTotalLaps()) {
+                        finish(r, tick);
+                        return;
+                    }
+                    r.lap++;
+                    r.slice = 0;
+                    end = 0;
+                }
+                startLeg(r, time, end, r.knotSpeed[r.knots]);
+                break;
+        }
+        schedule(r, time);
+    }
+
+    /**
+     * Wears a car's tyres over the distance from the start of its leg.
+     */
+    private static void wearTo(Runner r, double distance) {
+        r.effectiveGrip = Wheel.wear(r.condition, r.grip, (float) (distance - r.legDistance()));
+    }
+
+    /**
+     * Wears a car's tyres over one tick at the speed it sets off with. The tick engine
+     * wears them for each tick before moving, so they stay that far ahead of the car.
+     */
+    private static void wearAhead(Runner r, float speed) {
+        r.effectiveGrip = Wheel.wear(r.condition, r.grip, speed * Car.UPDATE_INTERVAL * Car.MOVEMENT_FACTOR);
+    }
+
+    /**
+     * Works out how a car drives the rest of its slice. A car at top speed that no
+     * corner ahead will slow cruises on through every such slice to the end of the lap
+     * in one leg, which is what makes a clear track cheap. Anywhere else it is driven
+     * tick by tick as {@link Car} drives it: it finishes the tick it is in at the speed
+     * it has, then each tick accelerates with the grip it has left towards the lower
+     * of its top speed and the cornering limit, or brakes down to it, and moves on.
+     */
+    private static void startLeg(Runner r, double time, double distance, double speed) {
+        float maxSpeed = r.car.getEngine().getMaxSpeed();
+        r.knots = 0;
+        r.knotTime[0] = time;
+        r.knotDistance[0] = distance;
+        r.knotSpeed[0] = speed;
+        if (speed == maxSpeed && cruises(r, r.slice, distance, maxSpeed)) {
+            while (r.slice + 1 < SLICES_PER_LAP && cruises(r, r.slice + 1, distance, maxSpeed)) {
+                r.slice++;
+            }
+            double end = r.sliceEnd();
+            r.addKnot(time + (end - distance) / (STEP * speed), end, speed);
+            return;
+        }
+        double end = r.sliceEnd();
+        // Past where the tyres are worn out the car is in the pits, so the leg stops
+        // being driven there.
+        double worn = r.wearRate > 0 ? distance + (r.effectiveGrip - r.pitGrip) / r.wearRate
+                : Double.POSITIVE_INFINITY;
+        float acceleration = r.car.getEngine().getAcceleration();
+        float v = (float) speed;
+        double t = Math.ceil(time - EPSILON);
+        double d = t > time ? distance + STEP * v * (t - time) : distance;
+        while (d < end && d < worn) {
+            if (t > time) {
+                r.addKnot(t, d, v);
+            }
+            float grip = (float) Math.max(0, r.effectiveGrip - r.wearRate * (d - distance));
+            float limit = Math.min(maxSpeed, Car.corneringLimit((float) r.angleAt(d), grip));
+            if (v < limit) {
+                v = Math.min(limit, v + acceleration * grip * Car.ACCELERATION_SCALE * Car.UPDATE_INTERVAL);
+            } else {
+                v = Math.max(limit, v - Car.BRAKING_PER_TICK);
+            }
+            t++;
+            d += STEP * v;
+        }
+        double last = r.knotTime[r.knots];
+        double from = r.knotDistance[r.knots];
+        r.addKnot(last + (end - from) / (STEP * Math.max(v, EPSILON)), end, v);
+    }
+
+    /**
+     * Returns whether the cornering limit stays at or above a speed all through a
+     * slice, for the tyres as worn as they will be at its end. The oval is tightest
+     * at angles 0 and pi, so the lowest limit is at one of the slice's ends or at
+     * such an angle inside it.
+     */
+    private static boolean cruises(Runner r, int slice, double legStart, float speed) {
+        double from = r.lapLength * slice / SLICES_PER_LAP;
+        double to = r.lapLength * (slice + 1) / SLICES_PER_LAP;
+        float grip = (float) Math.max(0, r.effectiveGrip - r.wearRate * (to - legStart));
+        double a = r.angleAt(from);
+        double b = r.angleAt(to);
+        if (Car.corneringLimit((float) a, grip) < speed || Car.corneringLimit((float) b, grip) < speed) {
+            return false;
+        }
+        double tightest = Math.ceil(a / Math.PI) * Math.PI;
+        return tightest > b || Car.corneringLimit((float) tightest, grip) >= speed;
+    }
+
+    /**
+     * Queues the earliest of a car's next timing point, worn tyres and obstacle
+     * reached, dropping whatever was queued for it before.
+     */
+    private void schedule(Runner r, double now) {
+        r.version++;
+        double from = r.distanceAt(now);
+        double distance = r.legEnd();
+        double time = r.knotTime[r.knots];
+        int kind = CHECKPOINT;
+        Spot spot = null;
+
+        double worn = r.wearRate > 0 ? r.legDistance() + (r.effectiveGrip - r.pitGrip) / r.wearRate
+                : Double.POSITIVE_INFINITY;
+        if (r.pitTime == Double.POSITIVE_INFINITY && worn < distance) {
+            // The tick engine checks the tyres as a tick begins, worn as they were by the
+            // tick before, so the car drives on to the end of the tick after the one in
+            // which they wear out, even past a timing point.
+            r.pitTime = ticks(r.timeAt(Math.max(from, worn))) + 1;
+        }
+        if (r.pitTime < time) {
+            time = r.pitTime;
+            distance = r.distanceAt(time);
+            kind = WORN;
+        }
+        for (Spot s : spots) {
+            double at = encounterDistance(r, s, from);
+            if (at < distance && r.timeAt(at) < s.expires) {
+                distance = at;
+                time = r.timeAt(at);
+                kind = ENCOUNTER;
+                spot = s;
+            }
+        }
+        r.nextTime = time;
+        push(time, kind, r, spot);
+    }
+
+    /**
+     * Returns the lap distance ahead of a car at which it reaches an obstacle's
+     * track angle, or infinity if not within its current leg.
+     */
+    private static double encounterDistance(Runner r, Spot s, double from) {
+        double ahead = (s.angle - r.angleAt(from)) % TWO_PI;
+        if (ahead < 0) {
+            ahead += TWO_PI;
+        }
+        double at = from + ahead * Car.EFFECTIVE_RADIUS;
+        return at > from + EPSILON && at < r.legEnd() ? at : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Decides whether a car reaching an obstacle runs into it: the tick engine sweeps
+     * each car's path, so it does whenever its lane passes within the collision radius.
+     */
+    private boolean hits(Runner r, Spot s, double time) {
+        return Math.abs(laneAt(r, s, time) - s.lateral) < Race.COLLISION_RADIUS;
+    }
+
+    /**
+     * Returns where a car is across the track as it reaches an obstacle, updating
+     * the lane it keeps afterwards.
+     */
+    private double laneAt(Runner r, Spot s, double time) {
+        double max = Car.MAX_LATERAL_OFFSET;
+        if (r.laneModel == DRIFT) {
+            double sd = Math.sqrt(DRIFT_VARIANCE * (time - r.lateralTime));
+            r.lateral = reflect(r.lateral + sd * gaussian(), max);
+            r.lateralTime = time;
+        } else if (r.laneModel == AVOID) {
+            // It can swerve for as long as the obstacle has been in sight.
+            double reach = DriverStrategy.MAX_STEP * Math.min(r.lookahead, time - s.spawned);
+            double goal = r.lateral;
+            if (s.boost) {
+                goal = s.lateral;
+            } else if (Math.abs(r.lateral - s.lateral) < ObstacleAvoidingDriver.CLEARANCE) {
+                double below = s.lateral - ObstacleAvoidingDriver.CLEARANCE;
+                double above = s.lateral + ObstacleAvoidingDriver.CLEARANCE;
+                boolean belowFits = below >= -max;
+                boolean aboveFits = above <= max;
+                if (belowFits && (!aboveFits || r.lateral - below <= above - r.lateral)) {
+                    goal = below;
+                } else if (aboveFits) {
+                    goal = above;
+                } else {
+                    goal = r.lateral < s.lateral ? -max : max;
+                }
+            }
+            r.lateral += Math.max(-reach, Math.min(reach, goal - r.lateral));
+        }
+        return r.lateral;
+    }
+
+    /**
+     * Folds a lane back inside +/-max, as a random walk bounded at the track's edges.
+     */
+    private static double reflect(double lane, double max) {
+        double period = 4 * max;
+        double x = (lane + max) % period;
+        if (x < 0) {
+            x += period;
+        }
+        return x <= 2 * max ? x - max : 3 * max - x;
+    }
+
+    /** @return a standard normal draw from the simulation's random source */
+    private double gaussian() {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(TWO_PI * random.nextDouble());
+    }
+
+    /**
+     * Puts a car in the pits on fresh tyres, stopped until the stop is over.
+     */
+    private void enterPit(Runner r, double time, double distance) {
+        r.pits++;
+        r.inPit = true;
+        r.pitDistance = distance;
+        r.pitTime = Double.POSITIVE_INFINITY;
+        Arrays.fill(r.condition, 1f);
+        r.effectiveGrip = Wheel.averageGrip(r.condition, r.grip);
+        r.version++;
+        r.nextTime = time + PIT_TICKS;
+        push(r.nextTime, PIT_EXIT, r, null);
+    }
+
+    private void finish(Runner r, long tick) {
+        r.finished = true;
+        r.finishTick = tick;
+        r.version++;
+        running--;
+    }
+
+    /**
+     * Places a new obstacle and brings forward the next event of every car that
+     * reaches it sooner.
+     */
+    private void spawn(double time) {
+        Spot spot = new Spot(random.generateRandomObstacle(++spawned), time);
+        spots.add(spot);
+        push(spot.expires, EXPIRE, null, spot);
+        for (Runner r : runners) {
+            if (r.finished || r.inPit) {
+                continue;
+            }
+            double at = encounterDistance(r, spot, r.distanceAt(time));
+            if (at != Double.POSITIVE_INFINITY && r.timeAt(at) < r.nextTime) {
+                schedule(r, time);
+            }
+        }
+        scheduleSpawn(time);
+    }
+
+    /**
+     * Queues the next obstacle. The ticks until one appears are geometric with the
+     * tick engine's chance per tick, so one draw replaces a run of empty ticks.
+     * @param last time of the previous obstacle, -1 at the start
+     */
+    private void scheduleSpawn(double last) {
+        if (obstacleChance <= 0) {
+            return;
+        }
+        long gap = 1;
+        if (obstacleChance < 1) {
+            double u = 1 - random.nextDouble();
+            gap += (long) Math.floor(Math.log(u) / Math.log(1 - obstacleChance));
+        }
+        // An obstacle placed during tick n meets the cars where tick n - 1 left them.
+        push(last + gap, SPAWN, null, null);
+    }
+
+    private void push(double time, int kind, Runner runner, Spot spot) {
+        queue.add(new Event(time, kind, runner, runner == null ? 0 : runner.version, spot, order++));
+    }
+
+    /** @return the tick during which a moment falls, counting from 1 */
+    private static long ticks(double time) {
+        return Math.max(1, (long) Math.ceil(time - EPSILON));
+    }
+}
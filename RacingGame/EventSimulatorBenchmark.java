@@ -0,0 +1,103 @@
+/**
+ * Runs the standard race on the tick engine and on the {@link EventSimulator}
+ * from the same seeds, and compares each car's mean race time, its spread and
+ * its best lap, with the cost of a race on each engine. With no obstacles both
+ * engines are deterministic and every column should match exactly.
+ *
+ * Usage: java EventSimulatorBenchmark [races] [laps] [obstacle-chance]
+ */
+
+import java.util.List;
+
+public class EventSimulatorBenchmark {
+    /**
+     * Runs the standard race on both engines over a range of seeds and compares
+     * race times, best laps and cost.
+     * @param args number of races, laps per race and chance of an obstacle per tick
+     */
+    public static void main(String[] args) {
+        int races = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int laps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        double chance = args.length > 2 ? Double.parseDouble(args[2]) : Race.DEFAULT_OBSTACLE_CHANCE;
+
+        int cars = RaceSetup.createRace(laps).getCars().size();
+        double[][] tickTotal = new double[cars][2];
+        double[][] eventTotal = new double[cars][2];
+        double[] tickBest = new double[cars];
+        double[] eventBest = new double[cars];
+        long tickNanos = 0;
+        long eventNanos = 0;
+        long ticks = 0;
+        long events = 0;
+        long hits = 0;
+        long pits = 0;
+
+        for (int seed = 0; seed < races; seed++) {
+            Race race = newRace(laps, chance, seed);
+            long start = System.nanoTime();
+            race.startRace();
+            while (race.isRunning()) {
+                race.updateRaceStatus();
+            }
+            tickNanos += System.nanoTime() - start;
+            ticks += race.getTick();
+            for (int i = 0; i < cars; i++) {
+                Car car = race.getCars().get(i);
+                accumulate(tickTotal[i], car.getTotalTicks());
+                tickBest[i] += car.getBestLapTicks();
+            }
+
+            EventSimulator simulator = new EventSimulator(newRace(laps, chance, seed), seed);
+            start = System.nanoTime();
+            List<EventSimulator.Result> results = simulator.run();
+            eventNanos += System.nanoTime() - start;
+            events += simulator.getEventsProcessed();
+            for (int i = 0; i < cars; i++) {
+                EventSimulator.Result result = results.get(i);
+                accumulate(eventTotal[i], result.getTotalTicks());
+                eventBest[i] += result.getBestLapTicks();
+                hits += result.getHits();
+                pits += result.getPitStops();
+            }
+        }
+
+        System.out.printf("%d races of %d laps, obstacle chance %.3f per tick%n", races, laps, chance);
+        System.out.println("Car   ticks: race time (sd)  best lap   events: race time (sd)  best lap");
+        for (int i = 0; i < cars; i++) {
+            System.out.printf("%3d   %10.1f (%5.1f) %9.1f   %11.1f (%5.1f) %9.1f%n", i + 1,
+                    mean(tickTotal[i], races), sd(tickTotal[i], races), tickBest[i] / races,
+                    mean(eventTotal[i], races), sd(eventTotal[i], races), eventBest[i] / races);
+        }
+        System.out.printf("Event engine: %.2f hits and %.2f pit stops per car per race%n",
+                (double) hits / (races * cars), (double) pits / (races * cars));
+        System.out.printf("Tick engine:  %.1f ticks per race, %.3f ms per race%n",
+                (double) ticks / races, tickNanos / 1e6 / races);
+        System.out.printf("Event engine: %.1f events per race, %.3f ms per race (%.0fx faster)%n",
+                (double) events / races, eventNanos / 1e6 / races, (double) tickNanos / eventNanos);
+    }
+
+    private static Race newRace(int laps, double chance, long seed) {
+        Race race = RaceSetup.createRace(laps);
+        race.setLogging(false);
+        race.setObstacleChance(chance);
+        race.getRandomizer().setState(seed);
+        for (Car car : race.getCars()) {
+            car.setHumanControlled(false);
+        }
+        return race;
+    }
+
+    private static void accumulate(double[] sums, double value) {
+        sums[0] += value;
+        sums[1] += value * value;
+    }
+
+    private static double mean(double[] sums, int n) {
+        return sums[0] / n;
+    }
+
+    private static double sd(double[] sums, int n) {
+        double m = sums[0] / n;
+        return Math.sqrt(Math.max(0, sums[1] / n - m * m));
+    }
+}
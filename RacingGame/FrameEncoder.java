@@ -0,0 +1,104 @@
+/**
+ * Encodes a race tick by tick into framed {@link RaceFrame} records for network streaming.
+ *
+ * Each tick's frame is captured once; the delta against the previous tick and the
+ * full keyframe are each encoded at most once per tick, on first request, so a
+ * server can hand the same bytes to any number of clients.
+ *
+ * Record framing: a 4-byte payload length, a 1-byte record type, then the payload.
+ */
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+class FrameEncoder {
+    static final int FRAME_HEADER = 5;
+    static final byte KEYFRAME = ReplayRecorder.KEYFRAME;
+    static final byte DELTA = ReplayRecorder.DELTA;
+
+    private RaceFrame previous = new RaceFrame();
+    private RaceFrame current = new RaceFrame();
+    private boolean captured;
+    private boolean hasPrevious;
+    private boolean deltaEncoded;
+    private boolean keyframeEncoded;
+    private ByteBuffer keyframe = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer delta = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Captures the race state for the tick that was just simulated.
+     * @param race the race to capture
+     */
+    void capture(Race race) {
+        if (captured) {
+            RaceFrame swap = previous;
+            previous = current;
+            current = swap;
+            hasPrevious = true;
+        }
+        current.capture(race);
+        captured = true;
+        deltaEncoded = false;
+        keyframeEncoded = false;
+    }
+
+    /**
+     * Indicates whether a client that received the previous tick can be sent a delta.
+     * @return false on the first tick or if the field of cars changed
+     */
+    boolean isDeltaPossible() {
+        return hasPrevious && previous.getCarCount() == current.getCarCount();
+    }
+
+    /** @return the frame captured for this tick */
+    RaceFrame getFrame() {
+        return current;
+    }
+
+    /**
+     * Returns the framed delta record for this tick.
+     * @return a fresh read-only view positioned at the record start
+     */
+    ByteBuffer delta() {
+        if (!deltaEncoded) {
+            delta = encode(false, delta);
+            deltaEncoded = true;
+        }
+        return delta.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the framed keyframe record for this tick.
+     * @return a fresh read-only view positioned at the record start
+     */
+    ByteBuffer keyframe() {
+        if (!keyframeEncoded) {
+            keyframe = encode(true, keyframe);
+            keyframeEncoded = true;
+        }
+        return keyframe.asReadOnlyBuffer();
+    }
+
+    /**
+     * Encodes the current frame with its framing header, growing the buffer if needed.
+     */
+    private ByteBuffer encode(boolean asKeyframe, ByteBuffer buf) {
+        while (true) {
+            buf.clear();
+            try {
+                buf.position(FRAME_HEADER);
+                if (asKeyframe) {
+                    current.writeKeyframe(buf);
+                } else {
+                    current.writeDelta(previous, buf);
+                }
+                buf.putInt(0, buf.position() - FRAME_HEADER);
+                buf.put(4, asKeyframe ? KEYFRAME : DELTA);
+                buf.flip();
+                return buf;
+            } catch (BufferOverflowException e) {
+                buf = ByteBuffer.allocate(buf.capacity() * 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * The FrameExporter renders races offscreen into numbered image files, for
+ * highlight videos and thumbnails, without a display.
+ *
+ * Frames come from a recorded replay or from a race simulated headless on the
+ * calling thread, every tick or every n-th tick. Each frame is drawn with the
+ * race view's own {@link RaceDisplay#drawFrame} into a {@link BufferedImage},
+ * optionally scaled down, and written as a PNG or as raw 24-bit RGB.
+ *
+ * Drawing and encoding run on a fixed pool of worker threads. The caller only
+ * decodes or simulates a tick and copies it into a free slot, each slot holding
+ * one frame and one image, so workers never share anything. There are twice as
+ * many slots as workers: the pipeline is bounded, and the caller waits for a
+ * slot only when every worker is busy and one frame is queued for each. Frames
+ * exported per second therefore grow with the number of cores.
+ * {@link FrameExporterRunner} exports from the command line.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+public class FrameExporter implements AutoCloseable {
+    /** How frames are written. */
+    public enum Format {
+        /** One PNG file per frame. */
+        PNG("png"),
+        /** One file per frame of packed 8-bit R, G and B, row by row. */
+        RAW("rgb");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** Size of the world area drawn, which holds the whole oval. */
+    public static final int WIDTH = 1000;
+    public static final int HEIGHT = 520;
+
+    private static final long MAX_TICKS = 200_000;
+
+    /**
+     * One frame in flight and the image it is drawn into.
+     */
+    private static final class Slot {
+        final RaceFrame frame = new RaceFrame();
+        final BufferedImage image;
+        long number;
+
+        Slot(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+    }
+
+    private final Path dir;
+    private final Format format;
+    private final double scale;
+    private final ExecutorService pool;
+    private final int slots;
+    private final BlockingQueue<Slot> free;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private long submitted;
+
+    /**
+     * Creates an exporter writing into a directory, which is created if needed.
+     * @param dir     directory for the image files
+     * @param format  how frames are written
+     * @param scale   size of the images relative to {@link #WIDTH} x {@link #HEIGHT}
+     * @param threads number of frames drawn and encoded at once
+     * @throws IOException if the directory cannot be created
+     */
+    public FrameExporter(Path dir, Format format, double scale, int threads) throws IOException {
+        if (threads < 1 || !(scale > 0)) {
+            throw new IllegalArgumentException("Need at least one thread and a positive scale");
+        }
+        this.dir = Files.createDirectories(dir);
+        this.format = format;
+        this.scale = scale;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "frame-exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = 2 * threads;
+        this.free = new ArrayBlockingQueue<>(slots);
+        int width = (int) Math.ceil(WIDTH * scale);
+        int height = (int) Math.ceil(HEIGHT * scale);
+        for (int i = 0; i < slots; i++) {
+            free.add(new Slot(width, height));
+        }
+    }
+
+    /**
+     * Exports every n-th tick of a recording.
+     * @param replay the recording
+     * @param every  export one tick in this many, at least 1
+     * @return frames exported
+     * @throws IOException          if a frame could not be written
+     * @throws InterruptedException if interrupted while waiting for a slot
+     * @throws IllegalArgumentException if every is less than 1
+     */
+    public long exportReplay(ReplayFile replay, long every) throws IOException, InterruptedException {
+        checkEvery(every);
+        long start = submitted;
+        for (long tick = 0; tick < replay.getFrameCount(); tick += every) {
+            Slot slot = nextSlot();
+            replay.seek(tick, slot.frame);
+            submit(slot);
+        }
+        finish();
+        return submitted - start;
+    }
+
+    /**
+     * Runs a race to the end, or for at most 200,000 ticks, and exports every n-th tick.
+     * The caller sets it up: its cars' drivers, its seed and whether it logs.
+     * @param race  a race ready to start
+     * @param every export one tick in this many, at least 1
+     * @return frames exported
+     * @throws IOException          if a frame could not be written
+     * @throws InterruptedException if interrupted while waiting for a slot
+     * @throws IllegalArgumentException if every is less than 1
+     */
+    public long exportRace(Race race, long every) throws IOException, InterruptedException {
+        checkEvery(every);
+        long start = submitted;
+        race.startRace();
+        while (race.isRunning() && race.getTick() < MAX_TICKS) {
+            race.updateRaceStatus();
+            if (race.getTick() % every == 0 || !race.isRunning()) {
+                Slot slot = nextSlot();
+                slot.frame.capture(race);
+                submit(slot);
+            }
+        }
+        finish();
+        return submitted - start;
+    }
+
+    private static void checkEvery(long every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("Tick step must be at least 1: " + every);
+        }
+    }
+
+    /**
+     * Takes a free slot, waiting while every slot is in flight.
+     */
+    private Slot nextSlot() throws IOException, InterruptedException {
+        checkFailure();
+        return free.take();
+    }
+
+    /**
+     * Hands a filled slot to the workers, numbered in submission order.
+     */
+    private void submit(Slot slot) {
+        slot.number = submitted++;
+        pool.execute(() -> {
+            try {
+                render(slot.frame, slot.image, scale);
+                write(slot.image, dir.resolve(String.format("frame_%06d.%s", slot.number, format.extension)));
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                free.add(slot);
+            }
+        });
+    }
+
+    /**
+     * Waits for every frame in flight to be written.
+     * @throws IOException          if a frame could not be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void finish() throws IOException, InterruptedException {
+        Slot[] all = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            all[i] = free.take();
+        }
+        for (Slot slot : all) {
+            free.add(slot);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw new IOException("Could not export a frame", e);
+        }
+        if (e != null) {
+            throw new IllegalStateException("Could not draw a frame", e);
+        }
+    }
+
+    /**
+     * Draws a frame into an image with the race view's drawing routines.
+     * @param frame the frame to draw
+     * @param image the image to draw into
+     * @param scale size of the image relative to the world area drawn
+     */
+    static void render(RaceFrame frame, BufferedImage image, double scale) {
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.scale(scale, scale);
+            RaceDisplay.drawFrame(g2, frame, WIDTH, HEIGHT);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Writes an image to a file in the exporter's format.
+     */
+    private void write(BufferedImage image, Path file) throws IOException {
+        if (format == Format.PNG) {
+            if (!ImageIO.write(image, "png", file.toFile())) {
+                throw new IOException("No PNG writer available");
+            }
+            return;
+        }
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        byte[] rgb = new byte[pixels.length * 3];
+        for (int i = 0, j = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            rgb[j++] = (byte) (p >> 16);
+            rgb[j++] = (byte) (p >> 8);
+            rgb[j++] = (byte) p;
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(rgb);
+        }
+    }
+
+    /** @return frames handed to the workers so far */
+    public long getFramesSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Stops the worker threads, abandoning any frames still in flight.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
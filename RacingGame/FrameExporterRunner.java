@@ -0,0 +1,50 @@
+/**
+ * Exports frames with a {@link FrameExporter} from the command line, from a
+ * replay file or, given {@code race}, from a two-lap race of the standard setup
+ * simulated headless with every car driven by the AI, and reports the frames
+ * written per second.
+ *
+ * Usage: java FrameExporterRunner replay-file|race output-dir [png|raw] [every] [scale] [threads]
+ */
+
+import java.nio.file.Paths;
+
+public class FrameExporterRunner {
+    /**
+     * Exports a replay file, or a headless race of the standard setup driven by the AI.
+     * @param args source, output directory, then optional format, tick step, scale and threads
+     * @throws Exception if the export fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java FrameExporterRunner replay-file|race output-dir [png|raw] [every] [scale] [threads]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        FrameExporter.Format format = args.length > 2
+                ? FrameExporter.Format.valueOf(args[2].toUpperCase()) : FrameExporter.Format.PNG;
+        long every = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        double scale = args.length > 4 ? Double.parseDouble(args[4]) : 1;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        long frames;
+        try (FrameExporter exporter = new FrameExporter(Paths.get(args[1]), format, scale, threads)) {
+            if (args[0].equals("race")) {
+                Race race = RaceSetup.createRace(2);
+                race.setLogging(false);
+                for (Car car : race.getCars()) {
+                    car.setHumanControlled(false);
+                }
+                frames = exporter.exportRace(race, every);
+            } else {
+                try (ReplayFile replay = new ReplayFile(Paths.get(args[0]))) {
+                    frames = exporter.exportReplay(replay, every);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d frames to %s on %d threads in %.1fs (%.0f frames/s)%n",
+                frames, args[1], threads, seconds, frames / seconds);
+    }
+}
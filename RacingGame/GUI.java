@@ -1,5 +1,7 @@
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Responsible for launching the graphical user interface (GUI)
@@ -18,13 +20,40 @@ public class GUI {
      * @param race the {@link Race} object that holds all race logic and data
      */
     public static void launchGUI(Race race) {
+        launchGUI(race, null);
+    }
+
+    /**
+     * Launches the GUI window with all-time bests shown from a leaderboard.
+     *
+     * @param race        the {@link Race} object that holds all race logic and data
+     * @param leaderboard stored results to show, or null
+     */
+    public static void launchGUI(Race race, Leaderboard leaderboard) {
+        launchGUI(race, leaderboard, null);
+    }
+
+    /**
+     * Launches the GUI window with all-time bests and pit strategy advice.
+     *
+     * @param race        the {@link Race} object that holds all race logic and data
+     * @param leaderboard stored results to show, or null
+     * @param pitAdvisor  advisor listening to the race, or null for no advice
+     */
+    public static void launchGUI(Race race, Leaderboard leaderboard, PitAdvisor pitAdvisor) {
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Oval Car Racing Simulator");
-            RaceDisplay display = new RaceDisplay(race);
+            RaceDisplay display = new RaceDisplay(race, leaderboard, pitAdvisor);
             race.setRaceDisplay(display);
             frame.add(display);
             frame.pack();
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    display.close();
+                }
+            });
             frame.setLocationRelativeTo(null);
             frame.setVisible(true);
         });
@@ -0,0 +1,155 @@
+/**
+ * KeyboardSteering turns the steering keys into one steering input per tick.
+ *
+ * Key presses and releases only set and clear bits in an atomic bitmask; nothing
+ * moves when a key event arrives. At the start of every tick {@link #beforeTick}
+ * samples the mask once and steers the player's car, so steering no longer
+ * depends on the keyboard's auto-repeat rate and runs at the simulation's pace at
+ * every time-warp rate. A press is also latched until the next sample, so a tap
+ * shorter than a tick still counts. Steering ramps up to
+ * {@link MultiplayerServer#MAX_STEER} per tick, the limit remote players have,
+ * and eases back to straight when the keys are let go.
+ *
+ * Input latency is measured from the moment a key event is handled to the
+ * presentation of the first frame drawn after a tick that used it. The race view
+ * reports each presented frame through {@link #framePresented(long)}.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class KeyboardSteering implements RaceListener {
+    /** Bit for the steer-left key. */
+    public static final int LEFT = 1;
+    /** Bit for the steer-right key. */
+    public static final int RIGHT = 2;
+
+    // Change in steering per tick, so full lock is reached in two ticks.
+    static final float STEER_RAMP = MultiplayerServer.MAX_STEER / 2;
+    // Weight of the newest sample in the running average latency.
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final AtomicInteger held = new AtomicInteger();
+    private final AtomicInteger pressed = new AtomicInteger();
+    // When the oldest key event not yet sampled was handled, or 0.
+    private final AtomicLong pendingSince = new AtomicLong();
+
+    private float steer;
+    // When the oldest key event used by a tick not yet on screen was handled, or 0.
+    private long sampledSince;
+
+    private long latencies;
+    private long lastLatencyNanos;
+    private double averageLatencyNanos;
+    private long worstLatencyNanos;
+
+    /**
+     * Records a key going down. May be called from any thread.
+     * @param key {@link #LEFT} or {@link #RIGHT}
+     */
+    public void press(int key) {
+        held.getAndUpdate(bits -> bits | key);
+        pressed.getAndUpdate(bits -> bits | key);
+        stamp();
+    }
+
+    /**
+     * Records a key coming up. May be called from any thread.
+     * @param key {@link #LEFT} or {@link #RIGHT}
+     */
+    public void release(int key) {
+        held.getAndUpdate(bits -> bits & ~key);
+        stamp();
+    }
+
+    private void stamp() {
+        pendingSince.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * Reads the keys held, or pressed since the previous sample, and forgets the presses.
+     * @return bitmask of {@link #LEFT} and {@link #RIGHT}
+     */
+    int sample() {
+        long since = pendingSince.getAndSet(0);
+        if (since != 0 && sampledSince == 0) {
+            sampledSince = since;
+        }
+        return held.get() | pressed.getAndSet(0);
+    }
+
+    /**
+     * Samples the keys and steers the player's car for this tick.
+     * @param race the race about to be advanced
+     */
+    @Override
+    public void beforeTick(Race race) {
+        int keys = sample();
+        float target = 0f;
+        if ((keys & LEFT) != 0) {
+            target -= MultiplayerServer.MAX_STEER;
+        }
+        if ((keys & RIGHT) != 0) {
+            target += MultiplayerServer.MAX_STEER;
+        }
+        steer += Math.max(-STEER_RAMP, Math.min(STEER_RAMP, target - steer));
+        Car car = race.getUserCar();
+        if (car != null && steer != 0f && !car.isFinished()) {
+            car.adjustLateralOffset(steer);
+        }
+    }
+
+    @Override
+    public void onTick(Race race) {
+    }
+
+    /**
+     * Forgets held keys, steering and unmeasured input, as when the race is
+     * started again after a pause or a reset.
+     */
+    public void reset() {
+        held.set(0);
+        pressed.set(0);
+        pendingSince.set(0);
+        steer = 0f;
+        sampledSince = 0;
+    }
+
+    /**
+     * Notes that a frame showing every tick run so far is on screen, and records the
+     * latency of the input those ticks used.
+     * @param nowNanos {@link System#nanoTime()} when the frame was presented
+     */
+    public void framePresented(long nowNanos) {
+        if (sampledSince == 0) {
+            return;
+        }
+        long latency = nowNanos - sampledSince;
+        sampledSince = 0;
+        lastLatencyNanos = latency;
+        worstLatencyNanos = Math.max(worstLatencyNanos, latency);
+        averageLatencyNanos = latencies == 0 ? latency
+                : averageLatencyNanos + AVERAGE_WEIGHT * (latency - averageLatencyNanos);
+        latencies++;
+    }
+
+    /** @return number of inputs whose latency has been measured */
+    public long getLatencyCount() {
+        return latencies;
+    }
+
+    /** @return latency of the latest measured input, in milliseconds */
+    public double getLastLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    /** @return running average input latency, in milliseconds */
+    public double getAverageLatencyMillis() {
+        return averageLatencyNanos / 1e6;
+    }
+
+    /** @return worst input latency so far, in milliseconds */
+    public double getWorstLatencyMillis() {
+        return worstLatencyNanos / 1e6;
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Measures {@link CarKinematics} kernels on large fields of cars and checks that
+ * the SIMD kernel, when available, matches the scalar one exactly.
+ *
+ * It also races the standard race both ways, each car moved by its own
+ * {@code Car.updatePosition} and every car moved through the kernel with
+ * {@link Race#setKinematics(CarKinematics.Kernel)}, from the same seeds. The two
+ * differ only in float rounding and the kernel's polynomial sine and cosine, so
+ * cars should stay within a small fraction of a pixel and finish with the same
+ * race and best lap times.
+ *
+ * For each field size both kernels move identical fields for a number of ticks
+ * after a warm-up, and the best time per car-tick over several rounds is reported.
+ * Start the JVM with {@code --add-modules jdk.incubator.vector} (and compile
+ * {@code vector/VectorKinematics.java}) to include the SIMD kernel.
+ *
+ * Usage: java KinematicsBenchmark [ticks] [sizes...]
+ */
+
+import java.util.Arrays;
+
+public class KinematicsBenchmark {
+    private static final float[] CHECKPOINTS = {
+            0f, (float) (Math.PI / 2), (float) Math.PI, (float) (3 * Math.PI / 2)
+    };
+    private static final int ROUNDS = 5;
+    private static final int PARITY_LAPS = 3;
+    private static final int PARITY_SEEDS = 10;
+
+    /**
+     * Builds a field of cars spread round the track with varied speeds and lanes.
+     */
+    private static CarKinematics field(int cars, long seed) {
+        Randomizer random = new Randomizer(seed);
+        CarKinematics field = new CarKinematics(cars, CHECKPOINTS);
+        for (int i = 0; i < cars; i++) {
+            float speed = 8f + random.nextFloat() * 6f;
+            float lateral = (random.nextFloat() * 2f - 1f) * Car.MAX_LATERAL_OFFSET;
+            field.addCar(random.nextInt(CHECKPOINTS.length), speed, lateral);
+        }
+        return field;
+    }
+
+    /**
+     * Returns the best nanoseconds per car-tick over several rounds.
+     */
+    private static double measure(CarKinematics.Kernel kernel, int cars, int ticks) {
+        CarKinematics warm = field(cars, 1);
+        for (int t = 0; t < ticks; t++) {
+            kernel.step(warm);
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            CarKinematics f = field(cars, round);
+            long start = System.nanoTime();
+            for (int t = 0; t < ticks; t++) {
+                kernel.step(f);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / ((double) cars * ticks));
+        }
+        return best;
+    }
+
+    /**
+     * Runs both kernels over the same field and compares every car's position.
+     */
+    private static boolean identical(CarKinematics.Kernel kernel, int cars, int ticks) {
+        CarKinematics expected = field(cars, 42);
+        CarKinematics actual = field(cars, 42);
+        for (int t = 0; t < ticks; t++) {
+            CarKinematics.SCALAR.step(expected);
+            kernel.step(actual);
+        }
+        return Arrays.equals(expected.x, actual.x)
+                && Arrays.equals(expected.y, actual.y)
+                && Arrays.equals(expected.angle, actual.angle)
+                && Arrays.equals(expected.laps, actual.laps);
+    }
+
+    /**
+     * Races the standard race with each car's own position update and through the
+     * kernel from the same seeds.
+     * @return the largest distance between a car's two positions on any tick, or -1
+     *         if a car's race or best lap time differs
+     */
+    private static double raceParity(CarKinematics.Kernel kernel) {
+        double worst = 0;
+        for (long seed = 1; seed <= PARITY_SEEDS; seed++) {
+            Race expected = standardRace(seed, null);
+            Race actual = standardRace(seed, kernel);
+            while (expected.isRunning() || actual.isRunning()) {
+                expected.updateRaceStatus();
+                actual.updateRaceStatus();
+                for (int i = 0; i < expected.getCars().size(); i++) {
+                    Car e = expected.getCars().get(i);
+                    Car a = actual.getCars().get(i);
+                    worst = Math.max(worst, Math.hypot(e.getCurrentX() - a.getCurrentX(),
+                            e.getCurrentY() - a.getCurrentY()));
+                }
+            }
+            for (int i = 0; i < expected.getCars().size(); i++) {
+                Car e = expected.getCars().get(i);
+                Car a = actual.getCars().get(i);
+                if (e.getTotalTicks() != a.getTotalTicks() || e.getBestLapTicks() != a.getBestLapTicks()) {
+                    return -1;
+                }
+            }
+        }
+        return worst;
+    }
+
+    private static Race standardRace(long seed, CarKinematics.Kernel kernel) {
+        Race race = RaceSetup.createRace(PARITY_LAPS);
+        race.setLogging(false);
+        race.getRandomizer().setState(seed);
+        for (Car car : race.getCars()) {
+            car.setHumanControlled(false);
+        }
+        race.setKinematics(kernel);
+        race.startRace();
+        return race;
+    }
+
+    /**
+     * Benchmarks the kernels.
+     * @param args optional tick count and field sizes
+     */
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] sizes = {10_000, 100_000, 1_000_000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        CarKinematics.Kernel best = CarKinematics.bestKernel();
+        if (best == CarKinematics.SCALAR) {
+            System.out.println("SIMD kernel unavailable; run with --add-modules jdk.incubator.vector.");
+        } else {
+            System.out.println(best.getName() + " matches scalar exactly: " + identical(best, 10_007, 1000));
+        }
+        double parity = raceParity(best);
+        if (parity < 0) {
+            System.out.println("Race through " + best.getName() + " kernel: results differ from Car.updatePosition");
+        } else {
+            System.out.printf("Race through %s kernel: cars within %.4f px of Car.updatePosition, same results%n",
+                    best.getName(), parity);
+        }
+        System.out.printf("%10s %14s %14s %8s%n", "cars", "scalar ns/car", best.getName() + " ns/car", "speedup");
+        for (int cars : sizes) {
+            int t = (int) Math.max(1, Math.min(ticks, 20_000_000L / cars));
+            double scalar = measure(CarKinematics.SCALAR, cars, t);
+            double vector = best == CarKinematics.SCALAR ? scalar : measure(best, cars, t);
+            System.out.printf("%10d %14.2f %14.2f %7.1fx%n", cars, scalar, vector, scalar / vector);
+        }
+    }
+}
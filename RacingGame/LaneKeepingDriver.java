@@ -0,0 +1,25 @@
+/**
+ * Steers towards a fixed lane and holds it, ignoring obstacles.
+ */
+public class LaneKeepingDriver implements DriverStrategy {
+    private final float lane;
+
+    /**
+     * Creates a driver that keeps to the given lane.
+     * @param lane lateral offset to hold; 0 is the centre line
+     */
+    public LaneKeepingDriver(float lane) {
+        this.lane = Math.max(-Car.MAX_LATERAL_OFFSET, Math.min(Car.MAX_LATERAL_OFFSET, lane));
+    }
+
+    /** @return the lateral offset this driver holds */
+    public float getLane() {
+        return lane;
+    }
+
+    @Override
+    public float steer(Car car, ObstacleIndex obstacles, Randomizer random) {
+        float delta = lane - car.getLateralOffset();
+        return Math.max(-MAX_STEP, Math.min(MAX_STEP, delta));
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * The Leaderboard serves all-time top lists and personal bests from a
+ * {@link ResultsStore} without rescanning it every time one is shown.
+ *
+ * Each list is identified by a {@link Key}: whether it ranks best laps or race
+ * times, and optionally the number of laps, one car and one setup. The first
+ * request for a key scans the store's index; the list is then kept in a bounded
+ * cache with least-recently-used eviction, so the start page and the scoreboard
+ * can ask for it every frame without any I/O. When a race finishes the leaderboard
+ * stores it and merges its results into every cached list, so cached lists stay
+ * current without another scan.
+ *
+ * Hits, misses and evictions are counted so the cache can be sized. The game has
+ * a single oval, so lists are not split by track.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Leaderboard implements RaceListener {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int DEFAULT_SIZE = 10;
+
+    /**
+     * Identifies one top list.
+     */
+    public static final class Key {
+        final boolean byLap;
+        final int laps;
+        final int carId;
+        final float[] setup;
+
+        /**
+         * Creates a key; zero or null filter values match anything.
+         * @param byLap true to rank best laps, false to rank race times
+         * @param laps  laps in the race, or 0
+         * @param carId car ID, or 0
+         * @param setup horsepower, max speed, tyre grip and starting condition, or null
+         */
+        public Key(boolean byLap, int laps, int carId, float[] setup) {
+            this.byLap = byLap;
+            this.laps = laps;
+            this.carId = carId;
+            this.setup = setup == null ? null : setup.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return byLap == other.byLap && laps == other.laps && carId == other.carId
+                    && Arrays.equals(setup, other.setup);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = byLap ? 1 : 0;
+            h = 31 * h + laps;
+            h = 31 * h + carId;
+            return 31 * h + Arrays.hashCode(setup);
+        }
+    }
+
+    private final ResultsStore store;
+    private final int size;
+    private final Map<Key, List<ResultsStore.Entry>> cache;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a leaderboard with the default cache capacity and list size.
+     * @param store the results to rank
+     */
+    public Leaderboard(ResultsStore store) {
+        this(store, DEFAULT_CAPACITY, DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a leaderboard.
+     * @param store    the results to rank
+     * @param capacity most lists kept in memory
+     * @param size     results per list
+     */
+    public Leaderboard(ResultsStore store, int capacity, int size) {
+        if (capacity < 1 || size < 1) {
+            throw new IllegalArgumentException("Capacity and size must be positive");
+        }
+        this.store = store;
+        this.size = size;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<ResultsStore.Entry>> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a top list, from the cache if it is there. The list never changes, so
+     * callers may read it on any thread; new results replace it in the cache.
+     * @param key which list
+     * @return up to the list size of results, best first
+     */
+    public synchronized List<ResultsStore.Entry> top(Key key) {
+        List<ResultsStore.Entry> list = cache.get(key);
+        if (list != null) {
+            hits++;
+            return list;
+        }
+        misses++;
+        try {
+            list = Collections.unmodifiableList(store.top(size, key.byLap, key.laps, key.carId, key.setup));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cache.put(key, list);
+        return list;
+    }
+
+    /**
+     * Returns the fastest laps ever driven.
+     * @return the fastest laps, fastest first
+     */
+    public List<ResultsStore.Entry> fastestLaps() {
+        return top(new Key(true, 0, 0, null));
+    }
+
+    /**
+     * Returns a car's personal best lap.
+     * @param carId the car's ID
+     * @return its fastest lap ever, or null if it has none
+     */
+    public ResultsStore.Entry personalBestLap(int carId) {
+        List<ResultsStore.Entry> list = top(new Key(true, 0, carId, null));
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Returns a car's personal best race time over a number of laps.
+     * @param carId the car's ID
+     * @param laps  laps in the race
+     * @return its fastest finished race of that length, or null if it has none
+     */
+    public ResultsStore.Entry personalBestRace(int carId, int laps) {
+        List<ResultsStore.Entry> list = top(new Key(false, laps, carId, null));
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Passes the tick on so the store can record lap splits.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public void onTick(Race race) {
+        store.onTick(race);
+    }
+
+    /**
+     * Stores the finished race and merges its results into the cached lists.
+     * @param race the finished race
+     */
+    @Override
+    public synchronized void onRaceFinished(Race race) {
+        try {
+            add(store.raceEntries(store.append(race)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Merges newly stored results into every cached list they belong in.
+     * @param results one race's index entries
+     */
+    synchronized void add(List<ResultsStore.Entry> results) {
+        for (Map.Entry<Key, List<ResultsStore.Entry>> cached : cache.entrySet()) {
+            Key key = cached.getKey();
+            // Lists already handed out stay as they were; a changed list is a new one.
+            List<ResultsStore.Entry> list = null;
+            for (ResultsStore.Entry result : results) {
+                if (!result.matches(key.laps, key.carId, key.setup)
+                        || (key.byLap ? result.bestLapTicks == ResultsStore.NO_LAP : !result.finished)) {
+                    continue;
+                }
+                List<ResultsStore.Entry> current = list != null ? list : cached.getValue();
+                int time = result.time(key.byLap);
+                int at = current.size();
+                while (at > 0 && current.get(at - 1).time(key.byLap) > time) {
+                    at--;
+                }
+                if (at < size) {
+                    if (list == null) {
+                        list = new ArrayList<>(current);
+                    }
+                    if (list.size() == size) {
+                        list.remove(size - 1);
+                    }
+                    list.add(at, result);
+                }
+            }
+            if (list != null) {
+                cached.setValue(Collections.unmodifiableList(list));
+            }
+        }
+    }
+
+    /** @return requests served from the cache */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return requests that had to scan the store */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** @return lists dropped to make room for others */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** @return fraction of requests served from the cache */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /** @return number of lists in the cache */
+    public synchronized int getCachedLists() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Leaderboard cache: %d lists, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                cache.size(), hits, misses, 100 * getHitRate(), evictions);
+    }
+}
@@ -86,4 +86,40 @@ public class Location {
     public float getAngle() {
         return angle;
     }
+
+    /**
+     * Two locations are equal when every field matches, so routes can share them.
+     *
+     * @param o the object to compare with
+     * @return true if o is an identical location
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Location)) {
+            return false;
+        }
+        Location other = (Location) o;
+        return name.equals(other.name)
+                && Float.compare(x, other.x) == 0
+                && Float.compare(y, other.y) == 0
+                && Float.compare(angle, other.angle) == 0
+                && hasObstacle == other.hasObstacle;
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        int h = name.hashCode();
+        h = 31 * h + Float.floatToIntBits(x);
+        h = 31 * h + Float.floatToIntBits(y);
+        h = 31 * h + Float.floatToIntBits(angle);
+        return 31 * h + (hasObstacle ? 1 : 0);
+    }
 }
@@ -0,0 +1,286 @@
+/**
+ * The LodRenderer draws large fields of cars and obstacles at low detail.
+ *
+ * Full detail costs two transform changes, two filled rectangles and a text label
+ * per car, which is fine for a handful of cars but not for thousands. Above
+ * {@link #DETAIL_LIMIT} objects, or when the view is zoomed out past
+ * {@link #DETAIL_SCALE}, the race view instead collects every car and obstacle
+ * into a batch and writes them straight into the {@code int[]} raster of one
+ * image: the cached background is copied in, each obstacle becomes a blended
+ * square and each car a solid sprite of its body turned to the nearest of
+ * {@link #HEADINGS} headings, with no shadow or label. The image is then drawn
+ * in a single call. When a body shrinks below two pixels it is drawn as a point.
+ *
+ * Sprites are rasterised once per zoom level, so a frame is a raster copy plus
+ * a few array writes per object. {@link RenderBenchmark} measures both paths.
+ */
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+public class LodRenderer {
+    /** Most cars and obstacles together drawn in full detail. */
+    public static final int DETAIL_LIMIT = 256;
+    /** Zoom below which sprites are drawn whatever the count. */
+    public static final double DETAIL_SCALE = 0.5;
+    /** Headings a car sprite is rasterised at. */
+    public static final int HEADINGS = 32;
+
+    private static final int OBSTACLE_SIZE = 15;
+
+    // Target raster and the background copied into it at the start of each frame.
+    private BufferedImage image;
+    private int[] pixels;
+    private int[] backdrop;
+    private int width;
+    private int height;
+
+    // World to screen: screen = world * scale + offset.
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+
+    // Batch of objects to draw, as parallel arrays.
+    private float[] carX = new float[64];
+    private float[] carY = new float[64];
+    private float[] carAngle = new float[64];
+    private int[] carRgb = new int[64];
+    private int cars;
+    private float[] obsX = new float[64];
+    private float[] obsY = new float[64];
+    private int[] obsArgb = new int[64];
+    private int obstacles;
+
+    // Per heading, the body's pixels as (dx, dy) pairs from its centre, at spriteScale.
+    private int[][] sprites;
+    private int spriteRadius;
+    private double spriteScale = Double.NaN;
+
+    /**
+     * Returns whether a view should be drawn with sprites rather than in full detail.
+     * @param objects cars and obstacles in view
+     * @param scale   current zoom, 1 for the normal view
+     * @return true to use this renderer
+     */
+    public static boolean useSprites(int objects, double scale) {
+        return objects > DETAIL_LIMIT || scale < DETAIL_SCALE;
+    }
+
+    /**
+     * Sets the background each frame starts from; call again whenever it is rebuilt.
+     * @param background the background, at the size of the view
+     */
+    public void setBackdrop(BufferedImage background) {
+        if (image == null || background.getWidth() != width || background.getHeight() != height) {
+            width = background.getWidth();
+            height = background.getHeight();
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            backdrop = new int[width * height];
+        }
+        background.getRGB(0, 0, width, height, backdrop, 0, width);
+    }
+
+    /**
+     * Sets how world coordinates map onto the view.
+     * @param scale   pixels per world unit
+     * @param offsetX screen X of world X zero
+     * @param offsetY screen Y of world Y zero
+     */
+    public void setView(double scale, double offsetX, double offsetY) {
+        this.scale = scale;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * Starts a new batch, forgetting the objects of the previous one.
+     */
+    public void begin() {
+        cars = 0;
+        obstacles = 0;
+    }
+
+    /**
+     * Adds a car to the batch.
+     * @param x     world X of the car's centre
+     * @param y     world Y of the car's centre
+     * @param angle heading in radians
+     * @param rgb   body color
+     */
+    public void addCar(float x, float y, float angle, int rgb) {
+        if (cars == carX.length) {
+            int n = cars * 2;
+            carX = Arrays.copyOf(carX, n);
+            carY = Arrays.copyOf(carY, n);
+            carAngle = Arrays.copyOf(carAngle, n);
+            carRgb = Arrays.copyOf(carRgb, n);
+        }
+        carX[cars] = x;
+        carY[cars] = y;
+        carAngle[cars] = angle;
+        carRgb[cars] = rgb;
+        cars++;
+    }
+
+    /**
+     * Adds an obstacle to the batch.
+     * @param x    world X of the obstacle's centre
+     * @param y    world Y of the obstacle's centre
+     * @param argb color, with its alpha as it fades out
+     */
+    public void addObstacle(float x, float y, int argb) {
+        if (obstacles == obsX.length) {
+            int n = obstacles * 2;
+            obsX = Arrays.copyOf(obsX, n);
+            obsY = Arrays.copyOf(obsY, n);
+            obsArgb = Arrays.copyOf(obsArgb, n);
+        }
+        obsX[obstacles] = x;
+        obsY[obstacles] = y;
+        obsArgb[obstacles] = argb;
+        obstacles++;
+    }
+
+    /**
+     * Draws the background and the batch, obstacles under cars, in one image.
+     * @param g2 graphics of the view
+     */
+    public void flush(Graphics2D g2) {
+        if (image == null) {
+            throw new IllegalStateException("No backdrop set");
+        }
+        System.arraycopy(backdrop, 0, pixels, 0, pixels.length);
+        drawObstacles();
+        drawCars();
+        g2.drawImage(image, 0, 0, null);
+    }
+
+    /** @return cars in the current batch */
+    public int getCarCount() {
+        return cars;
+    }
+
+    /** @return obstacles in the current batch */
+    public int getObstacleCount() {
+        return obstacles;
+    }
+
+    /**
+     * Blends each obstacle in as a square, or writes it straight in when opaque.
+     */
+    private void drawObstacles() {
+        int size = Math.max(1, (int) Math.round(OBSTACLE_SIZE * scale));
+        for (int i = 0; i < obstacles; i++) {
+            int x0 = (int) (obsX[i] * scale + offsetX) - size / 2;
+            int y0 = (int) (obsY[i] * scale + offsetY) - size / 2;
+            int x1 = Math.min(width, x0 + size);
+            int y1 = Math.min(height, y0 + size);
+            x0 = Math.max(0, x0);
+            y0 = Math.max(0, y0);
+            int argb = obsArgb[i];
+            int alpha = argb >>> 24;
+            if (alpha == 0) {
+                continue;
+            }
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                if (alpha == 255) {
+                    Arrays.fill(pixels, row + x0, row + Math.max(x0, x1), argb);
+                } else {
+                    for (int x = x0; x < x1; x++) {
+                        pixels[row + x] = blend(pixels[row + x], argb, alpha);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes each car's sprite for its heading, checking bounds only near the edges.
+     */
+    private void drawCars() {
+        if (spriteScale != scale) {
+            buildSprites();
+        }
+        int r = spriteRadius;
+        for (int i = 0; i < cars; i++) {
+            int cx = (int) (carX[i] * scale + offsetX);
+            int cy = (int) (carY[i] * scale + offsetY);
+            if (cx < -r || cy < -r || cx >= width + r || cy >= height + r) {
+                continue;
+            }
+            int[] sprite = sprites[heading(carAngle[i])];
+            int rgb = carRgb[i];
+            if (cx >= r && cy >= r && cx < width - r && cy < height - r) {
+                int centre = cy * width + cx;
+                for (int k = 0; k < sprite.length; k += 2) {
+                    pixels[centre + sprite[k + 1] * width + sprite[k]] = rgb;
+                }
+            } else {
+                for (int k = 0; k < sprite.length; k += 2) {
+                    int x = cx + sprite[k];
+                    int y = cy + sprite[k + 1];
+                    if (x >= 0 && y >= 0 && x < width && y < height) {
+                        pixels[y * width + x] = rgb;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sprite index nearest to a heading.
+     */
+    private static int heading(float angle) {
+        return Math.floorMod((int) Math.floor(angle * (HEADINGS / (2 * Math.PI)) + 0.5), HEADINGS);
+    }
+
+    /**
+     * Rasterises a car body at every heading for the current zoom: a pixel belongs to
+     * the sprite when its centre, turned back by the heading, falls inside the body.
+     */
+    private void buildSprites() {
+        double w = RaceDisplay.CAR_WIDTH * scale;
+        double h = RaceDisplay.CAR_HEIGHT * scale;
+        spriteRadius = (int) Math.ceil(Math.hypot(w, h) / 2);
+        sprites = new int[HEADINGS][];
+        for (int k = 0; k < HEADINGS; k++) {
+            double theta = 2 * Math.PI * k / HEADINGS;
+            double cos = Math.cos(theta);
+            double sin = Math.sin(theta);
+            int[] offsets = new int[2 * (2 * spriteRadius + 1) * (2 * spriteRadius + 1)];
+            int n = 0;
+            for (int dy = -spriteRadius; dy <= spriteRadius; dy++) {
+                for (int dx = -spriteRadius; dx <= spriteRadius; dx++) {
+                    double lx = dx * cos + dy * sin;
+                    double ly = -dx * sin + dy * cos;
+                    if (Math.abs(lx) <= w / 2 && Math.abs(ly) <= h / 2) {
+                        offsets[n++] = dx;
+                        offsets[n++] = dy;
+                    }
+                }
+            }
+            // Too small to cover a pixel centre: draw a point.
+            sprites[k] = n == 0 ? new int[] {0, 0} : Arrays.copyOf(offsets, n);
+        }
+        spriteScale = scale;
+    }
+
+    /**
+     * Blends a color over a pixel.
+     * @param dst   pixel already there
+     * @param src   color to blend in
+     * @param alpha its opacity, 0 to 255
+     * @return the blended pixel
+     */
+    private static int blend(int dst, int src, int alpha) {
+        int inv = 255 - alpha;
+        int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inv) / 255;
+        int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inv) / 255;
+        int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inv) / 255;
+        return (r << 16) | (g << 8) | b;
+    }
+}
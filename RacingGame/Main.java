@@ -5,14 +5,110 @@
  * Developed by: Lucas Martins
  */
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+
 public class Main {
     /**
      * The main method of the program.
+     * Passing {@code -Dtelemetry=<file>} records a per-tick trace of every car to that file,
+     * {@code -Dreplay=<file>} records a replay that can be watched from the start page,
+     * {@code -Dspectator.port=<port>} streams the race to {@link SpectatorViewer}s,
+     * {@code -Dmultiplayer.port=<port>} lets {@link MultiplayerClient}s drive the AI cars,
+     * {@code -Dkinematics=true} moves the cars in batches through {@link CarKinematics#bestKernel()},
+     * {@code -Dpit.advice=true} shows pit strategy advice from a {@link PitAdvisor} for the player's car,
+     * and {@code -Dresults=<dir>} keeps every finished race in a {@link ResultsStore} and shows
+     * all-time bests from it.
      *
      * @param args command-line arguments (not used in this application)
+     * @throws IOException if a recording file or a server port cannot be opened
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Race race = RaceSetup.initializeRace();
-        GUI.launchGUI(race);
+
+        if (Boolean.getBoolean("kinematics")) {
+            race.setKinematics(CarKinematics.bestKernel());
+        }
+
+        String telemetryFile = System.getProperty("telemetry");
+        if (telemetryFile != null) {
+            TelemetryRecorder telemetry = new TelemetryRecorder(Paths.get(telemetryFile), race.getCars());
+            race.addListener(telemetry);
+            // The file is trimmed to the recorded ticks when the recorder is closed.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    telemetry.close();
+                } catch (IOException e) {
+                    System.err.println("Could not finish telemetry: " + e.getMessage());
+                }
+            }));
+        }
+
+        String replayFile = System.getProperty("replay");
+        if (replayFile != null) {
+            ReplayRecorder recorder = new ReplayRecorder(Paths.get(replayFile));
+            race.addListener(recorder);
+            // The seek index is written when the recorder is closed.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    System.err.println("Could not finish replay: " + e.getMessage());
+                }
+            }));
+        }
+
+        String spectatorPort = System.getProperty("spectator.port");
+        if (spectatorPort != null) {
+            SpectatorServer spectators = new SpectatorServer(Integer.parseInt(spectatorPort));
+            race.addListener(spectators);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    spectators.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close spectator server: " + e.getMessage());
+                }
+            }));
+        }
+
+        String multiplayerPort = System.getProperty("multiplayer.port");
+        if (multiplayerPort != null) {
+            MultiplayerServer players = new MultiplayerServer(new InetSocketAddress(Integer.parseInt(multiplayerPort)));
+            race.addListener(players);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    players.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close multiplayer server: " + e.getMessage());
+                }
+            }));
+        }
+
+        String resultsDir = System.getProperty("results");
+        Leaderboard leaderboard = null;
+        if (resultsDir != null) {
+            ResultsStore store = new ResultsStore(Paths.get(resultsDir));
+            leaderboard = new Leaderboard(store);
+            race.addListener(leaderboard);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close results store: " + e.getMessage());
+                }
+            }));
+        }
+
+        PitAdvisor pitAdvisor = null;
+        Car advised = race.getUserCar() != null ? race.getUserCar()
+                : race.getCars().isEmpty() ? null : race.getCars().get(0);
+        if (Boolean.getBoolean("pit.advice") && advised != null) {
+            pitAdvisor = new PitAdvisor(advised.getId(), PitAdvisor.DEFAULT_SAMPLES,
+                    Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+            race.addListener(pitAdvisor);
+        }
+
+        GUI.launchGUI(race, leaderboard, pitAdvisor);
     }
-}
\ No newline at end of file
+}
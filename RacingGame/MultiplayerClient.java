@@ -0,0 +1,347 @@
+/**
+ * The MultiplayerClient joins a {@link MultiplayerServer} and drives one car remotely.
+ *
+ * Steering is applied to a locally predicted lateral offset straight away, so the
+ * player's own car responds without waiting for the network. Inputs are stamped
+ * with the server tick they are meant for, collected into a batch and sent once
+ * per client tick. Every snapshot from the server carries the sequence number of
+ * the last input it applied; the client then takes the server's offset for its car
+ * and replays only the inputs the server has not seen yet.
+ *
+ * The connection is non-blocking, so the network never holds up the window. Each
+ * batch is copied into a bounded outbound buffer and written as far as the socket
+ * accepts at once; whatever is left goes out with the next batch. While the buffer
+ * has no room the inputs wait in the batch. The reader thread waits for snapshots
+ * on a {@link Selector}.
+ *
+ * Usage: java MultiplayerClient [host] [port]
+ */
+
+import javax.swing.AbstractAction;
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+public class MultiplayerClient extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final int MAX_UNACKED = 1024;
+    private static final int OUTBOUND_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final Object lock = new Object();
+    private final RaceFrame latest = new RaceFrame();
+    private final RaceFrame shown = new RaceFrame();
+    private boolean hasFrame;
+    private volatile int carId = -1;
+    private volatile String status = "Connecting...";
+
+    // Prediction state, guarded by lock.
+    private float predictedOffset;
+    private int nextSeq;
+    private final int[] unackedSeq = new int[MAX_UNACKED];
+    private final float[] unackedDelta = new float[MAX_UNACKED];
+    private int unackedCount;
+    private long serverTick;
+
+    // Inputs waiting to be sent, guarded by lock.
+    private final ByteBuffer batch = ByteBuffer.allocate(16 * 1024);
+    private int batchCount;
+    // Batches not yet taken by the socket, guarded by lock.
+    private final ByteBuffer outbound = ByteBuffer.allocate(OUTBOUND_SIZE);
+
+    /**
+     * Connects to a server.
+     * @param address server address
+     * @throws IOException if the connection fails
+     */
+    public MultiplayerClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        setPreferredSize(new Dimension(1370, 1000));
+        setBackground(Color.BLUE);
+        batch.position(FrameEncoder.FRAME_HEADER + 5);
+    }
+
+    /** @return the ID of the car this client drives, or -1 before the welcome arrives */
+    public int getCarId() {
+        return carId;
+    }
+
+    /** @return the locally predicted lateral offset of this client's car */
+    public float getPredictedOffset() {
+        synchronized (lock) {
+            return predictedOffset;
+        }
+    }
+
+    /**
+     * Steers the player's car: applies the input to the prediction and queues it for the server.
+     * @param delta change in lateral offset, at most {@link MultiplayerServer#MAX_STEER} either way
+     */
+    public void steer(float delta) {
+        delta = Math.max(-MultiplayerServer.MAX_STEER, Math.min(MultiplayerServer.MAX_STEER, delta));
+        synchronized (lock) {
+            if (unackedCount == MAX_UNACKED || batch.remaining() < 16) {
+                return;
+            }
+            int seq = nextSeq++;
+            unackedSeq[unackedCount] = seq;
+            unackedDelta[unackedCount] = delta;
+            unackedCount++;
+            predictedOffset = clamp(predictedOffset + delta);
+
+            VarInt.putUnsigned(batch, seq);
+            VarInt.putUnsigned(batch, (int) (serverTick + 1));
+            batch.putFloat(delta);
+            batchCount++;
+        }
+    }
+
+    /**
+     * Sends all inputs collected since the previous call as one batch, without
+     * waiting for the socket. Inputs that do not fit in the outbound buffer stay
+     * queued for the next call.
+     * @throws IOException if the connection fails
+     */
+    public void flushInputs() throws IOException {
+        synchronized (lock) {
+            int end = batch.position();
+            if (batchCount > 0 && outbound.remaining() >= end) {
+                // The count is written as a fixed 5-byte varint so the batch can be built in place.
+                int count = batchCount;
+                batch.put(FrameEncoder.FRAME_HEADER, (byte) ((count & 0x7F) | 0x80));
+                batch.put(FrameEncoder.FRAME_HEADER + 1, (byte) (((count >>> 7) & 0x7F) | 0x80));
+                batch.put(FrameEncoder.FRAME_HEADER + 2, (byte) (((count >>> 14) & 0x7F) | 0x80));
+                batch.put(FrameEncoder.FRAME_HEADER + 3, (byte) (((count >>> 21) & 0x7F) | 0x80));
+                batch.put(FrameEncoder.FRAME_HEADER + 4, (byte) ((count >>> 28) & 0x0F));
+                batch.putInt(0, end - FrameEncoder.FRAME_HEADER);
+                batch.put(4, MultiplayerServer.INPUT);
+                batch.flip();
+                outbound.put(batch);
+                batch.clear().position(FrameEncoder.FRAME_HEADER + 5);
+                batchCount = 0;
+            }
+            if (outbound.position() == 0) {
+                return;
+            }
+            outbound.flip();
+            try {
+                channel.write(outbound);
+            } finally {
+                outbound.compact();
+            }
+        }
+    }
+
+    /**
+     * Reads records from the server until the connection closes.
+     */
+    public void receive() {
+        RaceFrame decoding = new RaceFrame();
+        boolean synced = false;
+        int lastAck = -1;
+        ByteBuffer header = ByteBuffer.allocate(FrameEncoder.FRAME_HEADER);
+        ByteBuffer payload = ByteBuffer.allocate(1 << 16);
+        try {
+            while (true) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                byte type = header.get(4);
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("Bad record length " + length);
+                }
+                if (payload.capacity() < length) {
+                    payload = ByteBuffer.allocate(length);
+                }
+                payload.clear().limit(length);
+                readFully(payload);
+                payload.flip();
+
+                if (type == MultiplayerServer.WELCOME) {
+                    carId = payload.getInt();
+                    status = "Driving Car " + carId;
+                    continue;
+                } else if (type == MultiplayerServer.ACK) {
+                    lastAck = payload.getInt();
+                    continue;
+                } else if (type == FrameEncoder.KEYFRAME) {
+                    decoding.readKeyframe(payload);
+                    synced = true;
+                } else if (type == FrameEncoder.DELTA && synced) {
+                    decoding.applyDelta(payload);
+                } else {
+                    continue;
+                }
+                synchronized (lock) {
+                    latest.copyFrom(decoding);
+                    hasFrame = true;
+                    serverTick = decoding.getTick();
+                    reconcile(lastAck);
+                }
+                repaint();
+            }
+        } catch (IOException e) {
+            status = "Disconnected: " + e.getMessage();
+            repaint();
+        }
+    }
+
+    /**
+     * Rebases the prediction on the server's offset for our car and replays unacknowledged inputs.
+     */
+    private void reconcile(int lastAck) {
+        int index = latest.indexOfCar(carId);
+        if (index < 0) {
+            return;
+        }
+        int keep = 0;
+        for (int i = 0; i < unackedCount; i++) {
+            if (unackedSeq[i] > lastAck) {
+                unackedSeq[keep] = unackedSeq[i];
+                unackedDelta[keep] = unackedDelta[i];
+                keep++;
+            }
+        }
+        unackedCount = keep;
+        float offset = latest.getCarLateralOffset(index);
+        for (int i = 0; i < unackedCount; i++) {
+            offset = clamp(offset + unackedDelta[i]);
+        }
+        predictedOffset = offset;
+    }
+
+    private static float clamp(float offset) {
+        return Math.max(-Car.MAX_LATERAL_OFFSET, Math.min(Car.MAX_LATERAL_OFFSET, offset));
+    }
+
+    private void readFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf);
+            if (read < 0) {
+                throw new EOFException("server closed the connection");
+            }
+            if (read == 0) {
+                selector.select();
+                selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        boolean draw;
+        float offset;
+        synchronized (lock) {
+            draw = hasFrame;
+            offset = predictedOffset;
+            if (draw) {
+                shown.copyFrom(latest);
+            }
+        }
+        if (draw) {
+            int index = shown.indexOfCar(carId);
+            if (index >= 0) {
+                placeOnTrack(shown, index, offset);
+            }
+            RaceDisplay.drawFrame(g2, shown, getWidth(), getHeight());
+        }
+        g2.setColor(Color.WHITE);
+        g2.drawString(status, 10, getHeight() - 10);
+    }
+
+    /**
+     * Moves a car in the frame to the given lateral offset at its current track angle.
+     */
+    private static void placeOnTrack(RaceFrame frame, int index, float offset) {
+        float a = RaceDisplay.TRACK_A;
+        float b = RaceDisplay.TRACK_B;
+        float angle = frame.getCarAngle(index);
+        float baseX = RaceDisplay.TRACK_CENTER_X + a * (float) Math.cos(angle);
+        float baseY = RaceDisplay.TRACK_CENTER_Y + b * (float) Math.sin(angle);
+        double tx = -a * Math.sin(angle);
+        double ty = b * Math.cos(angle);
+        double norm = Math.max(0.0001, Math.sqrt(tx * tx + ty * ty));
+        float x = baseX + offset * (float) (ty / norm);
+        float y = baseY + offset * (float) (-tx / norm);
+        frame.setCarPosition(index, x, y, offset);
+    }
+
+    /**
+     * Opens a client window connected to the given server.
+     * @param args optional host and port
+     * @throws IOException if the connection fails
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : MultiplayerServer.DEFAULT_PORT;
+        MultiplayerClient client = new MultiplayerClient(new InetSocketAddress(host, port));
+
+        Thread reader = new Thread(client::receive, "multiplayer-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        SwingUtilities.invokeLater(() -> {
+            InputMap im = client.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+            ActionMap am = client.getActionMap();
+            im.put(KeyStroke.getKeyStroke("LEFT"), "moveLeft");
+            im.put(KeyStroke.getKeyStroke("RIGHT"), "moveRight");
+            am.put("moveLeft", new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    client.steer(-5f);
+                    client.repaint();
+                }
+            });
+            am.put("moveRight", new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    client.steer(5f);
+                    client.repaint();
+                }
+            });
+
+            // Inputs go out in one batch per 100ms client tick.
+            new Timer(100, e -> {
+                try {
+                    client.flushInputs();
+                } catch (IOException ex) {
+                    ((Timer) e.getSource()).stop();
+                }
+            }).start();
+
+            JFrame frame = new JFrame("Oval Car Racing Simulator - Multiplayer");
+            frame.add(client);
+            frame.pack();
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        });
+    }
+}
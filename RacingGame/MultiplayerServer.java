@@ -0,0 +1,362 @@
+/**
+ * The MultiplayerServer lets remote players drive cars in a race that it runs
+ * authoritatively.
+ *
+ * Each connecting {@link MultiplayerClient} is given the next AI car and sent a
+ * welcome record with its car ID. Clients send batches of tick-stamped steering
+ * inputs; at the start of every tick the server applies, in sequence order, every
+ * input stamped for that tick or earlier through {@link Car#adjustLateralOffset(float)}.
+ * After the tick it sends every player an acknowledgement of the last input it
+ * applied, followed by the shared {@link RaceFrame} snapshot record, which is
+ * encoded only once per tick however many players are connected.
+ *
+ * Like {@link SpectatorServer} it runs on the simulation thread with a non-blocking
+ * {@link Selector}, and a player whose outbound buffer is full misses the snapshot
+ * and is resynchronised with a keyframe. It may be closed from another thread, such
+ * as a shutdown hook: closing waits for a tick in progress, and later ticks are ignored.
+ * {@link DedicatedServer} runs one without a local player.
+ *
+ * Records (4-byte length, 1-byte type, payload):
+ *   'W' server to client: int car ID
+ *   'A' server to client: int sequence number of the last applied input
+ *   'K'/'D' server to client: snapshot keyframe or delta
+ *   'I' client to server: varint count, then per input varint sequence, varint tick, float delta
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class MultiplayerServer implements RaceListener, AutoCloseable {
+    public static final int DEFAULT_PORT = 7778;
+    static final byte WELCOME = 'W';
+    static final byte ACK = 'A';
+    static final byte INPUT = 'I';
+
+    /** The largest steering step a single input may request. */
+    static final float MAX_STEER = 5f;
+
+    private static final int INBOUND_SIZE = 8 * 1024;
+    private static final int OUTBOUND_SIZE = 64 * 1024;
+    private static final int MAX_PENDING = 256;
+    // Smallest encoded input: one-byte sequence number and tick, then the float.
+    private static final int MIN_INPUT_SIZE = 6;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Player> players = new ArrayList<>();
+    private boolean closed;
+    private final FrameEncoder encoder = new FrameEncoder();
+
+    /** Per-connection state. */
+    private static final class Player {
+        final SocketChannel channel;
+        final Car car;
+        final ByteBuffer inbound = ByteBuffer.allocate(INBOUND_SIZE);
+        final ByteBuffer outbound = ByteBuffer.allocateDirect(OUTBOUND_SIZE);
+        boolean needsKeyframe = true;
+        int lastApplied = -1;
+
+        // Inputs received but stamped for a later tick, in arrival order.
+        final int[] pendingSeq = new int[MAX_PENDING];
+        final int[] pendingTick = new int[MAX_PENDING];
+        final float[] pendingDelta = new float[MAX_PENDING];
+        int pendingHead;
+        int pendingCount;
+
+        Player(SocketChannel channel, Car car) {
+            this.channel = channel;
+            this.car = car;
+        }
+    }
+
+    /**
+     * Starts listening for players.
+     * @param address address to bind
+     * @throws IOException if the address cannot be bound
+     */
+    public MultiplayerServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(address, 256);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     * @return local port
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return number of connected players */
+    public synchronized int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * Accepts players, reads their inputs and applies every input that is due.
+     * @param race the race about to be advanced
+     */
+    @Override
+    public synchronized void beforeTick(Race race) {
+        if (closed) {
+            return;
+        }
+        poll(race);
+        long due = race.getTick() + 1;
+        for (Player player : players) {
+            while (player.pendingCount > 0 && player.pendingTick[player.pendingHead] <= due) {
+                applyPending(player);
+            }
+        }
+    }
+
+    /**
+     * Sends every player its input acknowledgement and this tick's snapshot.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public synchronized void onTick(Race race) {
+        if (closed) {
+            return;
+        }
+        encoder.capture(race);
+        boolean deltaPossible = encoder.isDeltaPossible();
+        for (int i = players.size() - 1; i >= 0; i--) {
+            Player player = players.get(i);
+            if (!deltaPossible) {
+                player.needsKeyframe = true;
+            }
+            ByteBuffer frame = player.needsKeyframe ? encoder.keyframe() : encoder.delta();
+            ByteBuffer out = player.outbound;
+            if (out.remaining() >= FrameEncoder.FRAME_HEADER + 4 + frame.remaining()) {
+                out.putInt(4).put(ACK).putInt(player.lastApplied);
+                out.put(frame);
+                player.needsKeyframe = false;
+            } else {
+                player.needsKeyframe = true;
+            }
+            flush(player);
+        }
+    }
+
+    /**
+     * Handles new connections and incoming inputs without blocking.
+     * Call this while waiting for players before the race starts.
+     * @param race the race players join
+     */
+    public synchronized void poll(Race race) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (selector.selectNow() == 0) {
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Multiplayer server failed", e);
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept(race);
+            } else if (key.isReadable()) {
+                read((Player) key.attachment());
+            }
+        }
+    }
+
+    private void accept(Race race) {
+        SocketChannel channel;
+        try {
+            while ((channel = server.accept()) != null) {
+                Car car = freeCar(race);
+                if (car == null) {
+                    // Every car already has a driver.
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                car.setHumanControlled(true);
+                Player player = new Player(channel, car);
+                channel.register(selector, SelectionKey.OP_READ, player);
+                players.add(player);
+                player.outbound.putInt(4).put(WELCOME).putInt(car.getId());
+                flush(player);
+                RaceDisplay.log("Player joined and is driving Car " + car.getId() + ".");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not accept player", e);
+        }
+    }
+
+    private static Car freeCar(Race race) {
+        for (Car car : race.getCars()) {
+            if (!car.isHumanControlled()) {
+                return car;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads whatever the player has sent and queues complete input batches.
+     */
+    private void read(Player player) {
+        ByteBuffer in = player.inbound;
+        int read;
+        try {
+            read = player.channel.read(in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(player);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= FrameEncoder.FRAME_HEADER) {
+            int length = in.getInt(in.position());
+            byte type = in.get(in.position() + 4);
+            if (length < 0 || FrameEncoder.FRAME_HEADER + length > in.capacity() || type != INPUT) {
+                disconnect(player);
+                return;
+            }
+            if (in.remaining() < FrameEncoder.FRAME_HEADER + length) {
+                break;
+            }
+            in.position(in.position() + FrameEncoder.FRAME_HEADER);
+            ByteBuffer batch = in.slice();
+            batch.limit(length);
+            in.position(in.position() + length);
+            if (!readBatch(player, batch)) {
+                RaceDisplay.log("Player driving Car " + player.car.getId() + " sent a malformed input batch.");
+                disconnect(player);
+                return;
+            }
+        }
+        in.compact();
+    }
+
+    /**
+     * Checks a batch of inputs, then queues them. Nothing is queued from a batch that
+     * is cut short, claims more inputs than it holds, or carries a negative sequence
+     * number or tick or a steering step that is not a number.
+     * @param batch the batch's payload, limited to its length
+     * @return false if the batch is malformed
+     */
+    private boolean readBatch(Player player, ByteBuffer batch) {
+        try {
+            int count = VarInt.getUnsigned(batch);
+            if (count < 0 || count > batch.remaining() / MIN_INPUT_SIZE) {
+                return false;
+            }
+            int start = batch.position();
+            for (int pass = 0; pass < 2; pass++) {
+                batch.position(start);
+                for (int i = 0; i < count; i++) {
+                    int seq = VarInt.getUnsigned(batch);
+                    int tick = VarInt.getUnsigned(batch);
+                    float delta = batch.getFloat();
+                    if (seq < 0 || tick < 0 || !Float.isFinite(delta)) {
+                        return false;
+                    }
+                    if (pass == 1) {
+                        queueInput(player, seq, tick, delta);
+                    }
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private void queueInput(Player player, int seq, int tick, float delta) {
+        if (seq <= player.lastApplied) {
+            return;
+        }
+        if (player.pendingCount == MAX_PENDING) {
+            // A client running far ahead: apply its oldest input now rather than drop it.
+            applyPending(player);
+        }
+        int slot = (player.pendingHead + player.pendingCount) % MAX_PENDING;
+        player.pendingSeq[slot] = seq;
+        player.pendingTick[slot] = tick;
+        player.pendingDelta[slot] = Math.max(-MAX_STEER, Math.min(MAX_STEER, delta));
+        player.pendingCount++;
+    }
+
+    private void applyPending(Player player) {
+        int head = player.pendingHead;
+        player.car.adjustLateralOffset(player.pendingDelta[head]);
+        player.lastApplied = player.pendingSeq[head];
+        player.pendingHead = (head + 1) % MAX_PENDING;
+        player.pendingCount--;
+    }
+
+    private void flush(Player player) {
+        ByteBuffer out = player.outbound;
+        out.flip();
+        try {
+            player.channel.write(out);
+        } catch (IOException e) {
+            out.clear();
+            disconnect(player);
+            return;
+        }
+        out.compact();
+    }
+
+    private void disconnect(Player player) {
+        if (players.remove(player)) {
+            // The car goes back to the AI.
+            player.car.setHumanControlled(false);
+            RaceDisplay.log("Player driving Car " + player.car.getId() + " left.");
+        }
+        try {
+            player.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Disconnects all players and stops listening.
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Player player : new ArrayList<>(players)) {
+            disconnect(player);
+        }
+        server.close();
+        selector.close();
+    }
+}
@@ -7,8 +7,11 @@
  */
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class Obstacle {
+    private final int id;
     private final String type;
     private final float impact;
     private final float x;
@@ -17,17 +20,25 @@ public class Obstacle {
     private final Color color;
     private final String shapeType;
 
+    // Where the obstacle sits in track coordinates; worked out on first use.
+    private float trackAngle = Float.NaN;
+    private float trackLateral;
+
     /**
-     * Constructs an obstacle with the specified properties.
+     * Constructs an obstacle with the specified properties. IDs are handed out by
+     * the race the obstacle appears in, so that a race and its copies number their
+     * obstacles the same way whatever other races run alongside.
+     * @param id the obstacle's ID, unique within its race
      * @param type the obstacle type
      * @param impact the amount to alter car speed
      * @param x x-coordinate of the obstacle
      * @param y y-coordinate of the obstacle
-     * @param lifetime duration (in frames or ticks) the obstacle lasts
+     * @param lifetime remaining lifetime in ticks
      * @param color visual color of the obstacle
      * @param shapeType rendering shape type (circle, square, etc.)
      */
-    public Obstacle(String type, float impact, float x, float y, int lifetime, Color color, String shapeType) {
+    public Obstacle(int id, String type, float impact, float x, float y, int lifetime, Color color, String shapeType) {
+        this.id = id;
         this.type = type;
         this.impact = impact;
         this.x = x;
@@ -37,6 +48,11 @@ public class Obstacle {
         this.shapeType = shapeType;
     }
 
+    /** @return obstacle ID, unique within its race; later obstacles have higher IDs */
+    public int getId() {
+        return id;
+    }
+
     /** @return obstacle type string */
     public String getType() {
         return type;
@@ -78,6 +94,97 @@ public class Obstacle {
     }
 
 
+    /**
+     * Returns the track angle at which this obstacle lies.
+     * @return angle on the oval in [0, 2*pi)
+     */
+    float getTrackAngle() {
+        if (Float.isNaN(trackAngle)) {
+            locateOnTrack();
+        }
+        return trackAngle;
+    }
+
+    /**
+     * Returns how far this obstacle lies from the centre line, positive to the right.
+     * @return lateral offset in pixels
+     */
+    float getTrackLateral() {
+        if (Float.isNaN(trackAngle)) {
+            locateOnTrack();
+        }
+        return trackLateral;
+    }
+
+    /**
+     * Recovers the track angle and lateral offset that put this obstacle at (x, y),
+     * using the same ellipse and normal as {@link Car} and {@link Randomizer}.
+     */
+    private void locateOnTrack() {
+        float cx = RaceDisplay.TRACK_CENTER_X;
+        float cy = RaceDisplay.TRACK_CENTER_Y;
+        float a = RaceDisplay.TRACK_A;
+        float b = RaceDisplay.TRACK_B;
+        float px = x;
+        float py = y;
+        float angle = 0f;
+        float lateral = 0f;
+        // An estimate plus two refinements is plenty for offsets of a few dozen pixels.
+        for (int iter = 0; iter < 3; iter++) {
+            angle = ObstacleIndex.normalize((float) Math.atan2((py - cy) / b, (px - cx) / a));
+            double tx = -a * Math.sin(angle);
+            double ty = b * Math.cos(angle);
+            double norm = Math.max(0.0001, Math.sqrt(tx * tx + ty * ty));
+            double nx = ty / norm;
+            double ny = -tx / norm;
+            double baseX = cx + a * Math.cos(angle);
+            double baseY = cy + b * Math.sin(angle);
+            lateral = (float) ((x - baseX) * nx + (y - baseY) * ny);
+            px = x - lateral * (float) nx;
+            py = y - lateral * (float) ny;
+        }
+        trackLateral = lateral;
+        trackAngle = angle;
+    }
+
+    /**
+     * Writes this obstacle for {@link RaceSnapshot}.
+     * @param out destination buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putInt(id).putFloat(impact).putFloat(x).putFloat(y).putInt(lifetime).putInt(color.getRGB());
+        putString(out, type);
+        putString(out, shapeType);
+    }
+
+    /**
+     * Recreates an obstacle written by {@link #writeState(ByteBuffer)}.
+     * @param in source buffer
+     * @return the restored obstacle
+     */
+    public static Obstacle readState(ByteBuffer in) {
+        int id = in.getInt();
+        float impact = in.getFloat();
+        float x = in.getFloat();
+        float y = in.getFloat();
+        int lifetime = in.getInt();
+        Color color = new Color(in.getInt(), true);
+        String type = getString(in);
+        String shapeType = getString(in);
+        return new Obstacle(id, type, impact, x, y, lifetime, color, shapeType);
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.put((byte) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * Applies this obstacle's effect to the given car.
      * A boost increases the car's speed, while other obstacles reduce it.
@@ -87,11 +194,11 @@ public class Obstacle {
         if (type.equalsIgnoreCase("boost")) {
             float newSpeed = car.getCurrentSpeed() + impact;
             car.setCurrentSpeed(newSpeed);
-            RaceDisplay.log("Car " + car.getId() + " hit a speed boost! Speed increased by " + impact);
+            car.log("Car " + car.getId() + " hit a speed boost! Speed increased by " + impact);
         } else {
             float newSpeed = car.getCurrentSpeed() - impact;
             car.setCurrentSpeed(newSpeed);
-            RaceDisplay.log("Car " + car.getId() + " hit an obstacle (" + type + ")! Speed reduced by " + impact);
+            car.log("Car " + car.getId() + " hit an obstacle (" + type + ")! Speed reduced by " + impact);
         }
     }
 
@@ -0,0 +1,83 @@
+/**
+ * Looks ahead along the car's track angle and steers around hazards, towards boosts.
+ *
+ * Every candidate lane across the track is scored by where the car would actually
+ * be when it reaches each obstacle ahead, given that it can only move
+ * {@link #MAX_STEP} per tick: lanes that would still put it within collision range
+ * of a hazard are heavily penalised, lanes that would pick up a boost are
+ * rewarded, and otherwise the smallest change of lane wins. When nothing is ahead
+ * the car holds its lane.
+ */
+public class ObstacleAvoidingDriver implements DriverStrategy {
+    public static final int DEFAULT_LOOKAHEAD_TICKS = 20;
+
+    // Lateral distance that keeps a car clear of an obstacle's collision radius.
+    static final float CLEARANCE = Race.COLLISION_RADIUS + 2f;
+    private static final float LANE_STEP = 2f;
+    private static final float HAZARD_PENALTY = 100f;
+    private static final float BOOST_REWARD = 5f;
+    private static final float MOVE_COST = 0.1f;
+
+    private final int lookaheadTicks;
+
+    /**
+     * Creates a driver with the default lookahead.
+     */
+    public ObstacleAvoidingDriver() {
+        this(DEFAULT_LOOKAHEAD_TICKS);
+    }
+
+    /**
+     * Creates a driver.
+     * @param lookaheadTicks how many ticks of travel ahead to consider
+     */
+    public ObstacleAvoidingDriver(int lookaheadTicks) {
+        if (lookaheadTicks < 1) {
+            throw new IllegalArgumentException("Lookahead must be at least one tick");
+        }
+        this.lookaheadTicks = lookaheadTicks;
+    }
+
+    /** @return how many ticks of travel ahead this driver considers */
+    public int getLookaheadTicks() {
+        return lookaheadTicks;
+    }
+
+    @Override
+    public float steer(Car car, ObstacleIndex obstacles, Randomizer random) {
+        float angularSpeed = Math.max(car.getAngularSpeed(), 0.0001f);
+        // Start slightly behind the car: an obstacle alongside can still be hit.
+        float behind = Race.COLLISION_RADIUS / Car.EFFECTIVE_RADIUS;
+        float from = car.getCurrentAngle() - behind;
+        int hits = obstacles.query(from, behind + angularSpeed * lookaheadTicks);
+        if (hits == 0) {
+            return 0f;
+        }
+
+        float offset = car.getLateralOffset();
+        float best = offset;
+        float bestCost = Float.MAX_VALUE;
+        for (float lane = -Car.MAX_LATERAL_OFFSET; lane <= Car.MAX_LATERAL_OFFSET; lane += LANE_STEP) {
+            float cost = Math.abs(lane - offset) * MOVE_COST;
+            for (int k = 0; k < hits; k++) {
+                int slot = obstacles.getHit(k);
+                float ahead = ObstacleIndex.angleBetween(car.getCurrentAngle(), obstacles.getAngle(slot));
+                if (ahead > Math.PI) {
+                    ahead = 0f; // alongside, just behind
+                }
+                // Where the car can get to by the time it reaches the obstacle.
+                float reach = MAX_STEP * (ahead / angularSpeed);
+                float position = offset + Math.max(-reach, Math.min(reach, lane - offset));
+                float gap = CLEARANCE - Math.abs(position - obstacles.getLateral(slot));
+                if (gap > 0f) {
+                    cost += obstacles.isHazard(slot) ? HAZARD_PENALTY * gap : -BOOST_REWARD * gap;
+                }
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = lane;
+            }
+        }
+        return Math.max(-MAX_STEP, Math.min(MAX_STEP, best - offset));
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * An index of the obstacles on the track by track angle, for lookahead queries.
+ *
+ * The oval is divided into equal angular buckets. {@link #rebuild(List)} places
+ * every obstacle in its bucket with a counting sort into flat arrays, and
+ * {@link #query(float, float)} visits only the buckets that overlap the requested
+ * arc, so a driver looking ahead touches a handful of obstacles rather than the
+ * whole list.
+ *
+ * Query results are held in the index and overwritten by the next query, so one
+ * index serves one thread.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ObstacleIndex {
+    static final int BUCKETS = 64;
+    private static final float TWO_PI = 2f * (float) Math.PI;
+    private static final float BUCKET_WIDTH = TWO_PI / BUCKETS;
+
+    private int size;
+    private Obstacle[] obstacles = new Obstacle[16];
+    private float[] angles = new float[16];
+    private float[] laterals = new float[16];
+    private boolean[] hazards = new boolean[16];
+    private int[] buckets = new int[16];
+
+    // Slots in bucket order; bucket i holds order[bucketStart[i] .. bucketStart[i + 1]).
+    private int[] order = new int[16];
+    private final int[] bucketStart = new int[BUCKETS + 1];
+    private final int[] cursor = new int[BUCKETS];
+
+    private int[] hits = new int[16];
+
+    /**
+     * Replaces the index contents with the given obstacles.
+     * @param list the obstacles currently on the track
+     */
+    public void rebuild(List<Obstacle> list) {
+        size = list.size();
+        if (obstacles.length < size) {
+            int capacity = Math.max(size, obstacles.length * 2);
+            obstacles = new Obstacle[capacity];
+            angles = new float[capacity];
+            laterals = new float[capacity];
+            hazards = new boolean[capacity];
+            buckets = new int[capacity];
+            order = new int[capacity];
+            hits = new int[capacity];
+        }
+        Arrays.fill(bucketStart, 0);
+        for (int i = 0; i < size; i++) {
+            Obstacle obs = list.get(i);
+            obstacles[i] = obs;
+            angles[i] = obs.getTrackAngle();
+            laterals[i] = obs.getTrackLateral();
+            hazards[i] = !obs.getType().equalsIgnoreCase("boost");
+            int bucket = Math.min(BUCKETS - 1, (int) (angles[i] / BUCKET_WIDTH));
+            buckets[i] = bucket;
+            bucketStart[bucket + 1]++;
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+            cursor[b] = bucketStart[b];
+        }
+        for (int i = 0; i < size; i++) {
+            order[cursor[buckets[i]]++] = i;
+        }
+    }
+
+    /**
+     * Finds the obstacles whose track angle lies in the arc starting at {@code from}
+     * and sweeping forward (increasing angle) by {@code sweep} radians.
+     * @param from  start of the arc, any angle
+     * @param sweep length of the arc in radians
+     * @return number of hits, read with {@link #getHit(int)}
+     */
+    public int query(float from, float sweep) {
+        from = normalize(from);
+        sweep = Math.min(Math.max(sweep, 0f), TWO_PI);
+        int first = Math.min(BUCKETS - 1, (int) (from / BUCKET_WIDTH));
+        int span = Math.min(BUCKETS, (int) ((from - first * BUCKET_WIDTH + sweep) / BUCKET_WIDTH) + 1);
+        int count = 0;
+        for (int n = 0; n < span; n++) {
+            int b = (first + n) % BUCKETS;
+            for (int j = bucketStart[b]; j < bucketStart[b + 1]; j++) {
+                int slot = order[j];
+                if (angleBetween(from, angles[slot]) <= sweep) {
+                    hits[count++] = slot;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** @return number of indexed obstacles */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param k hit number, less than the count returned by the last query
+     * @return slot of the k-th obstacle found by the last query
+     */
+    public int getHit(int k) {
+        return hits[k];
+    }
+
+    /** @return the obstacle in a slot */
+    public Obstacle getObstacle(int slot) {
+        return obstacles[slot];
+    }
+
+    /** @return the track angle of the obstacle in a slot, in [0, 2*pi) */
+    public float getAngle(int slot) {
+        return angles[slot];
+    }
+
+    /** @return the lateral offset from the centre line of the obstacle in a slot */
+    public float getLateral(int slot) {
+        return laterals[slot];
+    }
+
+    /** @return true if the obstacle in a slot slows cars down, false for boosts */
+    public boolean isHazard(int slot) {
+        return hazards[slot];
+    }
+
+    /**
+     * Returns how far ahead {@code to} lies from {@code from} going forward round the oval.
+     * @param from start angle
+     * @param to   end angle
+     * @return forward angular distance in [0, 2*pi)
+     */
+    static float angleBetween(float from, float to) {
+        return normalize(to - from);
+    }
+
+    /**
+     * Wraps an angle into [0, 2*pi).
+     * @param angle any angle in radians
+     * @return the equivalent angle on the oval
+     */
+    static float normalize(float angle) {
+        angle %= TWO_PI;
+        return angle < 0f ? angle + TWO_PI : angle;
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * The PitAdvisor recommends a pit strategy for one car while the race runs, by
+ * racing the rest of the race ahead in the background under each strategy.
+ *
+ * Every {@link #getInterval()} ticks, when no advice is being worked out, the
+ * advisor forks the live race on the simulation thread ({@link Race#fork()}, a
+ * snapshot of a few hundred bytes restored into fresh cars) and hands the copy to a
+ * small pool of low-priority worker threads, which exit while idle. The workers fork it again for every
+ * {@link Plan} and every sample, set the car's pit plan, and race each fork to the
+ * car's finish. All plans share the same samples, the first being the live race's
+ * own random sequence (common random numbers, as in {@link SetupTuner}), so they
+ * are compared on identical obstacles. The car is driven by its AI driver in the
+ * forks, including a player's car. When the last fork finishes the mean finish time
+ * of each plan is published as {@link Advice}, and the plan with the lowest one is
+ * recommended, with its expected gain over pitting only when the tyres are worn.
+ *
+ * The live tick pays only for the first fork; the racing ahead runs on the workers.
+ * {@link PitAdvisorBenchmark} measures both.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PitAdvisor implements RaceListener, AutoCloseable {
+    /** Pit strategies the advisor compares. */
+    public enum Plan {
+        /** Pit only when the tyres are worn, as cars do on their own. */
+        WHEN_WORN("Pit when worn"),
+        /** Pit on the next tick. */
+        NOW("Pit now"),
+        /** Pit at the start of the next lap. */
+        NEXT_LAP("Pit next lap"),
+        /** Run on the tyres until the car is too slow to go on. */
+        NEVER("Stay out");
+
+        private final String label;
+
+        Plan(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Sets a car's pit plan to this strategy.
+         * @param car the car, in a forked race
+         */
+        void applyTo(Car car) {
+            if (this == NOW) {
+                car.planPitStop(car.getCurrentLap());
+            } else if (this == NEXT_LAP) {
+                car.planPitStop(car.getCurrentLap() + 1);
+            } else if (this == NEVER) {
+                car.setPitsWhenWorn(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * The outcome of one round of advice.
+     */
+    public static final class Advice {
+        private final int carId;
+        private final long tick;
+        private final double[] meanSeconds;
+        private final Plan best;
+        private final double millis;
+
+        Advice(int carId, long tick, double[] meanSeconds, double millis) {
+            this.carId = carId;
+            this.tick = tick;
+            this.meanSeconds = meanSeconds;
+            this.millis = millis;
+            Plan fastest = Plan.WHEN_WORN;
+            for (Plan plan : Plan.values()) {
+                if (meanSeconds[plan.ordinal()] < meanSeconds[fastest.ordinal()]) {
+                    fastest = plan;
+                }
+            }
+            this.best = fastest;
+        }
+
+        /** @return ID of the car advised */
+        public int getCarId() {
+            return carId;
+        }
+
+        /** @return tick of the live race the advice was worked out from */
+        public long getTick() {
+            return tick;
+        }
+
+        /** @return the plan with the lowest expected finish time */
+        public Plan getBest() {
+            return best;
+        }
+
+        /**
+         * @param plan a plan
+         * @return the car's expected total race time under the plan, in seconds
+         */
+        public double getMeanSeconds(Plan plan) {
+            return meanSeconds[plan.ordinal()];
+        }
+
+        /** @return seconds the best plan is expected to save over pitting when worn */
+        public double getGainSeconds() {
+            return meanSeconds[Plan.WHEN_WORN.ordinal()] - meanSeconds[best.ordinal()];
+        }
+
+        /** @return wall-clock time from forking the live race to publishing the advice */
+        public double getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            if (best == Plan.WHEN_WORN) {
+                return String.format("Car %d: %s", carId, best);
+            }
+            return String.format("Car %d: %s (%.1fs faster than pitting when worn)", carId, best, getGainSeconds());
+        }
+    }
+
+    /** Ticks between two rounds of advice, unless set otherwise. */
+    public static final int DEFAULT_INTERVAL = 50;
+    /** Forks raced per plan, unless set otherwise. */
+    public static final int DEFAULT_SAMPLES = 4;
+
+    static final long MAX_TICKS = 200_000;
+    private static final long IDLE_SECONDS = 5;
+
+    private final int carId;
+    private final int samples;
+    private final ExecutorService pool;
+    private int interval = DEFAULT_INTERVAL;
+
+    // Set while a round is being worked out, so rounds never overlap.
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private volatile Advice advice;
+    private volatile Throwable failure;
+
+    /**
+     * Creates an advisor for one car.
+     * @param carId   ID of the car to advise
+     * @param samples forks raced per plan
+     * @param threads number of worker threads
+     */
+    public PitAdvisor(int carId, int samples, int threads) {
+        if (samples < 1 || threads < 1) {
+            throw new IllegalArgumentException("Need at least one sample and one thread");
+        }
+        this.carId = carId;
+        this.samples = samples;
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "pit-advisor");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        // Workers exit once the race stops asking, and start again when it resumes.
+        workers.allowCoreThreadTimeOut(true);
+        this.pool = workers;
+    }
+
+    /**
+     * Sets how often advice is worked out.
+     * @param interval ticks between two rounds, at least 1
+     */
+    public void setInterval(int interval) {
+        this.interval = Math.max(1, interval);
+    }
+
+    /** @return ticks between two rounds of advice */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the latest advice. May be called from any thread.
+     * @return the advice, or null before the first round or after a reset
+     */
+    public Advice getAdvice() {
+        return advice;
+    }
+
+    /** @return why the latest round failed, or null if it did not */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Starts a round every interval, unless one is still being worked out, and drops
+     * advice left over from before a reset or a load.
+     * @param race the live race
+     */
+    @Override
+    public void onTick(Race race) {
+        Advice latest = advice;
+        if (latest != null && latest.tick > race.getTick()) {
+            advice = null;
+        }
+        Car car = race.getCar(carId);
+        if (race.getTick() % interval != 0 || car == null || car.isFinished()
+                || car.getPitStopTimer() > 0) {
+            return;
+        }
+        advise(race);
+    }
+
+    /**
+     * Forks the race and starts working out advice on the workers, unless a round is
+     * still in progress. Call on the thread that advances the race.
+     * @param race the live race
+     * @return a future completed with the advice, or null if a round is in progress,
+     *         the advisor is closed or the round could not be started
+     */
+    public CompletableFuture<Advice> advise(Race race) {
+        if (pool.isShutdown() || !busy.compareAndSet(false, true)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long tick = race.getTick();
+        Plan[] plans = Plan.values();
+        List<CompletableFuture<Double>> times = new ArrayList<>(plans.length * samples);
+        try {
+            Race base = race.fork();
+            long[] seeds = seeds(base.getRandomizer().getState());
+            for (Plan plan : plans) {
+                for (int k = 0; k < samples; k++) {
+                    long seed = seeds[k];
+                    times.add(CompletableFuture.supplyAsync(() -> raceTime(base, plan, seed), pool));
+                }
+            }
+        } catch (RuntimeException e) {
+            // A failed fork, or the advisor closing part way through, ends the round here.
+            failure = e;
+            busy.set(false);
+            return null;
+        }
+        return CompletableFuture.allOf(times.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            try {
+                if (error != null) {
+                    failure = error;
+                    return null;
+                }
+                double[] means = new double[plans.length];
+                for (int i = 0; i < times.size(); i++) {
+                    means[i / samples] += times.get(i).join() / samples;
+                }
+                Advice result = new Advice(carId, tick, means, (System.nanoTime() - start) / 1e6);
+                failure = null;
+                advice = result;
+                return result;
+            } finally {
+                busy.set(false);
+            }
+        });
+    }
+
+    /**
+     * Returns the random states the forks start from: the live race's own, then
+     * states drawn from it.
+     */
+    private long[] seeds(long state) {
+        long[] seeds = new long[samples];
+        Randomizer random = new Randomizer(state);
+        seeds[0] = state;
+        for (int k = 1; k < samples; k++) {
+            seeds[k] = random.nextLong();
+        }
+        return seeds;
+    }
+
+    /**
+     * Races a fork of the race to the advised car's finish under one plan.
+     * @param base the forked race, which is only read
+     * @param plan the pit strategy
+     * @param seed random state for the fork
+     * @return the car's total race time in seconds
+     */
+    private double raceTime(Race base, Plan plan, long seed) {
+        Race fork = base.fork();
+        fork.getRandomizer().setState(seed);
+        Car car = fork.getCar(carId);
+        car.setHumanControlled(false);
+        plan.applyTo(car);
+        long ticks = 0;
+        while (!car.isFinished() && fork.isRunning() && ticks++ < MAX_TICKS) {
+            fork.updateRaceStatus();
+        }
+        return car.getTotalTime();
+    }
+
+    /**
+     * Stops the worker threads, abandoning any round in progress.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
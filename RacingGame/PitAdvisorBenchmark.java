@@ -0,0 +1,56 @@
+/**
+ * Runs the standard race headless with a {@link PitAdvisor} for car #1, asking
+ * for advice every 250 ticks and waiting for each round, and reports how long
+ * each round of advice takes and how much of it the live tick pays for.
+ *
+ * Usage: java PitAdvisorBenchmark [laps] [samples] [threads]
+ */
+
+import java.util.concurrent.CompletableFuture;
+
+public class PitAdvisorBenchmark {
+    /**
+     * Runs the standard race headless with an advisor for car #1 and reports how long
+     * advice takes and what it costs the live tick.
+     * @param args optional laps, samples and worker threads
+     * @throws Exception if a round fails
+     */
+    public static void main(String[] args) throws Exception {
+        int laps = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : PitAdvisor.DEFAULT_SAMPLES;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        Race race = RaceSetup.createRace(laps);
+        race.setLogging(false);
+        race.getRandomizer().setState(42);
+        for (Car car : race.getCars()) {
+            car.setHumanControlled(false);
+        }
+        int carId = race.getCars().get(0).getId();
+        try (PitAdvisor advisor = new PitAdvisor(carId, samples, threads)) {
+            race.startRace();
+            long forkNanos = 0;
+            int rounds = 0;
+            while (race.isRunning() && !race.getCar(carId).isFinished() && race.getTick() < PitAdvisor.MAX_TICKS) {
+                race.updateRaceStatus();
+                if (race.getTick() % 250 != 0) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                CompletableFuture<PitAdvisor.Advice> round = advisor.advise(race);
+                forkNanos += System.nanoTime() - start;
+                PitAdvisor.Advice result = round.get();
+                if (result == null) {
+                    throw new IllegalStateException("Advice failed", advisor.getFailure());
+                }
+                rounds++;
+                System.out.printf("t=%6.1fs lap %d grip %.2f  %s  in %.0f ms%n",
+                        SimClock.toSeconds(result.getTick()), race.getCar(carId).getCurrentLap(),
+                        race.getCar(carId).getEffectiveGrip(), result, result.getMillis());
+            }
+            System.out.printf("%d rounds of %d forks on %d threads; live tick paid %.3f ms per round%n",
+                    rounds, PitAdvisor.Plan.values().length * samples, threads, forkNanos / 1e6 / Math.max(1, rounds));
+        }
+    }
+}
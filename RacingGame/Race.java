@@ -11,15 +11,20 @@
  *   Spawns and removes obstacles during the race<
  *   Detects collisions and applies obstacle effects<
  *   Calculates and announces the race winner
+ *   Applies commands sent from other threads at the start of each tick
  *
  *   Developed by: Abraham Arocha
  */
 
-import java.time.Duration;
-import java.time.LocalTime;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a car race that manages multiple cars, tracks progress,
@@ -28,8 +33,6 @@ import java.util.List;
 public class Race {
     private final List<Car> cars;
     private boolean isRunning;
-    private LocalTime startTime;
-    private LocalTime endTime;
     private RaceDisplay raceDisplay;
 
     // List to manage obstacles.
@@ -38,13 +41,183 @@ public class Race {
     // Total laps for the race.
     private int totalLaps = 1;
 
+    // Race time: ticks processed since the race was started or reset, and the pace they run at.
+    private final SimClock clock = new SimClock();
+
+    // Observers notified after every tick (telemetry, recorders, ...).
+    private final List<RaceListener> listeners;
+
+    /** Chance per tick of a new obstacle appearing, unless set otherwise. */
+    public static final double DEFAULT_OBSTACLE_CHANCE = 0.05;
+
+    /** Distance at which a car runs into an obstacle. */
+    public static final float COLLISION_RADIUS = 15f;
+
+    // Where the obstacles are, rebuilt every tick for the AI drivers' lookahead and collisions.
+    private final ObstacleIndex obstacleIndex = new ObstacleIndex();
+
+    // Track angle within which an obstacle can be in reach. The scale contactTime turns
+    // angle into distance with is smallest across the ends of the oval on the innermost
+    // lane, at TRACK_B - MAX_LATERAL_OFFSET * TRACK_A / TRACK_B (about 110px a radian).
+    static final float SWEEP_MARGIN = COLLISION_RADIUS
+            / (RaceDisplay.TRACK_B - Car.MAX_LATERAL_OFFSET * RaceDisplay.TRACK_A / RaceDisplay.TRACK_B);
+
+    // Where each car started this tick, by track angle and lateral offset, for swept collisions.
+    private float[] sweepAngle = new float[0];
+    private float[] sweepLateral = new float[0];
+
+    // Obstacles run into this tick, resolved in the order they were reached.
+    private final List<Contact> contacts = new ArrayList<>();
+
+    /**
+     * A car reaching an obstacle part way through a tick.
+     */
+    private static final class Contact {
+        final float time;
+        final Car car;
+        final Obstacle obstacle;
+
+        Contact(float time, Car car, Obstacle obstacle) {
+            this.time = time;
+            this.car = car;
+            this.obstacle = obstacle;
+        }
+    }
+
+    // Commands sent from other threads, applied at the start of each tick.
+    private final CommandQueue commands = new CommandQueue();
+    private long commandsApplied;
+
+    // Whether this race and its cars narrate to the race display.
+    private boolean logging = true;
+
+    // Routes the cars drive, each once, and their distinct checkpoints, for drawing.
+    private final Set<Route> routes = new HashSet<>();
+    private final List<Location> stops = new ArrayList<>();
+
+    // Kernel that moves the cars' positions in batches, or null to move each car on
+    // its own. Batches are per route, rebuilt when cars are added; a car whose route
+    // has none is moved on its own.
+    private CarKinematics.Kernel kinematicsKernel;
+    private final List<CarKinematics> batches = new ArrayList<>();
+    private CarKinematics[] carBatch = new CarKinematics[0];
+    private int[] carSlot = new int[0];
+
+    // Chance per tick of a new obstacle appearing.
+    private double obstacleChance = DEFAULT_OBSTACLE_CHANCE;
+
+    // ID of the next obstacle to appear. Kept per race and saved with it, so a race
+    // numbers its obstacles the same way however many copies run alongside it.
+    private int nextObstacleId = 1;
+
+    // Source of all random events in this race.
+    private final Randomizer randomizer;
+
 /** Constructs an empty race. **/
     public Race() {
         cars = new ArrayList<>();
         obstacles = new ArrayList<>();
+        listeners = new ArrayList<>();
+        randomizer = new Randomizer();
         isRunning = false;
     }
 
+    /**
+     * Returns the random source used for obstacles and AI steering in this race.
+     * @return the race's Randomizer
+     */
+    public Randomizer getRandomizer() {
+        return randomizer;
+    }
+
+    /**
+     * Turns narration on or off for the race and all of its cars. Headless races
+     * run in bulk, such as tuning runs, switch it off.
+     * @param logging true to send messages to the race display
+     */
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+        for (Car car : cars) {
+            car.setLogging(logging);
+        }
+    }
+
+    /**
+     * Chooses how the cars' positions are moved each tick. With a kernel, every car
+     * on a route that {@link CarKinematics#forRoute(Route, int)} accepts is moved
+     * in one batch per route, after its pits, tyres, speed and steering have been
+     * dealt with as usual; other cars, and every car without a kernel, are moved by
+     * their own {@link Car#move()}. Call between ticks.
+     * @param kernel the kernel, such as {@link CarKinematics#bestKernel()}, or null
+     */
+    public void setKinematics(CarKinematics.Kernel kernel) {
+        kinematicsKernel = kernel;
+        carBatch = new CarKinematics[0];
+    }
+
+    /** @return the kernel moving the cars, or null if each car moves on its own */
+    public CarKinematics.Kernel getKinematics() {
+        return kinematicsKernel;
+    }
+
+    /**
+     * Sets how often obstacles appear; 0 for a clear track.
+     * @param chance chance per tick of a new obstacle, 0 to 1
+     */
+    public void setObstacleChance(double chance) {
+        if (!(chance >= 0 && chance <= 1)) {
+            throw new IllegalArgumentException("Obstacle chance must be between 0 and 1");
+        }
+        obstacleChance = chance;
+    }
+
+    /** @return chance per tick of a new obstacle appearing */
+    public double getObstacleChance() {
+        return obstacleChance;
+    }
+
+    /**
+     * Sends a message to the race display if logging is on.
+     * @param message the message
+     */
+    private void log(String message) {
+        if (logging) {
+            RaceDisplay.log(message);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified after every simulation tick.
+     * @param listener the listener to add
+     */
+    public void addListener(RaceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered listener.
+     * @param listener the listener to remove
+     */
+    public void removeListener(RaceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of simulation ticks processed since the race was started or reset.
+     * @return current tick count
+     */
+    public long getTick() {
+        return clock.getTick();
+    }
+
+    /**
+     * Returns the race clock, which counts ticks and sets the pace of the simulation.
+     * @return the race's clock
+     */
+    public SimClock getClock() {
+        return clock;
+    }
+
     /**
      * Associates a RaceDisplay with this race for repainting and logging.
      * @param display the RaceDisplay panel
@@ -70,13 +243,26 @@ public class Race {
     }
 
     /**
-     * Returns the user-controlled car, assumed to be Car with ID = 1.
-     * @return the user's Car instance or null if not found
+     * Returns the car steered from this machine's keyboard: the first human-controlled car.
+     * @return the user's Car instance or null if no car is human-controlled
      */
     public Car getUserCar() {
-        // The user-controlled car is ID=1.
         for (Car car : cars) {
-            if (car.getId() == 1) {
+            if (car.isHumanControlled()) {
+                return car;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the car with the given ID.
+     * @param id car ID
+     * @return the Car instance or null if not found
+     */
+    public Car getCar(int id) {
+        for (Car car : cars) {
+            if (car.getId() == id) {
                 return car;
             }
         }
@@ -88,7 +274,38 @@ public class Race {
      * @param car the Car to add
      */
     public void addCar(Car car) {
+        car.setLogging(logging);
         cars.add(car);
+        if (routes.add(car.getRoute())) {
+            addStops(car.getRoute());
+        }
+    }
+
+    /**
+     * Returns the distinct checkpoints of all the cars' routes. Checkpoints with the same
+     * name a whole number of turns apart are drawn at the same place and appear once.
+     * @return unmodifiable list of checkpoints
+     */
+    public List<Location> getStops() {
+        return Collections.unmodifiableList(stops);
+    }
+
+    /**
+     * Adds the checkpoints of a newly seen route to the distinct stops.
+     */
+    private void addStops(Route route) {
+        for (Location loc : route.getLocations()) {
+            float angle = (float) (loc.getAngle() % (2 * Math.PI));
+            boolean seen = false;
+            for (int i = 0; i < stops.size() && !seen; i++) {
+                Location stop = stops.get(i);
+                seen = Math.abs((float) (stop.getAngle() % (2 * Math.PI)) - angle) < 1e-4f
+                        && stop.getName().equals(loc.getName());
+            }
+            if (!seen) {
+                stops.add(loc);
+            }
+        }
     }
 
     /**
@@ -121,8 +338,7 @@ public class Race {
     public void startRace() {
         if (!isRunning) {
             isRunning = true;
-            startTime = LocalTime.now();
-            RaceDisplay.log("Race has started with " + totalLaps + " laps!");
+            log("Race has started with " + totalLaps + " laps!");
             for (Car car : cars) {
                 car.start();
             }
@@ -135,21 +351,72 @@ public class Race {
     public void pauseRace() {
         if (isRunning) {
             isRunning = false;
-            RaceDisplay.log("Race is paused.");
+            log("Race is paused.");
+        }
+    }
+
+    /**
+     * Sends a command to the race, to be applied at the start of the next tick or
+     * the next {@link #applyCommands()}. May be called from any thread; commands are
+     * applied in the order they were sent.
+     * @param command the command
+     */
+    public void submit(RaceCommand command) {
+        commands.send(command);
+    }
+
+    /**
+     * Applies every command sent so far, oldest first. Called by the thread that
+     * advances the race: by every tick, and while paused by whatever keeps the race
+     * responsive to its controls. A command that fails is narrated and skipped.
+     * @return number of commands applied
+     */
+    public int applyCommands() {
+        int count = 0;
+        for (RaceCommand command = commands.poll(); command != null; command = commands.poll()) {
+            count++;
+            commandsApplied++;
+            try {
+                command.apply(this);
+            } catch (RuntimeException e) {
+                log("Command failed: " + e.getMessage());
+            }
         }
+        return count;
+    }
+
+    /** @return commands applied since the race was created */
+    public long getCommandsApplied() {
+        return commandsApplied;
     }
 
     /**
-     * Updates race state, spawns and processes obstacles, and moves cars.
+     * Applies the commands sent since the last tick, then, if the race is running,
+     * updates race state, spawns and processes obstacles, and moves cars.
      * Ends the race when all cars are finished.
      */
     public void updateRaceStatus() {
+        applyCommands();
         if (!isRunning)
             return;
 
-        // 5% chance per update to spawn a new obstacle.
-        if (Math.random() < 0.05) {
-            obstacles.add(Randomizer.generateRandomObstacle());
+        // Note where every car starts, before anyone steers or moves.
+        if (sweepAngle.length != cars.size()) {
+            sweepAngle = new float[cars.size()];
+            sweepLateral = new float[cars.size()];
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            sweepAngle[i] = cars.get(i).getCurrentAngle();
+            sweepLateral[i] = cars.get(i).getLateralOffset();
+        }
+
+        for (RaceListener listener : listeners) {
+            listener.beforeTick(this);
+        }
+
+        // By default a 5% chance per update to spawn a new obstacle.
+        if (randomizer.nextDouble() < obstacleChance) {
+            obstacles.add(randomizer.generateRandomObstacle(nextObstacleId++));
         }
 
         // Update obstacles: degrade lifetime, remove expired.
@@ -161,47 +428,186 @@ public class Race {
             }
         }
 
-        // Check collisions with obstacles.
+        // Plan every AI car's steering in one pass before anyone moves.
+        obstacleIndex.rebuild(obstacles);
         for (Car car : cars) {
-            for (Iterator<Obstacle> it = obstacles.iterator(); it.hasNext();) {
-                Obstacle obs = it.next();
-                float dx = car.getCurrentX() - obs.getX();
-                float dy = car.getCurrentY() - obs.getY();
-                float distance = (float) Math.sqrt(dx*dx + dy*dy);
-                if (distance < 15) {
-                    obs.applyToCar(car);
-                    it.remove();
-                }
+            if (!car.isFinished() && !car.isHumanControlled() && car.getPitStopTimer() == 0) {
+                car.planSteering(obstacleIndex, randomizer);
             }
         }
 
         // Move cars; see if any remains unfinished.
-        boolean allFinished = true;
-        for (Car car : cars) {
-            if (!car.isFinished()) {
-                car.move();
-                allFinished = false;
-            }
-        }
+        boolean allFinished = moveCars();
 
-        if (raceDisplay != null) {
-            raceDisplay.repaint();
+        // Check the paths the cars just drove against the obstacles.
+        resolveCollisions();
+
+        clock.advance();
+        for (RaceListener listener : listeners) {
+            listener.onTick(this);
         }
 
         // If all are finished, end the race.
         if (allFinished) {
             isRunning = false;
-            endTime = LocalTime.now();
             calculateResults();
+            for (RaceListener listener : listeners) {
+                listener.onRaceFinished(this);
+            }
+        }
+    }
+
+    /**
+     * Moves every unfinished car, through the kinematics kernel if one is set.
+     * @return true if every car had already finished
+     */
+    private boolean moveCars() {
+        boolean allFinished = true;
+        if (kinematicsKernel == null) {
+            for (Car car : cars) {
+                if (!car.isFinished()) {
+                    car.move();
+                    allFinished = false;
+                }
+            }
+            return allFinished;
         }
+
+        if (carBatch.length != cars.size()) {
+            buildBatches();
+        }
+        for (CarKinematics batch : batches) {
+            batch.clear();
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            carSlot[i] = -1;
+            if (car.isFinished()) {
+                continue;
+            }
+            allFinished = false;
+            if (carBatch[i] == null) {
+                car.move();
+            } else if (car.prepareMove()) {
+                carSlot[i] = car.addTo(carBatch[i]);
+            }
+        }
+        for (CarKinematics batch : batches) {
+            kinematicsKernel.step(batch);
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            if (carSlot[i] >= 0) {
+                cars.get(i).completeMove(carBatch[i], carSlot[i]);
+            }
+        }
+        return allFinished;
+    }
+
+    /**
+     * Makes one batch for each route the kernels can drive, with room for its cars.
+     */
+    private void buildBatches() {
+        Map<Route, Integer> counts = new HashMap<>();
+        for (Car car : cars) {
+            counts.merge(car.getRoute(), 1, Integer::sum);
+        }
+        Map<Route, CarKinematics> byRoute = new HashMap<>();
+        batches.clear();
+        for (Map.Entry<Route, Integer> entry : counts.entrySet()) {
+            CarKinematics batch = CarKinematics.forRoute(entry.getKey(), entry.getValue());
+            if (batch != null) {
+                byRoute.put(entry.getKey(), batch);
+                batches.add(batch);
+            }
+        }
+        carBatch = new CarKinematics[cars.size()];
+        carSlot = new int[cars.size()];
+        for (int i = 0; i < cars.size(); i++) {
+            carBatch[i] = byRoute.get(cars.get(i).getRoute());
+        }
+    }
+
+    /**
+     * Sweeps the path each car drove this tick against the obstacles near it and
+     * applies the hits in the order they happened, so an obstacle goes to the car
+     * that reached it first. However far a car moves, it costs one query of the
+     * obstacle index, so no obstacle is jumped over at any speed.
+     */
+    private void resolveCollisions() {
+        contacts.clear();
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            float from = sweepAngle[i];
+            float travel = ObstacleIndex.angleBetween(from, car.getCurrentAngle());
+            int hits = obstacleIndex.query(from - SWEEP_MARGIN, travel + 2 * SWEEP_MARGIN);
+            for (int k = 0; k < hits; k++) {
+                int slot = obstacleIndex.getHit(k);
+                float time = contactTime(from, travel, sweepLateral[i], car.getLateralOffset(),
+                        obstacleIndex.getAngle(slot), obstacleIndex.getLateral(slot));
+                if (time >= 0f) {
+                    contacts.add(new Contact(time, car, obstacleIndex.getObstacle(slot)));
+                }
+            }
+        }
+        // Stable, so cars reaching obstacles at the same moment keep the race's order.
+        contacts.sort((a, b) -> Float.compare(a.time, b.time));
+        for (Contact contact : contacts) {
+            if (obstacles.remove(contact.obstacle)) {
+                contact.obstacle.applyToCar(contact.car);
+            }
+        }
+    }
+
+    /**
+     * Returns when a car first comes within {@link #COLLISION_RADIUS} of a point on
+     * the track, moving evenly in track space during one tick. Angles along the track
+     * are turned into distance with the oval's scale at the point, in its lane.
+     * @param from        track angle the car starts at
+     * @param travel      angle it covers, forward
+     * @param fromLateral lateral offset it starts at
+     * @param toLateral   lateral offset it ends at
+     * @param angle       track angle of the point
+     * @param lateral     lateral offset of the point
+     * @return fraction of the tick at first contact, or -1 if the car stays clear
+     */
+    static float contactTime(float from, float travel, float fromLateral, float toLateral,
+                             float angle, float lateral) {
+        double a = RaceDisplay.TRACK_A;
+        double b = RaceDisplay.TRACK_B;
+        double sin = Math.sin(angle);
+        double cos = Math.cos(angle);
+        // Length per radian of the centre line, and of the point's lane, which is
+        // shorter inside the curve and longer outside.
+        double arc = Math.sqrt(a * a * sin * sin + b * b * cos * cos);
+        double scale = arc + lateral * a * b / (arc * arc);
+        double ahead = ObstacleIndex.angleBetween(from, angle);
+        if (ahead > Math.PI) {
+            ahead -= 2 * Math.PI;
+        }
+        // The car relative to the point, and its motion over the tick.
+        double u = -ahead * scale;
+        double v = fromLateral - lateral;
+        double du = travel * scale;
+        double dv = toLateral - fromLateral;
+        double c = u * u + v * v - COLLISION_RADIUS * COLLISION_RADIUS;
+        if (c <= 0) {
+            return 0f;
+        }
+        double q = du * du + dv * dv;
+        double p = u * du + v * dv;
+        double discriminant = p * p - q * c;
+        if (q == 0 || p >= 0 || discriminant < 0) {
+            return -1f;
+        }
+        double t = (-p - Math.sqrt(discriminant)) / q;
+        return t <= 1 ? (float) t : -1f;
     }
 
     /**
      * Logs race results and identifies the winner.
      */
     public void calculateResults() {
-        Duration duration = Duration.between(startTime, endTime);
-        RaceDisplay.log("Race Duration: " + duration.getSeconds() + " seconds");
+        log("Race Duration: " + String.format("%.1f", clock.getSeconds()) + " seconds");
 
         Car winner = null;
         float bestTime = Float.MAX_VALUE;
@@ -210,7 +616,7 @@ public class Race {
             float bestLap = car.getBestLapTime();
             String bestLapStr = (bestLap == Float.MAX_VALUE) ? "-" : String.format("%.2f", bestLap);
 
-            RaceDisplay.log("Car " + car.getId()
+            log("Car " + car.getId()
                     + " - Route: " + car.getRoute().getRouteNames()
                     + " - Total Time: " + String.format("%.2f", totalT) + "s"
                     + " - Best Lap: " + bestLapStr + "s");
@@ -221,7 +627,7 @@ public class Race {
             }
         }
         if (winner != null) {
-            RaceDisplay.log("Winner is Car " + winner.getId()
+            log("Winner is Car " + winner.getId()
                     + " with total time " + String.format("%.2f", bestTime) + " seconds!");
             if (raceDisplay != null) {
                 raceDisplay.announceWinner(winner);
@@ -229,6 +635,90 @@ public class Race {
         }
     }
 
+    /**
+     * Returns a copy of this race that runs on its own: the same cars, drivers and
+     * settings in the same state, with no listeners, display or narration. Only reads
+     * this race, so a race that is no longer being advanced may be forked from several
+     * threads at once.
+     * @return the copy
+     */
+    public Race fork() {
+        Race copy = new Race();
+        copy.setLogging(false);
+        copy.totalLaps = totalLaps;
+        copy.obstacleChance = obstacleChance;
+        copy.kinematicsKernel = kinematicsKernel;
+        for (Car car : cars) {
+            copy.addCar(car.copy());
+        }
+        RaceSnapshot.restore(copy, RaceSnapshot.save(this));
+        return copy;
+    }
+
+    /**
+     * Writes the complete simulation state for {@link RaceSnapshot}.
+     * @param out destination buffer
+     */
+    public void writeState(ByteBuffer out) {
+        out.putLong(clock.getTick());
+        out.put((byte) (isRunning ? 1 : 0));
+        out.putInt(totalLaps);
+        out.putLong(randomizer.getState());
+        out.putInt(nextObstacleId);
+        out.putInt(cars.size());
+        for (Car car : cars) {
+            car.writeState(out);
+        }
+        out.putInt(obstacles.size());
+        for (Obstacle obs : obstacles) {
+            obs.writeState(out);
+        }
+    }
+
+    /**
+     * Restores state written by {@link #writeState(ByteBuffer)} into a race with the same cars and routes.
+     * The whole state is read and checked before any of it is applied, so a state
+     * that does not fit leaves the race as it was.
+     * @param in source buffer
+     * @throws IllegalArgumentException if the state does not fit the race
+     */
+    public void readState(ByteBuffer in) {
+        long tick = in.getLong();
+        boolean running = in.get() != 0;
+        int laps = in.getInt();
+        long randomState = in.getLong();
+        int nextId = in.getInt();
+        int carCount = in.getInt();
+        if (carCount != cars.size()) {
+            throw new IllegalArgumentException("Saved state has " + carCount + " cars, race has " + cars.size());
+        }
+        // Read every car into a copy first; the cars themselves are only touched once all of it fits.
+        ByteBuffer check = in.duplicate();
+        for (Car car : cars) {
+            car.copy().readState(check);
+        }
+        int obstacleCount = check.getInt();
+        if (obstacleCount < 0) {
+            throw new IllegalArgumentException("Saved state has " + obstacleCount + " obstacles");
+        }
+        List<Obstacle> loaded = new ArrayList<>(Math.min(obstacleCount, check.remaining()));
+        for (int i = 0; i < obstacleCount; i++) {
+            loaded.add(Obstacle.readState(check));
+        }
+
+        clock.setTick(tick);
+        isRunning = running;
+        totalLaps = laps;
+        randomizer.setState(randomState);
+        nextObstacleId = nextId;
+        for (Car car : cars) {
+            car.readState(in);
+        }
+        in.position(check.position());
+        obstacles.clear();
+        obstacles.addAll(loaded);
+    }
+
     /**
      * Resets the race state including cars, obstacles, and timers.
      */
@@ -238,11 +728,7 @@ public class Race {
             car.reset();
         }
         obstacles.clear();
-        startTime = null;
-        endTime = null;
-        RaceDisplay.log("Race has been reset.");
-        if (raceDisplay != null) {
-            raceDisplay.repaint();
-        }
+        clock.reset();
+        log("Race has been reset.");
     }
 }
\ No newline at end of file
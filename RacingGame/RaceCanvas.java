@@ -0,0 +1,225 @@
+/**
+ * The RaceCanvas draws the race view by active rendering.
+ *
+ * Instead of asking Swing to repaint and letting the RepaintManager decide when,
+ * the owner calls {@link #render()} once per cycle of its render loop. Each call
+ * draws a whole frame into the back buffer of a page-flipping
+ * {@link BufferStrategy} and shows it, so exactly one frame is presented per
+ * cycle however many simulation ticks ran in it. The time each frame took to draw
+ * and present is measured and kept as the last, average and worst frame time.
+ *
+ * Frames can be partial: {@link #render(List)} repaints only the given dirty
+ * rectangles, calling the painter once for each with its clip set to it. That is
+ * only done when the back buffer still holds an earlier frame: a blitted buffer
+ * holds the previous frame, a page-flipped buffer whose contents are copied holds
+ * it too, and one whose contents are the prior front buffer is two frames old, so
+ * the previous frame's rectangles are repainted as well. Otherwise, and whenever
+ * the buffer was lost or the canvas resized, the whole frame is drawn.
+ *
+ * When the window system needs the canvas redrawn (on expose or resize) the whole
+ * frame is rendered the same way.
+ */
+
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RaceCanvas extends Canvas {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Draws one frame.
+     */
+    public interface Painter {
+        /**
+         * Draws the view; only what falls within the clip of {@code g2}, if it has one, is kept.
+         * @param g2     graphics of the back buffer
+         * @param width  width of the canvas
+         * @param height height of the canvas
+         */
+        void paint(Graphics2D g2, int width, int height);
+    }
+
+    private static final int BUFFERS = 2;
+    // Weight of the newest frame in the running average frame time.
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    private final Painter painter;
+    private long frames;
+    private long lastFrameNanos;
+    private double averageFrameNanos;
+    private long worstFrameNanos;
+    private double paintedFraction;
+
+    // What the previous frame repainted, or null if it was drawn whole.
+    private List<Rectangle> previousDirty;
+    private int previousWidth;
+    private int previousHeight;
+
+    /**
+     * Creates a canvas drawn by the given painter.
+     * @param painter draws each frame
+     */
+    public RaceCanvas(Painter painter) {
+        this.painter = painter;
+        // Keys go to the Swing components, where the steering bindings live.
+        setFocusable(false);
+    }
+
+    /**
+     * Draws and presents one whole frame. Does nothing until the canvas is on screen.
+     * Must be called on the Event Dispatch Thread.
+     */
+    public void render() {
+        render(null);
+    }
+
+    /**
+     * Draws and presents one frame, repainting only the dirty rectangles where the
+     * back buffer allows it. Does nothing until the canvas is on screen.
+     * Must be called on the Event Dispatch Thread.
+     * @param dirty the areas that changed since the previous frame, or null for all of it
+     */
+    public void render(List<Rectangle> dirty) {
+        int width = getWidth();
+        int height = getHeight();
+        if (!isDisplayable() || width <= 0 || height <= 0) {
+            return;
+        }
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null) {
+            createBufferStrategy(BUFFERS);
+            strategy = getBufferStrategy();
+        }
+        long start = System.nanoTime();
+        List<Rectangle> areas = width == previousWidth && height == previousHeight
+                ? areasToRepaint(strategy.getCapabilities(), dirty) : null;
+        // The back buffer can be lost (say, when the display mode changes); draw it whole again if so.
+        boolean lost;
+        do {
+            boolean restored;
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    draw(g2, areas, width, height);
+                } finally {
+                    g2.dispose();
+                }
+                restored = strategy.contentsRestored();
+                if (restored) {
+                    areas = null;
+                }
+            } while (restored);
+            strategy.show();
+            lost = strategy.contentsLost();
+            if (lost) {
+                areas = null;
+            }
+        } while (lost);
+        Toolkit.getDefaultToolkit().sync();
+
+        previousDirty = areas == null ? null : dirty;
+        previousWidth = width;
+        previousHeight = height;
+        long painted = 0;
+        if (areas != null) {
+            for (Rectangle r : areas) {
+                painted += (long) r.width * r.height;
+            }
+        }
+        paintedFraction = areas == null ? 1 : Math.min(1, painted / ((double) width * height));
+
+        long elapsed = System.nanoTime() - start;
+        lastFrameNanos = elapsed;
+        worstFrameNanos = Math.max(worstFrameNanos, elapsed);
+        averageFrameNanos = frames == 0 ? elapsed
+                : averageFrameNanos + AVERAGE_WEIGHT * (elapsed - averageFrameNanos);
+        frames++;
+    }
+
+    /**
+     * Works out which rectangles of the back buffer need repainting, or null for all of it.
+     */
+    private List<Rectangle> areasToRepaint(BufferCapabilities caps, List<Rectangle> dirty) {
+        if (dirty == null) {
+            return null;
+        }
+        if (!caps.isPageFlipping() || caps.getFlipContents() == BufferCapabilities.FlipContents.COPIED) {
+            return dirty;
+        }
+        if (caps.getFlipContents() == BufferCapabilities.FlipContents.PRIOR && previousDirty != null) {
+            List<Rectangle> areas = new ArrayList<>(dirty);
+            areas.addAll(previousDirty);
+            return areas;
+        }
+        return null;
+    }
+
+    /**
+     * Calls the painter for the whole canvas or once per area, clipped to it.
+     */
+    private void draw(Graphics2D g2, List<Rectangle> areas, int width, int height) {
+        if (areas == null) {
+            painter.paint(g2, width, height);
+            return;
+        }
+        for (Rectangle area : areas) {
+            Graphics2D clipped = (Graphics2D) g2.create();
+            try {
+                clipped.clip(area);
+                painter.paint(clipped, width, height);
+            } finally {
+                clipped.dispose();
+            }
+        }
+    }
+
+    /**
+     * Renders the canvas when the window system asks for it.
+     * @param g ignored; frames are drawn into the buffer strategy
+     */
+    @Override
+    public void paint(Graphics g) {
+        render();
+    }
+
+    /**
+     * Renders without clearing first, so exposes do not flicker.
+     * @param g ignored; frames are drawn into the buffer strategy
+     */
+    @Override
+    public void update(Graphics g) {
+        render();
+    }
+
+    /** @return number of frames presented */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /** @return time the latest frame took to draw and present, in milliseconds */
+    public double getLastFrameMillis() {
+        return lastFrameNanos / 1e6;
+    }
+
+    /** @return running average frame time, in milliseconds */
+    public double getAverageFrameMillis() {
+        return averageFrameNanos / 1e6;
+    }
+
+    /** @return fraction of the canvas the latest frame repainted, from 0 to 1 */
+    public double getPaintedFraction() {
+        return paintedFraction;
+    }
+
+    /** @return slowest frame so far, in milliseconds */
+    public double getWorstFrameMillis() {
+        return worstFrameNanos / 1e6;
+    }
+}
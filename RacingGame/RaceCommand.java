@@ -0,0 +1,76 @@
+/**
+ * An instruction to a {@link Race} from outside the simulation: the race
+ * controls, a script, a test or the network.
+ *
+ * Commands are sent with {@link Race#submit(RaceCommand)} from any thread and
+ * applied by the thread that advances the race, at the start of the next tick,
+ * in the order they were sent. A command runs with the race to itself, so it may
+ * call any of the race's methods. Arguments are checked when the command is made,
+ * so a bad one is refused on the sending thread.
+ */
+public interface RaceCommand {
+    /**
+     * Applies the command.
+     * @param race the race, between two ticks
+     */
+    void apply(Race race);
+
+    /** @return a command that starts or resumes the race */
+    static RaceCommand start() {
+        return Race::startRace;
+    }
+
+    /** @return a command that pauses the race */
+    static RaceCommand pause() {
+        return Race::pauseRace;
+    }
+
+    /** @return a command that puts the race back to its start */
+    static RaceCommand reset() {
+        return Race::resetRace;
+    }
+
+    /**
+     * Returns a command that moves a car across the track, ignored if there is no
+     * such car or it has finished.
+     * @param carId id of the car
+     * @param delta change in lateral offset, positive outward
+     * @return the command
+     */
+    static RaceCommand steer(int carId, float delta) {
+        if (!Float.isFinite(delta)) {
+            throw new IllegalArgumentException("Steering must be finite: " + delta);
+        }
+        return race -> {
+            for (Car car : race.getCars()) {
+                if (car.getId() == carId && !car.isFinished()) {
+                    car.adjustLateralOffset(delta);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a command that sets how often obstacles appear.
+     * @param chance chance per tick of a new obstacle, 0 to 1
+     * @return the command
+     */
+    static RaceCommand obstacleChance(double chance) {
+        if (!(chance >= 0 && chance <= 1)) {
+            throw new IllegalArgumentException("Obstacle chance must be between 0 and 1");
+        }
+        return race -> race.setObstacleChance(chance);
+    }
+
+    /**
+     * Returns a command that sets how fast race time passes relative to real time.
+     * @param rate a positive rate, or {@link SimClock#UNLIMITED}
+     * @return the command
+     */
+    static RaceCommand rate(double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        return race -> race.getClock().setRate(rate);
+    }
+}
@@ -10,9 +10,19 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * RaceDisplay is the main panel for the car racing game.
@@ -31,25 +41,92 @@ public class RaceDisplay extends JPanel {
     public static final int CAR_HEIGHT = 18;
 
     private final Race race;
+    private final Leaderboard leaderboard;
 
     // UI components.
     private JPanel startPage;
-    private JPanel racePanel;
+    private RaceCanvas racePanel;
     private JPanel controlPanel;
     private JTextArea narrator;
     private JTable scoreboard;
     private DefaultTableModel tableModel;
     private static RaceDisplay instance;
     private Timer raceTimer;
-    private JLabel countdownLabel;
+    private int countdown;  // seconds left before the start, shown over the track
+
+    // Dirty-region rendering: the grass, track and checkpoints drawn once, and where
+    // each car and obstacle was last drawn so only what changed is repainted.
+    private static final int CAR_EXTENT = 40;      // covers a car's rotated body, shadow and label
+    private static final int OBSTACLE_EXTENT = 10;
+    private static final Rectangle FRAME_TIME_BOUNDS = new Rectangle(0, 0, 330, 36);
+    private BufferedImage background;
+    private Rectangle[] carBounds = new Rectangle[0];
+    private Map<Obstacle, Integer> shownObstacles = new IdentityHashMap<>();
+
+    // Draws the view at low detail when there are too many cars for full detail.
+    private final LodRenderer crowd = new LodRenderer();
+    private BufferedImage crowdBackdrop;
+
+    // What part of the world is shown, and grids of the cars and obstacles so that
+    // only those in view are drawn.
+    private final Camera camera = new Camera();
+    private final SpatialGrid carGrid = new SpatialGrid();
+    private final SpatialGrid obstacleGrid = new SpatialGrid();
+    private Car[] gridCars = new Car[0];
+    private Obstacle[] gridObstacles = new Obstacle[0];
+    private int visibleObjects;
+    private long backgroundView = -1;  // camera version the background was drawn for
+    private long renderedView = -1;    // camera version of the latest frame
+    private JComboBox<String> viewBox;
+
+    // The steering keys, sampled once per tick.
+    private final KeyboardSteering steering = new KeyboardSteering();
+
+    // Pit strategy advice for the player's car, worked out in the background.
+    private final PitAdvisor pitAdvisor;
+    private JLabel pitAdviceLabel;
+
+    // The race timer fires about once a frame and runs the ticks due by then.
+    private static final int FRAME_MILLIS = 15;
+    private static final long FRAME_BUDGET_NANOS = 12_000_000L;
+
+    // Replay mode.
+    private ReplayPlayer replayPlayer;
+    private JPanel replayPanel;
+    private JSlider replaySlider;
+    private JLabel replayTickLabel;
+    private boolean updatingReplaySlider;
 
     /**
      * Constructs the RaceDisplay panel and initializes the UI layout and game controls.
      * @param race the Race instance that holds all race data and logic
      */
     public RaceDisplay(Race race) {
+        this(race, null);
+    }
+
+    /**
+     * Constructs the RaceDisplay panel with all-time bests shown from a leaderboard.
+     * @param race        the Race instance that holds all race data and logic
+     * @param leaderboard stored results to show, or null
+     */
+    public RaceDisplay(Race race, Leaderboard leaderboard) {
+        this(race, leaderboard, null);
+    }
+
+    /**
+     * Constructs the RaceDisplay panel with all-time bests and pit strategy advice.
+     * @param race        the Race instance that holds all race data and logic
+     * @param leaderboard stored results to show, or null
+     * @param pitAdvisor  advisor listening to the race whose advice is shown, or null;
+     *                    closed with the display
+     */
+    public RaceDisplay(Race race, Leaderboard leaderboard, PitAdvisor pitAdvisor) {
         instance = this;
         this.race = race;
+        this.leaderboard = leaderboard;
+        this.pitAdvisor = pitAdvisor;
+        race.addListener(steering);
         setLayout(new BorderLayout());
 
         // --- Start Page ---
@@ -127,6 +204,12 @@ public class RaceDisplay extends JPanel {
             repaint();
         });
 
+        //replay button
+        JButton replayButton = new JButton("Watch Replay");
+        replayButton.setFont(new Font("Arial", Font.BOLD, 20));
+        replayButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+        replayButton.addActionListener(e -> openReplay());
+
 
 
         startPage.add(layeredPane);
@@ -144,34 +227,43 @@ public class RaceDisplay extends JPanel {
         startPage.add(Box.createRigidArea(new Dimension(0, 120)));
         startPage.add(play);
         startPage.add(playButton);
-        startPage.add(Box.createRigidArea(new Dimension(0, 53)));
+        startPage.add(Box.createRigidArea(new Dimension(0, 10)));
+        startPage.add(replayButton);
+        startPage.add(Box.createRigidArea(new Dimension(0, 13)));
+        if (leaderboard != null) {
+            startPage.add(getFastestLapsLabel());
+        }
 
 
         add(startPage, BorderLayout.CENTER);
 
-        // --- Key Bindings for Car #1 movement ---
+        // --- Key Bindings for the player's car: the keys only record state, each tick steers ---
         InputMap im = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
         ActionMap am = getActionMap();
+        bindSteeringKey(im, am, "LEFT", KeyboardSteering.LEFT);
+        bindSteeringKey(im, am, "RIGHT", KeyboardSteering.RIGHT);
+    }
 
-        im.put(KeyStroke.getKeyStroke("LEFT"), "moveLeft");
-        im.put(KeyStroke.getKeyStroke("RIGHT"), "moveRight");
-
-        am.put("moveLeft", new AbstractAction() {
+    /**
+     * Binds a key's press and release to one steering bit.
+     * @param im  input map of the panel
+     * @param am  action map of the panel
+     * @param key key name, such as "LEFT"
+     * @param bit {@link KeyboardSteering#LEFT} or {@link KeyboardSteering#RIGHT}
+     */
+    private void bindSteeringKey(InputMap im, ActionMap am, String key, int bit) {
+        im.put(KeyStroke.getKeyStroke("pressed " + key), "press" + key);
+        im.put(KeyStroke.getKeyStroke("released " + key), "release" + key);
+        am.put("press" + key, new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                Car userCar = race.getUserCar();
-                if (userCar != null) {
-                    userCar.adjustLateralOffset(-5f);
-                }
+                steering.press(bit);
             }
         });
-        am.put("moveRight", new AbstractAction() {
+        am.put("release" + key, new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                Car userCar = race.getUserCar();
-                if (userCar != null) {
-                    userCar.adjustLateralOffset(5f);
-                }
+                steering.release(bit);
             }
         });
     }
@@ -179,20 +271,40 @@ public class RaceDisplay extends JPanel {
     // --- Getters for panels ---
 
     /**
-     * Returns the race panel which displays the race.
-     * @return JPanel containing the race visuals
+     * Returns the canvas the race is actively rendered on.
+     * @return RaceCanvas showing the race visuals
      */
-    private JPanel getRacePanel() {
+    private RaceCanvas getRacePanel() {
         if (racePanel == null) {
-            racePanel = new JPanel() {
+            racePanel = new RaceCanvas(this::drawRace);
+            racePanel.setPreferredSize(new Dimension(1370, 1000));
+            racePanel.setBackground(Color.BLUE);
+
+            // Drag to pan, wheel to zoom about the pointer.
+            MouseAdapter mouse = new MouseAdapter() {
+                private Point last;
+
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    last = e.getPoint();
+                }
+
                 @Override
-                protected void paintComponent(Graphics g) {
-                    super.paintComponent(g);
-                    drawRace(g);
+                public void mouseDragged(MouseEvent e) {
+                    camera.pan(e.getX() - last.x, e.getY() - last.y);
+                    last = e.getPoint();
+                    onCameraMoved();
+                }
+
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    camera.zoomAt(Math.pow(1.1, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+                    onCameraMoved();
                 }
             };
-            racePanel.setPreferredSize(new Dimension(1370, 1000));
-            racePanel.setBackground(Color.BLUE);
+            racePanel.addMouseListener(mouse);
+            racePanel.addMouseMotionListener(mouse);
+            racePanel.addMouseWheelListener(mouse);
         }
         return racePanel;
     }
@@ -225,28 +337,286 @@ public class RaceDisplay extends JPanel {
             startBtn.addActionListener(e -> {
                 startCountdown();
             });
-            pauseBtn.addActionListener(e -> {
-                race.pauseRace();
-                raceTimer.stop();
-            });
-            resetBtn.addActionListener(e -> {
-                race.resetRace();
-                updateScoreboard();
-            });
+            pauseBtn.addActionListener(e -> send(RaceCommand.pause()));
+            resetBtn.addActionListener(e -> send(RaceCommand.reset()));
+            JComboBox<String> rateBox = new JComboBox<>();
+            for (double rate : SimClock.RATES) {
+                rateBox.addItem(SimClock.rateLabel(rate));
+            }
+            rateBox.setSelectedItem(SimClock.rateLabel(race.getClock().getRate()));
+            rateBox.addActionListener(e ->
+                    send(RaceCommand.rate(SimClock.RATES[rateBox.getSelectedIndex()])));
+
+            viewBox = new JComboBox<>();
+            viewBox.addItem("Whole track");
+            viewBox.addItem("Free camera");
+            viewBox.addItem("Follow my car");
+            for (Car car : race.getCars()) {
+                viewBox.addItem("Follow Car " + car.getId());
+            }
+            viewBox.addActionListener(e -> selectView(viewBox.getSelectedIndex()));
+
+            JButton saveBtn = new JButton("Save");
+            saveBtn.setFont(new Font("Arial", Font.BOLD, 14));
+            saveBtn.setForeground(Color.BLACK);
+            saveBtn.addActionListener(e -> saveRaceState());
+
+            JButton loadBtn = new JButton("Load");
+            loadBtn.setFont(new Font("Arial", Font.BOLD, 14));
+            loadBtn.setForeground(Color.BLACK);
+            loadBtn.addActionListener(e -> loadRaceState());
+
             controlPanel.add(startBtn);
             controlPanel.add(pauseBtn);
             controlPanel.add(resetBtn);
+            controlPanel.add(rateBox);
+            controlPanel.add(viewBox);
+            controlPanel.add(saveBtn);
+            controlPanel.add(loadBtn);
+
+            pitAdviceLabel = new JLabel();
+            pitAdviceLabel.setFont(new Font("Arial", Font.BOLD, 14));
+            pitAdviceLabel.setForeground(Color.WHITE);
+            controlPanel.add(pitAdviceLabel);
         }
         return controlPanel;
     }
 
+    /**
+     * Points the camera as chosen in the view box.
+     * @param index whole track, free, the player's car, then each car in race order
+     */
+    private void selectView(int index) {
+        List<Car> cars = race.getCars();
+        if (index == 0) {
+            camera.showWholeTrack();
+        } else if (index == 1) {
+            camera.free();
+        } else if (index == 2) {
+            camera.followPlayer();
+        } else if (index - 3 < cars.size()) {
+            camera.follow(cars.get(index - 3).getId());
+        }
+        onCameraMoved();
+    }
+
+    /**
+     * Shows a camera change straight away when the race is not running, and keeps
+     * the view box in step when dragging or zooming has freed the camera.
+     */
+    private void onCameraMoved() {
+        if (camera.getMode() == Camera.Mode.FREE && viewBox != null && viewBox.getSelectedIndex() != 1) {
+            viewBox.setSelectedIndex(1);
+        }
+        if (!race.isRunning()) {
+            renderRace(false);
+        }
+    }
+
+    /**
+     * Returns the replay control bar with play/pause, speed selection and a seek slider.
+     * @return JPanel with replay controls
+     */
+    private JPanel getReplayPanel() {
+        if (replayPanel == null) {
+            replayPanel = new JPanel();
+            replayPanel.setBackground(Color.DARK_GRAY);
+            replayPanel.setLayout(new FlowLayout());
+
+            JButton playPauseBtn = new JButton("Play");
+            playPauseBtn.setFont(new Font("Arial", Font.BOLD, 14));
+            playPauseBtn.setBackground(Color.GREEN);
+            playPauseBtn.setForeground(Color.BLACK);
+            playPauseBtn.addActionListener(e -> {
+                if (replayPlayer.isPlaying()) {
+                    replayPlayer.pause();
+                } else {
+                    replayPlayer.play();
+                }
+                playPauseBtn.setText(replayPlayer.isPlaying() ? "Pause" : "Play");
+            });
+
+            JComboBox<String> speedBox = new JComboBox<>();
+            for (double speed : ReplayPlayer.SPEEDS) {
+                speedBox.addItem(speed + "x");
+            }
+            speedBox.setSelectedItem("1.0x");
+            speedBox.addActionListener(e ->
+                    replayPlayer.setSpeed(ReplayPlayer.SPEEDS[speedBox.getSelectedIndex()]));
+
+            replaySlider = new JSlider(0, (int) Math.max(0, replayPlayer.getLength() - 1), 0);
+            replaySlider.setPreferredSize(new Dimension(700, 30));
+            replaySlider.setBackground(Color.DARK_GRAY);
+            replaySlider.addChangeListener(e -> {
+                if (!updatingReplaySlider) {
+                    replayPlayer.seek(replaySlider.getValue());
+                }
+            });
+
+            replayTickLabel = new JLabel();
+            replayTickLabel.setFont(new Font("Arial", Font.BOLD, 14));
+            replayTickLabel.setForeground(Color.WHITE);
+
+            JButton exitBtn = new JButton("Exit Replay");
+            exitBtn.setFont(new Font("Arial", Font.BOLD, 14));
+            exitBtn.setBackground(Color.RED);
+            exitBtn.setForeground(Color.BLACK);
+            exitBtn.addActionListener(e -> closeReplay());
+
+            replayPanel.add(playPauseBtn);
+            replayPanel.add(speedBox);
+            replayPanel.add(replaySlider);
+            replayPanel.add(replayTickLabel);
+            replayPanel.add(exitBtn);
+        }
+        return replayPanel;
+    }
+
+    /**
+     * Lets the user pick a file and saves the race state to it. The state is taken
+     * between two ticks and written out here.
+     */
+    private void saveRaceState() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        send(race -> {
+            ByteBuffer snapshot = RaceSnapshot.save(race);
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    RaceSnapshot.writeFile(snapshot, file.toPath());
+                    log("Race saved to " + file.getName() + ".");
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(this, "Could not save race: " + e.getMessage());
+                }
+            });
+        });
+    }
+
+    /**
+     * Lets the user pick a saved race and restores it paused; Start resumes it.
+     */
+    private void loadRaceState() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        ByteBuffer snapshot;
+        try {
+            snapshot = RaceSnapshot.readFile(file.toPath());
+        } catch (IOException | RuntimeException e) {
+            JOptionPane.showMessageDialog(this, "Could not load race: " + e.getMessage());
+            return;
+        }
+        send(race -> {
+            race.pauseRace();
+            try {
+                RaceSnapshot.restore(race, snapshot);
+                log("Race loaded from " + file.getName() + ".");
+            } catch (IllegalArgumentException e) {
+                log("Could not load race: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Lets the user pick a replay file and switches the display to replay mode.
+     */
+    private void openReplay() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            ReplayFile file = new ReplayFile(chooser.getSelectedFile().toPath());
+            if (file.getFrameCount() == 0) {
+                file.close();
+                JOptionPane.showMessageDialog(this, "The replay is empty: no race was recorded.");
+                return;
+            }
+            replayPlayer = new ReplayPlayer(file, this::onReplayFrame);
+        } catch (IOException | RuntimeException e) {
+            JOptionPane.showMessageDialog(this, "Could not open replay: " + e.getMessage());
+            return;
+        }
+        remove(startPage);
+        add(getRacePanel(), BorderLayout.CENTER);
+        add(getReplayPanel(), BorderLayout.NORTH);
+        onReplayFrame();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Leaves replay mode: stops and closes the replay and goes back to the start page.
+     * The replay controls are built afresh for the next replay, whose length differs.
+     */
+    private void closeReplay() {
+        if (replayPlayer == null) {
+            return;
+        }
+        try {
+            replayPlayer.close();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not close replay: " + e.getMessage());
+        }
+        replayPlayer = null;
+        remove(getRacePanel());
+        remove(replayPanel);
+        replayPanel = null;
+        replaySlider = null;
+        replayTickLabel = null;
+        add(startPage, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Refreshes the seek slider and race view after the replay frame changes.
+     */
+    private void onReplayFrame() {
+        if (replaySlider != null) {
+            updatingReplaySlider = true;
+            replaySlider.setValue((int) replayPlayer.getPosition());
+            updatingReplaySlider = false;
+            replayTickLabel.setText(String.format("%.1fs / %.1fs",
+                    SimClock.toSeconds(replayPlayer.getPosition()),
+                    SimClock.toSeconds(replayPlayer.getLength() - 1)));
+        }
+        getRacePanel().render();
+    }
+
+    /**
+     * Returns a label listing the fastest laps ever driven, for the start page.
+     * @return JLabel with the all-time fastest laps
+     */
+    private JLabel getFastestLapsLabel() {
+        StringBuilder text = new StringBuilder("<html><center>Fastest laps ever<br>");
+        List<ResultsStore.Entry> fastest = leaderboard.fastestLaps();
+        for (int i = 0; i < Math.min(5, fastest.size()); i++) {
+            ResultsStore.Entry entry = fastest.get(i);
+            text.append(String.format("%d. Car %d  %.2fs<br>", i + 1, entry.getCarId(), entry.getBestLap()));
+        }
+        if (fastest.isEmpty()) {
+            text.append("No races yet");
+        }
+        JLabel label = new JLabel(text.append("</center></html>").toString());
+        label.setFont(new Font("Times New Roman", Font.BOLD, 20));
+        label.setForeground(Color.WHITE);
+        label.setAlignmentX(Component.CENTER_ALIGNMENT);
+        return label;
+    }
+
     /**
      * Returns a scrollable panel with the race scoreboard.
      * @return JScrollPane for scoreboard table
      */
     private JScrollPane getScoreboardPanel() {
         if (scoreboard == null) {
-            String[] columns = {"Car ID", "Route", "Lap", "Speed", "Total Time", "Status"};
+            String[] columns = {"Car ID", "Route", "Lap", "Best Lap", "Speed", "Total Time", "Status", "PB"};
             tableModel = new DefaultTableModel(columns, 0);
             scoreboard = new JTable(tableModel);
             scoreboard.setFont(new Font("Arial", Font.BOLD, 12));
@@ -299,42 +669,193 @@ public class RaceDisplay extends JPanel {
      * Starts a 3-second countdown before initiating the race.
      */
     private void startCountdown() {
-        if (countdownLabel == null) {
-            countdownLabel = new JLabel("4", SwingConstants.CENTER);
-            countdownLabel.setFont(new Font("Arial", Font.BOLD, 48));
-            countdownLabel.setForeground(Color.BLACK);
-            countdownLabel.setBackground(Color.RED);
-            countdownLabel.setOpaque(true);
-            //countdownLabel.setBounds(450, 250, 500, 250);
-            getRacePanel().add(countdownLabel);
-            getRacePanel().repaint();
-        }
+        countdown = 4;
+        renderRace(true);
 
         Timer countdownTimer = new Timer(1000, e -> {
-            int count = Integer.parseInt(countdownLabel.getText());
-            if (count > 1) {
-                countdownLabel.setText(String.valueOf(count - 1));
-            } else {
+            countdown--;
+            if (countdown == 0) {
                 ((Timer) e.getSource()).stop();
-                countdownLabel.setVisible(false);
-                getRacePanel().repaint();
                 startRace();
             }
+            renderRace(true);
         });
         countdownTimer.start();
     }
 
     /**
-     * Starts the actual race and schedules periodic UI updates.
+     * Starts the actual race once the countdown is over.
      */
     private void startRace() {
-        race.startRace();
-        raceTimer = new Timer(100, e -> {
+        send(race -> {
+            race.startRace();
+            steering.reset();
+        });
+    }
+
+    /**
+     * Sends a command to the race and makes sure the race timer is running to apply it.
+     * Every control goes through here rather than calling the race directly, so the
+     * race only ever changes on the thread that advances it.
+     * @param command the command
+     */
+    private void send(RaceCommand command) {
+        race.submit(command);
+        if (raceTimer == null) {
+            raceTimer = new Timer(FRAME_MILLIS, e -> runDueTicks());
+            raceTimer.start();
+        }
+    }
+
+    /**
+     * Applies the commands sent since the last frame, then runs every tick the race
+     * clock says is due, within one frame's time budget, and updates the scoreboard
+     * and renders one frame. Frames in between are skipped. While the race is
+     * stopped only the commands are applied, and a frame is drawn if there were any.
+     */
+    private void runDueTicks() {
+        long now = System.nanoTime();
+        boolean wasRunning = race.isRunning();
+        int applied = race.applyCommands();
+        if (!race.isRunning()) {
+            if (applied > 0) {
+                updateScoreboard();
+                renderRace(true);
+            }
+            return;
+        }
+        if (!wasRunning) {
+            race.getClock().startPacing(now);
+        }
+        int due = race.getClock().ticksDue(now);
+        long deadline = now + FRAME_BUDGET_NANOS;
+        int ran = 0;
+        while (ran < due && race.isRunning()) {
             race.updateRaceStatus();
+            ran++;
+            if ((ran & 15) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        if (ran > 0) {
             updateScoreboard();
-            getRacePanel().repaint();
-        });
-        raceTimer.start();
+            updatePitAdvice();
+            // A command in the last ticks may have reset or reloaded the race.
+            renderRace(!race.isRunning());
+            steering.framePresented(System.nanoTime());
+        }
+    }
+
+    /**
+     * Renders one frame of the live race, repainting only what moved unless told otherwise.
+     * @param whole true to draw the whole view, as after a reset or a load
+     */
+    private void renderRace(boolean whole) {
+        indexScene();
+        // A frame after the camera moved shares nothing with the one before.
+        boolean moved = camera.getVersion() != renderedView;
+        renderedView = camera.getVersion();
+        if (usesSprites()) {
+            // Every frame is drawn whole; forget the tracking so full detail starts whole too.
+            carBounds = new Rectangle[0];
+            shownObstacles.clear();
+            getRacePanel().render();
+            return;
+        }
+        List<Rectangle> dirty = collectDirty();
+        getRacePanel().render(whole || moved ? null : dirty);
+    }
+
+    /**
+     * Moves a following camera onto its car, puts every car and obstacle in the
+     * grids, and counts those in view.
+     */
+    private void indexScene() {
+        RaceCanvas canvas = getRacePanel();
+        List<Car> cars = race.getCars();
+        camera.update(cars, canvas.getWidth(), canvas.getHeight());
+
+        gridCars = cars.toArray(new Car[0]);
+        carGrid.clear();
+        for (Car car : gridCars) {
+            carGrid.add(car.getCurrentX() + CAR_WIDTH / 2f, car.getCurrentY() + CAR_HEIGHT / 2f);
+        }
+        carGrid.build();
+
+        gridObstacles = race.getObstacles().toArray(new Obstacle[0]);
+        obstacleGrid.clear();
+        for (Obstacle obs : gridObstacles) {
+            obstacleGrid.add(obs.getX(), obs.getY());
+        }
+        obstacleGrid.build();
+
+        Rectangle2D view = camera.getVisibleWorld(canvas.getWidth(), canvas.getHeight());
+        visibleObjects = query(carGrid, view, CAR_EXTENT) + query(obstacleGrid, view, OBSTACLE_EXTENT);
+    }
+
+    /**
+     * Finds the points of a grid whose square of the given extent reaches into an area.
+     * @return number of hits, read from the grid
+     */
+    private static int query(SpatialGrid grid, Rectangle2D area, int extent) {
+        return grid.query(area.getMinX() - extent, area.getMinY() - extent,
+                area.getMaxX() + extent, area.getMaxY() + extent);
+    }
+
+    /**
+     * Works out what changed since the previous frame: the old and new place of every
+     * car that moved, and every obstacle that appeared, disappeared or faded, merged
+     * into a few rectangles. Returns null if everything should be drawn.
+     */
+    private List<Rectangle> collectDirty() {
+        List<Rectangle> dirty = new ArrayList<>();
+        List<Car> cars = race.getCars();
+        boolean whole = carBounds.length != cars.size();
+        if (whole) {
+            carBounds = new Rectangle[cars.size()];
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            Rectangle now = camera.toScreen(car.getCurrentX() + CAR_WIDTH / 2f,
+                    car.getCurrentY() + CAR_HEIGHT / 2f, CAR_EXTENT);
+            Rectangle before = carBounds[i];
+            if (!now.equals(before)) {
+                dirty.add(before == null ? now : before.union(now));
+                carBounds[i] = now;
+            }
+        }
+
+        Map<Obstacle, Integer> shown = new IdentityHashMap<>();
+        for (Obstacle obs : race.getObstacles()) {
+            int alpha = obstacleAlpha(obs.getLifetime());
+            Integer before = shownObstacles.remove(obs);
+            if (before == null || before != alpha) {
+                dirty.add(camera.toScreen(obs.getX(), obs.getY(), OBSTACLE_EXTENT));
+            }
+            shown.put(obs, alpha);
+        }
+        for (Obstacle gone : shownObstacles.keySet()) {
+            dirty.add(camera.toScreen(gone.getX(), gone.getY(), OBSTACLE_EXTENT));
+        }
+        shownObstacles = shown;
+
+        dirty.add(FRAME_TIME_BOUNDS);
+        return whole ? null : merge(dirty);
+    }
+
+    /**
+     * Merges overlapping rectangles until none overlap.
+     */
+    private static List<Rectangle> merge(List<Rectangle> rects) {
+        for (int i = 0; i < rects.size(); i++) {
+            for (int j = i + 1; j < rects.size(); j++) {
+                if (rects.get(i).intersects(rects.get(j))) {
+                    rects.set(i, rects.get(i).union(rects.remove(j)));
+                    j = i;
+                }
+            }
+        }
+        return rects;
     }
 
     /**
@@ -350,37 +871,180 @@ public class RaceDisplay extends JPanel {
 
     /**
      * Draws the overall race including track, obstacles, checkpoints, and cars.
-     * @param g the Graphics object used to draw
+     * @param g2     the Graphics2D object used to draw
+     * @param width  width of the race view
+     * @param height height of the race view
      */
-    private void drawRace(Graphics g) {
-        Graphics2D g2 = (Graphics2D) g;
+    private void drawRace(Graphics2D g2, int width, int height) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        int width = getRacePanel().getWidth();
-        int height = getRacePanel().getHeight();
+        if (replayPlayer != null) {
+            drawGrass(g2, width, height);
+            AffineTransform screen = g2.getTransform();
+            camera.apply(g2);
+            drawFrame(g2, replayPlayer.getFrame(), width, height);
+            g2.setTransform(screen);
+            return;
+        }
+        if (gridCars.length != race.getCars().size()) {
+            indexScene();
+        }
+
+        // Grass, track and checkpoint lines come from the cached background.
+        if (background == null || background.getWidth() != width || background.getHeight() != height
+                || backgroundView != camera.getVersion()) {
+            background = createBackground(width, height);
+            backgroundView = camera.getVersion();
+        }
+        Rectangle2D view = camera.getVisibleWorld(width, height);
+        if (usesSprites()) {
+            drawCrowd(g2, view);
+        } else {
+            g2.drawImage(background, 0, 0, null);
+
+            // Draw the obstacles and cars in view, within the area being repainted.
+            AffineTransform screen = g2.getTransform();
+            camera.apply(g2);
+            Rectangle clip = g2.getClipBounds();
+            if (clip != null) {
+                view = view.createIntersection(clip);
+            }
+            drawObstacles(g2, view);
+            drawCars(g2, view);
+            g2.setTransform(screen);
+        }
+
+        if (countdown > 0) {
+            drawCountdown(g2, width, height);
+        }
+        drawFrameTime(g2);
+    }
+
+    /** @return true if there are too many cars and obstacles in view, or they are too small, for full detail */
+    private boolean usesSprites() {
+        return LodRenderer.useSprites(visibleObjects, camera.getZoom());
+    }
+
+    /**
+     * Draws the background and the obstacles and cars in view at low detail in one batch.
+     */
+    private void drawCrowd(Graphics2D g2, Rectangle2D view) {
+        if (crowdBackdrop != background) {
+            crowd.setBackdrop(background);
+            crowdBackdrop = background;
+        }
+        crowd.setView(camera.getZoom(), camera.getOffsetX(), camera.getOffsetY());
+        crowd.begin();
+        int hits = query(obstacleGrid, view, OBSTACLE_EXTENT);
+        for (int k = 0; k < hits; k++) {
+            Obstacle obs = gridObstacles[obstacleGrid.getHit(k)];
+            crowd.addObstacle(obs.getX(), obs.getY(),
+                    (obstacleAlpha(obs.getLifetime()) << 24) | (obs.getColor().getRGB() & 0xFFFFFF));
+        }
+        hits = query(carGrid, view, CAR_EXTENT);
+        for (int k = 0; k < hits; k++) {
+            Car car = gridCars[carGrid.getHit(k)];
+            crowd.addCar(car.getCurrentX() + CAR_WIDTH / 2f, car.getCurrentY() + CAR_HEIGHT / 2f,
+                    car.getCurrentAngle(), getColorForCar(car.getId()).getRGB());
+        }
+        crowd.flush(g2);
+    }
+
+    /**
+     * Draws the parts of the race view that never move: grass, track and checkpoint lines.
+     */
+    private BufferedImage createBackground(int width, int height) {
+        BufferedImage image = getRacePanel().getGraphicsConfiguration().createCompatibleImage(width, height);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            drawGrass(g2, width, height);
+            camera.apply(g2);
+            drawTrack(g2, height);
+            drawStops(g2);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Draws the seconds left before the start in a red box over the middle of the track.
+     */
+    private void drawCountdown(Graphics2D g2, int width, int height) {
+        g2.setFont(new Font("Arial", Font.BOLD, 48));
+        String text = String.valueOf(countdown);
+        FontMetrics fm = g2.getFontMetrics();
+        int boxW = fm.stringWidth(text) + 40;
+        int boxH = fm.getHeight() + 10;
+        int x = TRACK_CENTER_X - boxW / 2;
+        int y = TRACK_CENTER_Y - boxH / 2;
+        g2.setColor(Color.RED);
+        g2.fillRect(x, y, boxW, boxH);
+        g2.setColor(Color.BLACK);
+        g2.drawString(text, x + 20, y + 5 + fm.getAscent());
+    }
+
+    /**
+     * Draws the measured frame time and steering latency in the top-left corner.
+     */
+    private void drawFrameTime(Graphics2D g2) {
+        RaceCanvas canvas = getRacePanel();
+        g2.setFont(new Font("Arial", Font.PLAIN, 11));
+        g2.setColor(Color.WHITE);
+        g2.drawString(String.format("frame %.1f ms (avg %.1f, worst %.1f), %.0f%% repainted",
+                canvas.getLastFrameMillis(), canvas.getAverageFrameMillis(), canvas.getWorstFrameMillis(),
+                100 * canvas.getPaintedFraction()), 8, 16);
+        if (steering.getLatencyCount() > 0) {
+            g2.drawString(String.format("input %.1f ms (avg %.1f, worst %.1f)", steering.getLastLatencyMillis(),
+                    steering.getAverageLatencyMillis(), steering.getWorstLatencyMillis()), 8, 30);
+        }
+    }
+
+    /**
+     * Draws a recorded frame: track, checkpoint lines, obstacles and cars.
+     * Used for replays and other views that do not hold a live {@link Race}.
+     * @param g2     Graphics2D used to draw
+     * @param frame  the frame to draw
+     * @param width  width of the drawing area
+     * @param height height used for the grass gradient
+     */
+    static void drawFrame(Graphics2D g2, RaceFrame frame, int width, int height) {
+        drawGrass(g2, width, height);
+        drawTrack(g2, height);
+        for (int i = 0; i < frame.getStopCount(); i++) {
+            drawStop(g2, frame.getStopName(i), frame.getStopAngle(i));
+        }
+        for (int i = 0; i < frame.getObstacleCount(); i++) {
+            drawObstacle(g2, frame.getObstacleColor(i), frame.getObstacleShape(i),
+                    frame.getObstacleX(i), frame.getObstacleY(i), frame.getObstacleLifetime(i));
+        }
+        for (int i = 0; i < frame.getCarCount(); i++) {
+            drawCar(g2, frame.getCarId(i), frame.getCarX(i), frame.getCarY(i), frame.getCarAngle(i));
+        }
+    }
 
-        // Grass background with vertical gradient.
+    /**
+     * Fills the background with a vertical grass gradient.
+     * @param g2     Graphics2D used to draw
+     * @param width  width to fill
+     * @param height height to fill
+     */
+    static void drawGrass(Graphics2D g2, int width, int height) {
         GradientPaint grass = new GradientPaint(
                 0, 0, new Color(34, 139, 34),
                 0, height, new Color(0, 100, 0)
         );
         g2.setPaint(grass);
         g2.fillRect(0, 0, width, height);
-
-        // Draw the asphalt track ring.
-        drawTrack(g2);
-
-        // Draw checkpoint lines, obstacles, and cars.
-        drawStops(g2);
-        drawObstacles(g2);
-        drawCars(g2);
     }
 
     /**
      * Draws the track with grass and road ring using ellipses.
-     * @param g2 Graphics2D used to draw shapes
+     * @param g2     Graphics2D used to draw shapes
+     * @param height height used for the inner grass gradient
      */
-    private void drawTrack(Graphics2D g2) {
+    static void drawTrack(Graphics2D g2, int height) {
         int centerX = TRACK_CENTER_X;
         int centerY = TRACK_CENTER_Y;
         int a = TRACK_A;
@@ -410,7 +1074,7 @@ public class RaceDisplay extends JPanel {
         // Apply grass gradient inside to create a ring.
         GradientPaint grass = new GradientPaint(
                 0, 0, new Color(34, 139, 34),
-                0, getHeight(), new Color(0, 100, 0)
+                0, height, new Color(0, 100, 0)
         );
         g2.setPaint(grass);
         g2.fillOval(innerX, innerY, innerW, innerH);
@@ -427,124 +1091,167 @@ public class RaceDisplay extends JPanel {
      * @param g2 Graphics2D used to draw lines
      */
     private void drawStops(Graphics2D g2) {
+        for (Location loc : race.getStops()) {
+            drawStop(g2, loc.getName(), loc.getAngle());
+        }
+    }
+
+    /**
+     * Draws one yellow checkpoint line across the track with its label.
+     * @param g2    Graphics2D used to draw lines
+     * @param name  checkpoint label
+     * @param theta checkpoint angle on the ellipse in radians
+     */
+    static void drawStop(Graphics2D g2, String name, float theta) {
         int halfWidth = TRACK_HALF_WIDTH;
         int centerX = TRACK_CENTER_X;
         int centerY = TRACK_CENTER_Y;
         int a = TRACK_A;
         int b = TRACK_B;
 
-        // Gather all route locations (checkpoints) from each car's route.
-        Set<Location> stops = new HashSet<>();
-        for (Car car : race.getCars()) {
-            stops.addAll(car.getRoute().getLocations());
-        }
-
         g2.setStroke(new BasicStroke(3));
-        for (Location loc : stops) {
-            float theta = loc.getAngle();
 
-            float midX = centerX + a * (float) Math.cos(theta);
-            float midY = centerY + b * (float) Math.sin(theta);
+        float midX = centerX + a * (float) Math.cos(theta);
+        float midY = centerY + b * (float) Math.sin(theta);
 
-            double tx = -a * Math.sin(theta);
-            double ty = b * Math.cos(theta);
-            double norm = Math.sqrt(tx * tx + ty * ty);
-            if (norm < 0.0001) {
-                norm = 0.0001;
-            }
-            double unitTx = tx / norm;
-            double unitTy = ty / norm;
-            double normalX = unitTy;
-            double normalY = -unitTx;
+        double tx = -a * Math.sin(theta);
+        double ty = b * Math.cos(theta);
+        double norm = Math.sqrt(tx * tx + ty * ty);
+        if (norm < 0.0001) {
+            norm = 0.0001;
+        }
+        double unitTx = tx / norm;
+        double unitTy = ty / norm;
+        double normalX = unitTy;
+        double normalY = -unitTx;
 
-            int x1 = (int) (midX + halfWidth * normalX);
-            int y1 = (int) (midY + halfWidth * normalY);
-            int x2 = (int) (midX - halfWidth * normalX);
-            int y2 = (int) (midY - halfWidth * normalY);
+        int x1 = (int) (midX + halfWidth * normalX);
+        int y1 = (int) (midY + halfWidth * normalY);
+        int x2 = (int) (midX - halfWidth * normalX);
+        int y2 = (int) (midY - halfWidth * normalY);
 
-            // Yellow line for the checkpoint.
-            g2.setColor(Color.YELLOW);
-            g2.drawLine(x1, y1, x2, y2);
+        // Yellow line for the checkpoint.
+        g2.setColor(Color.YELLOW);
+        g2.drawLine(x1, y1, x2, y2);
 
-            // Label in white near midpoint.
-            g2.setColor(Color.WHITE);
-            g2.drawString(loc.getName(), (x1 + x2) / 2, (y1 + y2) / 2);
-        }
+        // Label in white near midpoint.
+        g2.setColor(Color.WHITE);
+        g2.drawString(name, (x1 + x2) / 2, (y1 + y2) / 2);
     }
 
     /**
-     * Renders all obstacles on the track based on shape and transparency.
-     * @param g2 Graphics2D used for obstacle drawing
+     * Renders the obstacles that reach into an area of the world.
+     * @param g2   Graphics2D used for obstacle drawing, in world coordinates
+     * @param area the world area being drawn
      */
-    private void drawObstacles(Graphics2D g2) {
-        for (Obstacle obs : race.getObstacles()) {
-            int alpha = Math.min(255, obs.getLifetime() * 5);
-            Color obsColor = new Color(
-                    obs.getColor().getRed(),
-                    obs.getColor().getGreen(),
-                    obs.getColor().getBlue(),
-                    alpha
-            );
-            g2.setColor(obsColor);
-
-            int obsSize = 15;
-            int x = (int) (obs.getX() - obsSize / 2);
-            int y = (int) (obs.getY() - obsSize / 2);
-
-            switch (obs.getShapeType()) {
-                case "circle":
-                    g2.fillOval(x, y, obsSize, obsSize);
-                    break;
-                case "square":
-                    g2.fillRect(x, y, obsSize, obsSize);
-                    break;
-                case "triangle":
-                    int[] xs = {x + obsSize / 2, x, x + obsSize};
-                    int[] ys = {y, y + obsSize, y + obsSize};
-                    g2.fillPolygon(xs, ys, 3);
-                    break;
-                default:
-                    g2.fillOval(x, y, obsSize, obsSize);
-                    break;
-            }
+    private void drawObstacles(Graphics2D g2, Rectangle2D area) {
+        int hits = query(obstacleGrid, area, OBSTACLE_EXTENT);
+        for (int k = 0; k < hits; k++) {
+            Obstacle obs = gridObstacles[obstacleGrid.getHit(k)];
+            drawObstacle(g2, obs.getColor(), obs.getShapeType(), obs.getX(), obs.getY(), obs.getLifetime());
         }
     }
 
     /**
-     * Renders cars on the track with proper rotation and shadow.
-     * @param g2 Graphics2D used for car rendering
+     * Returns how opaque an obstacle is drawn; it fades out over its last ticks.
+     * @param lifetime remaining lifetime in ticks
+     * @return alpha from 0 to 255
      */
-    private void drawCars(Graphics2D g2) {
-        for (Car car : race.getCars()) {
-            AffineTransform original = g2.getTransform();
-
-            // Draw shadow offset.
-            int shadowOffset = 4;
-            g2.translate(car.getCurrentX() + CAR_WIDTH / 2.0,
-                    car.getCurrentY() + CAR_HEIGHT / 2.0);
-            g2.rotate(car.getCurrentAngle());
-            g2.setColor(new Color(0, 0, 0, 100));
-            g2.fillRect(shadowOffset - CAR_WIDTH / 2,
-                    shadowOffset - CAR_HEIGHT / 2,
-                    CAR_WIDTH, CAR_HEIGHT);
-            g2.setTransform(original);
+    static int obstacleAlpha(int lifetime) {
+        return Math.min(255, lifetime * 5);
+    }
 
-            // Draw the actual car.
-            original = g2.getTransform();
-            g2.translate(car.getCurrentX() + CAR_WIDTH / 2.0,
-                    car.getCurrentY() + CAR_HEIGHT / 2.0);
-            g2.rotate(car.getCurrentAngle());
+    /**
+     * Renders one obstacle, fading it out as its lifetime runs down.
+     * @param g2        Graphics2D used for obstacle drawing
+     * @param color     base color of the obstacle
+     * @param shapeType circle, square or triangle
+     * @param obsX      centre X coordinate
+     * @param obsY      centre Y coordinate
+     * @param lifetime  remaining lifetime in ticks
+     */
+    static void drawObstacle(Graphics2D g2, Color color, String shapeType, float obsX, float obsY, int lifetime) {
+        int alpha = obstacleAlpha(lifetime);
+        Color obsColor = new Color(
+                color.getRed(),
+                color.getGreen(),
+                color.getBlue(),
+                alpha
+        );
+        g2.setColor(obsColor);
+
+        int obsSize = 15;
+        int x = (int) (obsX - obsSize / 2);
+        int y = (int) (obsY - obsSize / 2);
+
+        switch (shapeType) {
+            case "circle":
+                g2.fillOval(x, y, obsSize, obsSize);
+                break;
+            case "square":
+                g2.fillRect(x, y, obsSize, obsSize);
+                break;
+            case "triangle":
+                int[] xs = {x + obsSize / 2, x, x + obsSize};
+                int[] ys = {y, y + obsSize, y + obsSize};
+                g2.fillPolygon(xs, ys, 3);
+                break;
+            default:
+                g2.fillOval(x, y, obsSize, obsSize);
+                break;
+        }
+    }
 
-            g2.setColor(getColorForCar(car.getId()));
-            g2.fillRect(-CAR_WIDTH / 2, -CAR_HEIGHT / 2, CAR_WIDTH, CAR_HEIGHT);
+    /**
+     * Renders the cars that reach into an area of the world, with rotation and shadow.
+     * @param g2   Graphics2D used for car rendering, in world coordinates
+     * @param area the world area being drawn
+     */
+    private void drawCars(Graphics2D g2, Rectangle2D area) {
+        int hits = query(carGrid, area, CAR_EXTENT);
+        for (int k = 0; k < hits; k++) {
+            Car car = gridCars[carGrid.getHit(k)];
+            drawCar(g2, car.getId(), car.getCurrentX(), car.getCurrentY(), car.getCurrentAngle());
+        }
+    }
 
-            // Car ID text in white.
-            g2.setColor(Color.WHITE);
-            g2.setFont(new Font("Arial", Font.BOLD, 10));
-            g2.drawString("Car " + car.getId(), -CAR_WIDTH / 2, 0);
+    /**
+     * Renders one car with its shadow and ID label.
+     * @param g2    Graphics2D used for car rendering
+     * @param id    car ID, used for the color and label
+     * @param carX  X coordinate
+     * @param carY  Y coordinate
+     * @param angle heading in radians
+     */
+    static void drawCar(Graphics2D g2, int id, float carX, float carY, float angle) {
+        AffineTransform original = g2.getTransform();
+
+        // Draw shadow offset.
+        int shadowOffset = 4;
+        g2.translate(carX + CAR_WIDTH / 2.0,
+                carY + CAR_HEIGHT / 2.0);
+        g2.rotate(angle);
+        g2.setColor(new Color(0, 0, 0, 100));
+        g2.fillRect(shadowOffset - CAR_WIDTH / 2,
+                shadowOffset - CAR_HEIGHT / 2,
+                CAR_WIDTH, CAR_HEIGHT);
+        g2.setTransform(original);
+
+        // Draw the actual car.
+        original = g2.getTransform();
+        g2.translate(carX + CAR_WIDTH / 2.0,
+                carY + CAR_HEIGHT / 2.0);
+        g2.rotate(angle);
+
+        g2.setColor(getColorForCar(id));
+        g2.fillRect(-CAR_WIDTH / 2, -CAR_HEIGHT / 2, CAR_WIDTH, CAR_HEIGHT);
+
+        // Car ID text in white.
+        g2.setColor(Color.WHITE);
+        g2.setFont(new Font("Arial", Font.BOLD, 10));
+        g2.drawString("Car " + id, -CAR_WIDTH / 2, 0);
 
-            g2.setTransform(original);
-        }
+        g2.setTransform(original);
     }
 
     /**
@@ -552,7 +1259,7 @@ public class RaceDisplay extends JPanel {
      * @param id the unique ID of the car
      * @return Color object corresponding to the car ID
      */
-    private Color getColorForCar(int id) {
+    static Color getColorForCar(int id) {
         switch (id) {
             case 1:
                 return Color.RED;
@@ -565,6 +1272,32 @@ public class RaceDisplay extends JPanel {
         }
     }
 
+    /**
+     * Stops the race timer, any replay and the pit advisor's worker threads, for when
+     * the window showing the display is closed.
+     */
+    public void close() {
+        if (raceTimer != null) {
+            raceTimer.stop();
+        }
+        closeReplay();
+        if (pitAdvisor != null) {
+            race.removeListener(pitAdvisor);
+            pitAdvisor.close();
+        }
+    }
+
+    /**
+     * Shows the latest pit strategy advice, if any has been worked out yet.
+     */
+    private void updatePitAdvice() {
+        if (pitAdvisor == null || pitAdviceLabel == null) {
+            return;
+        }
+        PitAdvisor.Advice advice = pitAdvisor.getAdvice();
+        pitAdviceLabel.setText(advice == null ? "" : "Pit advice: " + advice);
+    }
+
     /**
      * Updates the scoreboard with current data for each car.
      */
@@ -580,6 +1313,8 @@ public class RaceDisplay extends JPanel {
             String status = car.isFinished()
                     ? "Finished"
                     : (car.getCurrentSpeed() < 0.1f ? "Pitting" : "Racing");
+            ResultsStore.Entry pb = leaderboard == null ? null : leaderboard.personalBestLap(car.getId());
+            String pbStr = pb == null ? "-" : String.format("%.2f", pb.getBestLap());
 
             Object[] row = {
                     car.getId(),
@@ -588,7 +1323,8 @@ public class RaceDisplay extends JPanel {
                     bestLap,
                     speedStr,
                     timeStr,
-                    status
+                    status,
+                    pbStr
             };
             tableModel.addRow(row);
         }
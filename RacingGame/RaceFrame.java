@@ -0,0 +1,487 @@
+/**
+ * A RaceFrame is a compact, drawable snapshot of the visible race state for one tick:
+ * every car's pose, lap and status, every obstacle, and the checkpoint lines.
+ *
+ * Values are quantized to fixed-point ints when captured so that a frame can be
+ * encoded either as a full keyframe or as a small delta against the previous frame,
+ * and decoding the deltas reproduces the captured frame exactly.
+ * Frames are used by the replay recorder and player and by anything else that needs
+ * to move race state around without holding on to live {@link Car} objects.
+ */
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class RaceFrame {
+    // Fixed-point scales used for quantization.
+    private static final float POSITION_SCALE = 16f;
+    private static final float ANGLE_SCALE = 10000f;
+    private static final float SPEED_SCALE = 100f;
+
+    // Car status flags.
+    private static final int FLAG_FINISHED = 1;
+    private static final int FLAG_PITTING = 2;
+
+    /** Shape names, indexed by the shape code stored for each obstacle. */
+    public static final String[] SHAPES = {"circle", "square", "triangle"};
+
+    private long tick;
+
+    private int carCount;
+    private int[] carIds = new int[0];
+    private int[] carX = new int[0];
+    private int[] carY = new int[0];
+    private int[] carAngle = new int[0];
+    private int[] carSpeed = new int[0];
+    private int[] carOffset = new int[0];
+    private int[] carLap = new int[0];
+    private int[] carFlags = new int[0];
+
+    private int obstacleCount;
+    private int[] obstacleIds = new int[0];
+    private int[] obstacleX = new int[0];
+    private int[] obstacleY = new int[0];
+    private int[] obstacleLifetime = new int[0];
+    private int[] obstacleRgb = new int[0];
+    private int[] obstacleShape = new int[0];
+
+    private String[] stopNames = new String[0];
+    private float[] stopAngles = new float[0];
+    private Race stopsSource;
+
+    // Scratch space reused while encoding and decoding obstacle deltas.
+    private int[] scratchRemoved = new int[0];
+    private int[] scratchSpawned = new int[0];
+
+    /**
+     * Captures the current state of a race into this frame, reusing its arrays.
+     * @param race the race to capture
+     */
+    public void capture(Race race) {
+        tick = race.getTick();
+
+        List<Car> cars = race.getCars();
+        ensureCarCapacity(cars.size());
+        carCount = cars.size();
+        for (int i = 0; i < carCount; i++) {
+            Car car = cars.get(i);
+            carIds[i] = car.getId();
+            carX[i] = Math.round(car.getCurrentX() * POSITION_SCALE);
+            carY[i] = Math.round(car.getCurrentY() * POSITION_SCALE);
+            carAngle[i] = Math.round(car.getCurrentAngle() * ANGLE_SCALE);
+            carSpeed[i] = Math.round(car.getCurrentSpeed() * SPEED_SCALE);
+            carOffset[i] = Math.round(car.getLateralOffset() * POSITION_SCALE);
+            carLap[i] = car.getCurrentLap();
+            carFlags[i] = (car.isFinished() ? FLAG_FINISHED : 0)
+                    | (car.getPitStopTimer() > 0 ? FLAG_PITTING : 0);
+        }
+
+        List<Obstacle> obstacles = race.getObstacles();
+        ensureObstacleCapacity(obstacles.size());
+        obstacleCount = obstacles.size();
+        for (int i = 0; i < obstacleCount; i++) {
+            Obstacle obs = obstacles.get(i);
+            obstacleIds[i] = obs.getId();
+            obstacleX[i] = Math.round(obs.getX() * POSITION_SCALE);
+            obstacleY[i] = Math.round(obs.getY() * POSITION_SCALE);
+            obstacleLifetime[i] = obs.getLifetime();
+            obstacleRgb[i] = obs.getColor().getRGB() & 0xFFFFFF;
+            obstacleShape[i] = shapeCode(obs.getShapeType());
+        }
+
+        if (stopsSource != race) {
+            captureStops(race);
+            stopsSource = race;
+        }
+    }
+
+    /**
+     * Collects the distinct checkpoint lines of all routes in the race.
+     */
+    private void captureStops(Race race) {
+        List<Location> stops = race.getStops();
+        stopNames = new String[stops.size()];
+        stopAngles = new float[stops.size()];
+        for (int i = 0; i < stopAngles.length; i++) {
+            stopNames[i] = stops.get(i).getName();
+            stopAngles[i] = (float) (stops.get(i).getAngle() % (2 * Math.PI));
+        }
+    }
+
+    private static int shapeCode(String shapeType) {
+        for (int i = 0; i < SHAPES.length; i++) {
+            if (SHAPES[i].equals(shapeType)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private void ensureCarCapacity(int n) {
+        if (carIds.length < n) {
+            carIds = Arrays.copyOf(carIds, n);
+            carX = Arrays.copyOf(carX, n);
+            carY = Arrays.copyOf(carY, n);
+            carAngle = Arrays.copyOf(carAngle, n);
+            carSpeed = Arrays.copyOf(carSpeed, n);
+            carOffset = Arrays.copyOf(carOffset, n);
+            carLap = Arrays.copyOf(carLap, n);
+            carFlags = Arrays.copyOf(carFlags, n);
+        }
+    }
+
+    private void ensureObstacleCapacity(int n) {
+        if (obstacleIds.length < n) {
+            int size = Math.max(n, obstacleIds.length * 2);
+            obstacleIds = Arrays.copyOf(obstacleIds, size);
+            obstacleX = Arrays.copyOf(obstacleX, size);
+            obstacleY = Arrays.copyOf(obstacleY, size);
+            obstacleLifetime = Arrays.copyOf(obstacleLifetime, size);
+            obstacleRgb = Arrays.copyOf(obstacleRgb, size);
+            obstacleShape = Arrays.copyOf(obstacleShape, size);
+        }
+    }
+
+    /**
+     * Copies another frame into this one.
+     * @param other the frame to copy
+     */
+    public void copyFrom(RaceFrame other) {
+        tick = other.tick;
+        ensureCarCapacity(other.carCount);
+        carCount = other.carCount;
+        System.arraycopy(other.carIds, 0, carIds, 0, carCount);
+        System.arraycopy(other.carX, 0, carX, 0, carCount);
+        System.arraycopy(other.carY, 0, carY, 0, carCount);
+        System.arraycopy(other.carAngle, 0, carAngle, 0, carCount);
+        System.arraycopy(other.carSpeed, 0, carSpeed, 0, carCount);
+        System.arraycopy(other.carOffset, 0, carOffset, 0, carCount);
+        System.arraycopy(other.carLap, 0, carLap, 0, carCount);
+        System.arraycopy(other.carFlags, 0, carFlags, 0, carCount);
+        ensureObstacleCapacity(other.obstacleCount);
+        obstacleCount = other.obstacleCount;
+        System.arraycopy(other.obstacleIds, 0, obstacleIds, 0, obstacleCount);
+        System.arraycopy(other.obstacleX, 0, obstacleX, 0, obstacleCount);
+        System.arraycopy(other.obstacleY, 0, obstacleY, 0, obstacleCount);
+        System.arraycopy(other.obstacleLifetime, 0, obstacleLifetime, 0, obstacleCount);
+        System.arraycopy(other.obstacleRgb, 0, obstacleRgb, 0, obstacleCount);
+        System.arraycopy(other.obstacleShape, 0, obstacleShape, 0, obstacleCount);
+        stopNames = other.stopNames;
+        stopAngles = other.stopAngles;
+        stopsSource = other.stopsSource;
+    }
+
+    // --- Encoding ---
+
+    /**
+     * Writes this frame in full.
+     * @param out destination buffer
+     */
+    public void writeKeyframe(ByteBuffer out) {
+        out.putLong(tick);
+        VarInt.putUnsigned(out, stopNames.length);
+        for (int i = 0; i < stopNames.length; i++) {
+            byte[] name = stopNames[i].getBytes(StandardCharsets.UTF_8);
+            VarInt.putUnsigned(out, name.length);
+            out.put(name);
+            out.putFloat(stopAngles[i]);
+        }
+        VarInt.putUnsigned(out, carCount);
+        for (int i = 0; i < carCount; i++) {
+            VarInt.putSigned(out, carIds[i]);
+            VarInt.putSigned(out, carX[i]);
+            VarInt.putSigned(out, carY[i]);
+            VarInt.putSigned(out, carAngle[i]);
+            VarInt.putSigned(out, carSpeed[i]);
+            VarInt.putSigned(out, carOffset[i]);
+            VarInt.putUnsigned(out, carLap[i]);
+            VarInt.putUnsigned(out, carFlags[i]);
+        }
+        VarInt.putUnsigned(out, obstacleCount);
+        for (int i = 0; i < obstacleCount; i++) {
+            writeObstacle(out, i);
+        }
+    }
+
+    /**
+     * Writes the difference between a previous frame and this one.
+     * Both frames must hold the same cars in the same order.
+     * @param previous the frame the reader already has
+     * @param out      destination buffer
+     */
+    public void writeDelta(RaceFrame previous, ByteBuffer out) {
+        VarInt.putUnsigned(out, (int) (tick - previous.tick));
+        for (int i = 0; i < carCount; i++) {
+            VarInt.putSigned(out, carX[i] - previous.carX[i]);
+            VarInt.putSigned(out, carY[i] - previous.carY[i]);
+            VarInt.putSigned(out, carAngle[i] - previous.carAngle[i]);
+            VarInt.putSigned(out, carSpeed[i] - previous.carSpeed[i]);
+            VarInt.putSigned(out, carOffset[i] - previous.carOffset[i]);
+            // Lap and status rarely change; pack both into one small value.
+            VarInt.putUnsigned(out, ((carLap[i] - previous.carLap[i]) << 2) | carFlags[i]);
+        }
+
+        // Obstacles are kept in ID order, so one merge walk finds removals and spawns.
+        // Survivors are expected to lose exactly one lifetime unit per tick; any other
+        // change is sent as a removal followed by a spawn.
+        int elapsed = (int) (tick - previous.tick);
+        ensureScratch(previous.obstacleCount + obstacleCount);
+        int removed = 0;
+        int spawned = 0;
+        int p = 0;
+        int c = 0;
+        while (p < previous.obstacleCount || c < obstacleCount) {
+            if (c >= obstacleCount || (p < previous.obstacleCount && previous.obstacleIds[p] < obstacleIds[c])) {
+                scratchRemoved[removed++] = previous.obstacleIds[p++];
+            } else if (p >= previous.obstacleCount || obstacleIds[c] < previous.obstacleIds[p]) {
+                scratchSpawned[spawned++] = c++;
+            } else {
+                if (obstacleLifetime[c] != previous.obstacleLifetime[p] - elapsed) {
+                    scratchRemoved[removed++] = previous.obstacleIds[p];
+                    scratchSpawned[spawned++] = c;
+                }
+                p++;
+                c++;
+            }
+        }
+        VarInt.putUnsigned(out, removed);
+        for (int k = 0; k < removed; k++) {
+            VarInt.putUnsigned(out, scratchRemoved[k]);
+        }
+        VarInt.putUnsigned(out, spawned);
+        for (int k = 0; k < spawned; k++) {
+            writeObstacle(out, scratchSpawned[k]);
+        }
+    }
+
+    private void ensureScratch(int n) {
+        if (scratchRemoved.length < n) {
+            scratchRemoved = new int[n];
+            scratchSpawned = new int[n];
+        }
+    }
+
+    private void writeObstacle(ByteBuffer out, int i) {
+        VarInt.putUnsigned(out, obstacleIds[i]);
+        VarInt.putSigned(out, obstacleX[i]);
+        VarInt.putSigned(out, obstacleY[i]);
+        VarInt.putUnsigned(out, obstacleLifetime[i]);
+        out.put((byte) (obstacleRgb[i] >> 16));
+        out.put((byte) (obstacleRgb[i] >> 8));
+        out.put((byte) obstacleRgb[i]);
+        out.put((byte) obstacleShape[i]);
+    }
+
+    private void readObstacle(ByteBuffer in, int i) {
+        obstacleIds[i] = VarInt.getUnsigned(in);
+        obstacleX[i] = VarInt.getSigned(in);
+        obstacleY[i] = VarInt.getSigned(in);
+        obstacleLifetime[i] = VarInt.getUnsigned(in);
+        obstacleRgb[i] = ((in.get() & 0xFF) << 16) | ((in.get() & 0xFF) << 8) | (in.get() & 0xFF);
+        obstacleShape[i] = in.get();
+    }
+
+    /**
+     * Replaces this frame with a keyframe read from the buffer.
+     * @param in source buffer positioned at a keyframe
+     */
+    public void readKeyframe(ByteBuffer in) {
+        tick = in.getLong();
+        int stops = VarInt.getUnsigned(in);
+        stopNames = new String[stops];
+        stopAngles = new float[stops];
+        for (int i = 0; i < stops; i++) {
+            byte[] name = new byte[VarInt.getUnsigned(in)];
+            in.get(name);
+            stopNames[i] = new String(name, StandardCharsets.UTF_8);
+            stopAngles[i] = in.getFloat();
+        }
+        stopsSource = null;
+
+        int cars = VarInt.getUnsigned(in);
+        ensureCarCapacity(cars);
+        carCount = cars;
+        for (int i = 0; i < carCount; i++) {
+            carIds[i] = VarInt.getSigned(in);
+            carX[i] = VarInt.getSigned(in);
+            carY[i] = VarInt.getSigned(in);
+            carAngle[i] = VarInt.getSigned(in);
+            carSpeed[i] = VarInt.getSigned(in);
+            carOffset[i] = VarInt.getSigned(in);
+            carLap[i] = VarInt.getUnsigned(in);
+            carFlags[i] = VarInt.getUnsigned(in);
+        }
+        int obstacles = VarInt.getUnsigned(in);
+        ensureObstacleCapacity(obstacles);
+        obstacleCount = obstacles;
+        for (int i = 0; i < obstacleCount; i++) {
+            readObstacle(in, i);
+        }
+    }
+
+    /**
+     * Advances this frame by applying a delta read from the buffer.
+     * @param in source buffer positioned at a delta written against this frame
+     */
+    public void applyDelta(ByteBuffer in) {
+        int elapsed = VarInt.getUnsigned(in);
+        tick += elapsed;
+        for (int i = 0; i < carCount; i++) {
+            carX[i] += VarInt.getSigned(in);
+            carY[i] += VarInt.getSigned(in);
+            carAngle[i] += VarInt.getSigned(in);
+            carSpeed[i] += VarInt.getSigned(in);
+            carOffset[i] += VarInt.getSigned(in);
+            int lapAndFlags = VarInt.getUnsigned(in);
+            carLap[i] += lapAndFlags >> 2;
+            carFlags[i] = lapAndFlags & 3;
+        }
+
+        // Remove, age the survivors, then merge the spawns back in ID order.
+        int removed = VarInt.getUnsigned(in);
+        ensureScratch(removed);
+        for (int k = 0; k < removed; k++) {
+            scratchRemoved[k] = VarInt.getUnsigned(in);
+        }
+        int write = 0;
+        int r = 0;
+        for (int i = 0; i < obstacleCount; i++) {
+            if (r < removed && obstacleIds[i] == scratchRemoved[r]) {
+                r++;
+                continue;
+            }
+            moveObstacle(i, write);
+            obstacleLifetime[write] -= elapsed;
+            write++;
+        }
+        obstacleCount = write;
+
+        int spawns = VarInt.getUnsigned(in);
+        ensureObstacleCapacity(obstacleCount + spawns);
+        for (int k = 0; k < spawns; k++) {
+            int slot = obstacleCount;
+            readObstacle(in, slot);
+            // Insertion keeps the list sorted; spawns are almost always the newest IDs.
+            while (slot > 0 && obstacleIds[slot - 1] > obstacleIds[slot]) {
+                swapObstacles(slot - 1, slot);
+                slot--;
+            }
+            obstacleCount++;
+        }
+    }
+
+    private void moveObstacle(int from, int to) {
+        if (from != to) {
+            obstacleIds[to] = obstacleIds[from];
+            obstacleX[to] = obstacleX[from];
+            obstacleY[to] = obstacleY[from];
+            obstacleLifetime[to] = obstacleLifetime[from];
+            obstacleRgb[to] = obstacleRgb[from];
+            obstacleShape[to] = obstacleShape[from];
+        }
+    }
+
+    private void swapObstacles(int i, int j) {
+        int[][] columns = {obstacleIds, obstacleX, obstacleY, obstacleLifetime, obstacleRgb, obstacleShape};
+        for (int[] column : columns) {
+            int t = column[i];
+            column[i] = column[j];
+            column[j] = t;
+        }
+    }
+
+    // --- Accessors used for drawing ---
+
+    /** @return tick this frame was captured at */
+    public long getTick() { return tick; }
+
+    /** @return number of cars in the frame */
+    public int getCarCount() { return carCount; }
+
+    /** @param i car index @return car ID */
+    public int getCarId(int i) { return carIds[i]; }
+
+    /** @param i car index @return X coordinate */
+    public float getCarX(int i) { return carX[i] / POSITION_SCALE; }
+
+    /** @param i car index @return Y coordinate */
+    public float getCarY(int i) { return carY[i] / POSITION_SCALE; }
+
+    /** @param i car index @return heading in radians */
+    public float getCarAngle(int i) { return carAngle[i] / ANGLE_SCALE; }
+
+    /** @param i car index @return speed */
+    public float getCarSpeed(int i) { return carSpeed[i] / SPEED_SCALE; }
+
+    /** @param i car index @return lateral offset */
+    public float getCarLateralOffset(int i) { return carOffset[i] / POSITION_SCALE; }
+
+    /** @param i car index @return current lap */
+    public int getCarLap(int i) { return carLap[i]; }
+
+    /** @param i car index @return true if the car has finished */
+    public boolean isCarFinished(int i) { return (carFlags[i] & FLAG_FINISHED) != 0; }
+
+    /** @param i car index @return true if the car is in the pits */
+    public boolean isCarPitting(int i) { return (carFlags[i] & FLAG_PITTING) != 0; }
+
+    /**
+     * Overrides the drawn position of a car, e.g. with a locally predicted pose.
+     * @param i             car index
+     * @param x             X coordinate
+     * @param y             Y coordinate
+     * @param lateralOffset lateral offset the position was computed from
+     */
+    public void setCarPosition(int i, float x, float y, float lateralOffset) {
+        carX[i] = Math.round(x * POSITION_SCALE);
+        carY[i] = Math.round(y * POSITION_SCALE);
+        carOffset[i] = Math.round(lateralOffset * POSITION_SCALE);
+    }
+
+    /**
+     * Finds a car by ID.
+     * @param id car ID
+     * @return the car index, or -1 if the car is not in the frame
+     */
+    public int indexOfCar(int id) {
+        for (int i = 0; i < carCount; i++) {
+            if (carIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** @return number of obstacles in the frame */
+    public int getObstacleCount() { return obstacleCount; }
+
+    /** @param i obstacle index @return obstacle ID */
+    public int getObstacleId(int i) { return obstacleIds[i]; }
+
+    /** @param i obstacle index @return X coordinate */
+    public float getObstacleX(int i) { return obstacleX[i] / POSITION_SCALE; }
+
+    /** @param i obstacle index @return Y coordinate */
+    public float getObstacleY(int i) { return obstacleY[i] / POSITION_SCALE; }
+
+    /** @param i obstacle index @return remaining lifetime */
+    public int getObstacleLifetime(int i) { return obstacleLifetime[i]; }
+
+    /** @param i obstacle index @return color without alpha */
+    public Color getObstacleColor(int i) { return new Color(obstacleRgb[i]); }
+
+    /** @param i obstacle index @return shape name */
+    public String getObstacleShape(int i) { return SHAPES[obstacleShape[i]]; }
+
+    /** @return number of checkpoint lines */
+    public int getStopCount() { return stopNames.length; }
+
+    /** @param i checkpoint index @return checkpoint name */
+    public String getStopName(int i) { return stopNames[i]; }
+
+    /** @param i checkpoint index @return checkpoint angle in radians */
+    public float getStopAngle(int i) { return stopAngles[i]; }
+}
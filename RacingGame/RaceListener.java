@@ -0,0 +1,27 @@
+/**
+ * Receives notifications from a {@link Race} while it is running.
+ * Listeners are called on the thread that advances the simulation, at the start
+ * and end of every tick, so implementations should keep their per-tick work small.
+ */
+public interface RaceListener {
+    /**
+     * Called at the start of every tick, before obstacles and cars are updated.
+     * Listeners that feed input into the race apply it here.
+     * @param race the race about to be advanced
+     */
+    default void beforeTick(Race race) {
+    }
+
+    /**
+     * Called after every simulation tick.
+     * @param race the race that was just advanced
+     */
+    void onTick(Race race);
+
+    /**
+     * Called once when every car has finished the race.
+     * @param race the finished race
+     */
+    default void onRaceFinished(Race race) {
+    }
+}
@@ -23,8 +23,6 @@ public class RaceSetup {
      * @return a fully configured {@link Race} instance ready to begin
      */
     public static Race initializeRace() {
-        Race race = new Race();
-
         // Prompt user for number of laps.
         String lapsInput = JOptionPane.showInputDialog(null,
                 "Enter the number of laps:",
@@ -35,6 +33,36 @@ public class RaceSetup {
         } catch (NumberFormatException e) {
             // fallback to 2 if invalid
         }
+        return createRace(laps);
+    }
+
+    /**
+     * Builds the standard four-car race without prompting the user.
+     * Used by the GUI after the lap prompt and by headless tools such as servers.
+     * @param laps number of laps
+     * @return a fully configured {@link Race} instance ready to begin
+     */
+    public static Race createRace(int laps) {
+        Engine engine1 = new Engine(200, 10);
+        List<Wheel> wheels1 = Arrays.asList(
+                new Wheel(1.0f, 1.0f),
+                new Wheel(1.0f, 1.0f),
+                new Wheel(1.0f, 1.0f),
+                new Wheel(1.0f, 1.0f)
+        );
+        return createRace(laps, engine1, wheels1);
+    }
+
+    /**
+     * Builds the standard four-car race with a custom setup for car #1.
+     * Used by {@link SetupTuner} to try out engine and wheel setups against the usual field.
+     * @param laps    number of laps
+     * @param engine1 engine for car #1
+     * @param wheels1 wheels for car #1; they wear, so each race needs its own
+     * @return a fully configured {@link Race} instance ready to begin
+     */
+    public static Race createRace(int laps, Engine engine1, List<Wheel> wheels1) {
+        Race race = new Race();
         race.setTotalLaps(laps);
 
         // --- Car #1 route: A->B->C->D->A(2π)
@@ -43,12 +71,12 @@ public class RaceSetup {
         Location C  = new Location("C", 150, 250, (float)Math.PI);
         Location D  = new Location("D", 500, 70,  (float)(3 * Math.PI / 2));
         Location A2 = new Location("A", 850, 250, (float)(2 * Math.PI));
-        Route route1 = new Route(Arrays.asList(A0, B, C, D, A2));
+        Route route1 = Route.of(Arrays.asList(A0, B, C, D, A2));
 
         // --- Car #2 route: B->C->D->A(2π)->B(2π+π/2)
         Location Bstart = new Location("B", 500, 430, (float)(Math.PI / 2));
         Location Bend   = new Location("B", 500, 430, (float)(2 * Math.PI + Math.PI / 2));
-        Route route2 = new Route(Arrays.asList(
+        Route route2 = Route.of(Arrays.asList(
                 Bstart,
                 new Location("C", 150, 250, (float)Math.PI),
                 new Location("D", 500, 70,  (float)(3 * Math.PI / 2)),
@@ -59,7 +87,7 @@ public class RaceSetup {
         // --- Car #3 route: C->D->A(2π)->B(2π+π/2)->C(3π)
         Location Cstart = new Location("C", 150, 250, (float)Math.PI);
         Location Cend   = new Location("C", 150, 250, (float)(3 * Math.PI));
-        Route route3 = new Route(Arrays.asList(
+        Route route3 = Route.of(Arrays.asList(
                 Cstart,
                 new Location("D", 500, 70,  (float)(3 * Math.PI / 2)),
                 new Location("A", 850, 250, (float)(2 * Math.PI)),
@@ -70,7 +98,7 @@ public class RaceSetup {
         // --- Car #4 route: D->A(2π)->B(2π+π/2)->C(3π)->D(4π-π/2)
         Location Dstart = new Location("D", 500, 70, (float)(3 * Math.PI / 2));
         Location Dend   = new Location("D", 500, 70, (float)(4 * Math.PI - Math.PI / 2));
-        Route route4 = new Route(Arrays.asList(
+        Route route4 = Route.of(Arrays.asList(
                 Dstart,
                 new Location("A", 850, 250, (float)(2 * Math.PI)),
                 new Location("B", 500, 430, (float)(2 * Math.PI + Math.PI / 2)),
@@ -80,18 +108,11 @@ public class RaceSetup {
 
 
         // Create engines.
-        Engine engine1 = new Engine(200, 10);
         Engine engine2 = new Engine(220, 12);
         Engine engine3 = new Engine(210, 11);
         Engine engine4 = new Engine(230, 13);
 
         // Create wheels (all identical).
-        List<Wheel> wheels1 = Arrays.asList(
-                new Wheel(1.0f, 1.0f),
-                new Wheel(1.0f, 1.0f),
-                new Wheel(1.0f, 1.0f),
-                new Wheel(1.0f, 1.0f)
-        );
         List<Wheel> wheels2 = Arrays.asList(
                 new Wheel(1.0f, 1.0f),
                 new Wheel(1.0f, 1.0f),
@@ -123,6 +144,15 @@ public class RaceSetup {
         car3.setTotalLaps(laps);
         car4.setTotalLaps(laps);
 
+        // AI drivers look ahead and steer around obstacles.
+        car1.setDriverStrategy(new ObstacleAvoidingDriver());
+        car2.setDriverStrategy(new ObstacleAvoidingDriver());
+        car3.setDriverStrategy(new ObstacleAvoidingDriver());
+        car4.setDriverStrategy(new ObstacleAvoidingDriver());
+
+        // The local player drives car #1.
+        car1.setHumanControlled(true);
+
         // Add cars to the race.
         race.addCar(car1);
         race.addCar(car2);
@@ -0,0 +1,150 @@
+/**
+ * The RaceSnapshot saves and restores the complete state of a {@link Race} in a
+ * compact binary form.
+ *
+ * Everything the simulation depends on is written with fixed-width fields: the
+ * tick counter, the state of the race's {@link Randomizer}, the next obstacle ID,
+ * every car's position, timing, lap, route, tyre state and pit plan, and every
+ * obstacle on the track. A race restored from a snapshot therefore continues
+ * exactly as the original would have.
+ *
+ * Snapshots are restored into a race built with the same cars and routes, such as
+ * the one {@link RaceSetup#createRace(int)} produces.
+ *
+ * Layout: magic, version, payload length, then the payload written by
+ * {@link Race#writeState(ByteBuffer)}.
+ */
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class RaceSnapshot {
+    public static final int MAGIC = 0x52535631; // "RSV1"
+    public static final int VERSION = 5;
+    static final int HEADER_SIZE = 12;
+
+    private RaceSnapshot() {
+    }
+
+    /**
+     * Saves the race state into a new buffer.
+     * @param race the race to save
+     * @return a buffer positioned at the start of the snapshot
+     */
+    public static ByteBuffer save(Race race) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 256 * (race.getCars().size() + race.getObstacles().size() + 1));
+        while (true) {
+            try {
+                save(race, buf);
+                return buf.flip();
+            } catch (BufferOverflowException e) {
+                buf = ByteBuffer.allocate(buf.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Saves the race state into an existing buffer at its current position.
+     * @param race the race to save
+     * @param out  destination buffer
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static void save(Race race, ByteBuffer out) {
+        int start = out.position();
+        out.putInt(MAGIC).putInt(VERSION).putInt(0);
+        race.writeState(out);
+        out.putInt(start + 8, out.position() - start - HEADER_SIZE);
+    }
+
+    /**
+     * Restores a saved state into a race with the same cars and routes.
+     * @param race the race to overwrite
+     * @param in   buffer positioned at the start of a snapshot
+     * @throws IllegalArgumentException if the snapshot is damaged or does not fit the race
+     */
+    public static void restore(Race race, ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a race snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new IllegalArgumentException("Truncated snapshot");
+            }
+            ByteBuffer payload = in.slice();
+            payload.limit(length);
+            race.readState(payload);
+            in.position(in.position() + length);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated snapshot", e);
+        }
+    }
+
+    /**
+     * Saves the race state to a file.
+     * @param race the race to save
+     * @param path file to write; an existing file is overwritten
+     * @throws IOException if the file cannot be written
+     */
+    public static void saveToFile(Race race, Path path) throws IOException {
+        writeFile(save(race), path);
+    }
+
+    /**
+     * Writes a snapshot taken with {@link #save(Race)} to a file, so that the state
+     * can be captured on the simulation thread and written out on another.
+     * @param buf  the snapshot, from its position to its limit
+     * @param path file to write; an existing file is overwritten
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeFile(ByteBuffer buf, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Restores the race state from a file written by {@link #saveToFile(Race, Path)}.
+     * @param race the race to overwrite
+     * @param path file to read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a snapshot for this race
+     */
+    public static void loadFromFile(Race race, Path path) throws IOException {
+        restore(race, readFile(path));
+    }
+
+    /**
+     * Reads a snapshot file into a buffer for {@link #restore(Race, ByteBuffer)},
+     * so that the file can be read on one thread and restored on the simulation thread.
+     * @param path file to read
+     * @return the file's contents
+     * @throws IOException if the file cannot be read
+     */
+    public static ByteBuffer readFile(Path path) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot too large: " + path);
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // keep reading
+            }
+        }
+        return buf.flip();
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * The original AI behaviour: a small random lateral nudge every tick,
+ * with no regard for what lies ahead.
+ */
+public class RandomDriver implements DriverStrategy {
+    @Override
+    public float steer(Car car, ObstacleIndex obstacles, Randomizer random) {
+        return random.generateRandomLateralDelta();
+    }
+}
@@ -1,8 +1,11 @@
 /**
- * The Randomizer class provides utility methods to generate random
+ * The Randomizer class provides methods to generate random
  * values used during the car racing game.
  * It supports generation of random speeds, lateral movement for AI cars,
  * and fully configured random obstacles to be placed on or near the track.
+ * Each race owns its own Randomizer, and its whole state is a single long
+ * (a SplitMix64 generator), so a race can be saved, restored and replayed
+ * with exactly the same random events.
  *
  * Responsibilities:
  *   Provide random speed values for car behavior
@@ -12,45 +15,119 @@
  *   Developed by: Abraham Arocha, Lucas Martins
  */
 import java.awt.Color;
-import java.util.Random;
 
 public class Randomizer {
-    private static final Random rand = new Random();
+    private static long seedUniquifier = 0x5DEECE66DL;
+
+    private long state;
+
+    /**
+     * Creates a randomizer with a seed that differs on every call.
+     */
+    public Randomizer() {
+        this(nextSeed());
+    }
+
+    /**
+     * Creates a randomizer with the given seed.
+     * @param seed initial state
+     */
+    public Randomizer(long seed) {
+        this.state = seed;
+    }
+
+    private static synchronized long nextSeed() {
+        seedUniquifier *= 1181783497276652981L;
+        return seedUniquifier ^ System.nanoTime();
+    }
+
+    /**
+     * Returns the complete generator state.
+     * @return state to pass to {@link #setState(long)}
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state returned by {@link #getState()}.
+     * @param state generator state
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Returns the next 64 random bits.
+     * @return random long
+     */
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a uniform double in [0, 1).
+     * @return random double
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a uniform float in [0, 1).
+     * @return random float
+     */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Returns a uniform int in [0, bound).
+     * @param bound exclusive upper bound, must be positive
+     * @return random int
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
 
     /**
      * Generates a random speed between 50% and 100% of the car's max speed.
      * @param maxSpeed the car's maximum speed
      * @return a random float speed within the valid range
      */
-    public static float generateRandomSpeed(float maxSpeed) {
+    public float generateRandomSpeed(float maxSpeed) {
         float minSpeed = maxSpeed / 2;
-        return minSpeed + rand.nextFloat() * (maxSpeed - minSpeed);
+        return minSpeed + nextFloat() * (maxSpeed - minSpeed);
     }
 
     /**
      * Produces a small random lateral movement (between -2 and +2) for AI simulation.
      * @return a float representing lateral drift delta
      */
-    public static float generateRandomLateralDelta() {
-        return (float) ((Math.random() * 4) - 2);
+    public float generateRandomLateralDelta() {
+        return (float) ((nextDouble() * 4) - 2);
     }
 
     /**
      * Generates a random obstacle on or near the race track with varied properties.
+     * @param id ID for the obstacle, handed out by its race
      * @return a configured Obstacle instance
      */
-    public static Obstacle generateRandomObstacle() {
+    public Obstacle generateRandomObstacle(int id) {
         float centerX = RaceDisplay.TRACK_CENTER_X;
         float centerY = RaceDisplay.TRACK_CENTER_Y;
         float a = RaceDisplay.TRACK_A;
         float b = RaceDisplay.TRACK_B;
 
         // Random angle on the ellipse.
-        float angle = (float) (Math.random() * 2 * Math.PI);
+        float angle = (float) (nextDouble() * 2 * Math.PI);
         float baseX = centerX + a * (float)Math.cos(angle);
         float baseY = centerY + b * (float)Math.sin(angle);
 
-        // Tangent & right normal for lateral offset (±30).
+        // Tangent & right normal for lateral offset (+/-30).
         double tx = -a * Math.sin(angle);
         double ty = b * Math.cos(angle);
         double norm = Math.sqrt(tx*tx + ty*ty);
@@ -62,22 +139,22 @@ public class Randomizer {
         double rightNormalX = unitTy;
         double rightNormalY = -unitTx;
 
-        float lateral = (float) ((Math.random() * 60) - 30);
+        float lateral = (float) ((nextDouble() * 60) - 30);
         float obsX = baseX + lateral * (float)rightNormalX;
         float obsY = baseY + lateral * (float)rightNormalY;
 
         // Obstacle type, shape, color.
         String[] types = {"Oil Spill", "Pothole", "Debris", "Boost"};
-        String type = types[rand.nextInt(types.length)];
-        float impact = 1 + rand.nextFloat() * 3;
-        int lifetime = 30 + rand.nextInt(40);
+        String type = types[nextInt(types.length)];
+        float impact = 1 + nextFloat() * 3;
+        int lifetime = 30 + nextInt(40);
 
         String shapeType;
         if (type.equalsIgnoreCase("boost")) {
             shapeType = "circle";
         } else {
             String[] shapes = {"circle", "square", "triangle"};
-            shapeType = shapes[rand.nextInt(shapes.length)];
+            shapeType = shapes[nextInt(shapes.length)];
         }
 
         Color color;
@@ -98,6 +175,6 @@ public class Randomizer {
                 color = Color.MAGENTA;
                 break;
         }
-        return new Obstacle(type, impact, obsX, obsY, lifetime, color, shapeType);
+        return new Obstacle(id, type, impact, obsX, obsY, lifetime, color, shapeType);
     }
 }
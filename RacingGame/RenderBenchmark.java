@@ -0,0 +1,148 @@
+/**
+ * Measures how long the race view takes to draw large fields of cars and
+ * obstacles, in full detail and with the {@link LodRenderer}.
+ *
+ * Each field is spread round the track at random and drawn offscreen, over the
+ * same background the race view caches, for a number of frames after a warm-up;
+ * the best time per frame over several rounds is reported. Runs headless.
+ *
+ * Usage: java RenderBenchmark [frames] [cars=obstacles...]
+ */
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+public class RenderBenchmark {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 520;
+    private static final int ROUNDS = 5;
+
+    private static final String[] SHAPES = {"circle", "square", "triangle"};
+    private static final Color[] OBSTACLE_COLORS = {Color.BLACK, Color.DARK_GRAY, Color.GRAY};
+
+    /**
+     * One field to draw, as parallel arrays.
+     */
+    private static final class Field {
+        final float[] carX;
+        final float[] carY;
+        final float[] carAngle;
+        final float[] obsX;
+        final float[] obsY;
+        final int[] obsLifetime;
+
+        Field(int cars, int obstacles, long seed) {
+            Randomizer random = new Randomizer(seed);
+            carX = new float[cars];
+            carY = new float[cars];
+            carAngle = new float[cars];
+            for (int i = 0; i < cars; i++) {
+                float theta = (float) (random.nextFloat() * 2 * Math.PI);
+                float lane = (random.nextFloat() * 2f - 1f) * RaceDisplay.TRACK_HALF_WIDTH;
+                carX[i] = RaceDisplay.TRACK_CENTER_X + (RaceDisplay.TRACK_A + lane) * (float) Math.cos(theta);
+                carY[i] = RaceDisplay.TRACK_CENTER_Y + (RaceDisplay.TRACK_B + lane) * (float) Math.sin(theta);
+                carAngle[i] = theta + (float) Math.PI;
+            }
+            obsX = new float[obstacles];
+            obsY = new float[obstacles];
+            obsLifetime = new int[obstacles];
+            for (int i = 0; i < obstacles; i++) {
+                float theta = (float) (random.nextFloat() * 2 * Math.PI);
+                obsX[i] = RaceDisplay.TRACK_CENTER_X + RaceDisplay.TRACK_A * (float) Math.cos(theta);
+                obsY[i] = RaceDisplay.TRACK_CENTER_Y + RaceDisplay.TRACK_B * (float) Math.sin(theta);
+                obsLifetime[i] = 1 + random.nextInt(100);
+            }
+        }
+    }
+
+    /**
+     * Draws the field the way the race view does below the detail limit.
+     */
+    private static void drawDetailed(Graphics2D g2, BufferedImage background, Field f) {
+        g2.drawImage(background, 0, 0, null);
+        for (int i = 0; i < f.obsX.length; i++) {
+            RaceDisplay.drawObstacle(g2, OBSTACLE_COLORS[i % 3], SHAPES[i % 3], f.obsX[i], f.obsY[i], f.obsLifetime[i]);
+        }
+        for (int i = 0; i < f.carX.length; i++) {
+            RaceDisplay.drawCar(g2, i % 4 + 1, f.carX[i] - RaceDisplay.CAR_WIDTH / 2f,
+                    f.carY[i] - RaceDisplay.CAR_HEIGHT / 2f, f.carAngle[i]);
+        }
+    }
+
+    /**
+     * Draws the field the way the race view does above the detail limit.
+     */
+    private static void drawSprites(Graphics2D g2, LodRenderer crowd, Field f) {
+        crowd.begin();
+        for (int i = 0; i < f.obsX.length; i++) {
+            crowd.addObstacle(f.obsX[i], f.obsY[i],
+                    (RaceDisplay.obstacleAlpha(f.obsLifetime[i]) << 24) | (OBSTACLE_COLORS[i % 3].getRGB() & 0xFFFFFF));
+        }
+        for (int i = 0; i < f.carX.length; i++) {
+            crowd.addCar(f.carX[i], f.carY[i], f.carAngle[i], RaceDisplay.getColorForCar(i % 4 + 1).getRGB());
+        }
+        crowd.flush(g2);
+    }
+
+    /**
+     * Returns the best milliseconds per frame over several rounds.
+     */
+    private static double measure(boolean sprites, BufferedImage background, int cars, int frames) {
+        BufferedImage target = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        LodRenderer crowd = new LodRenderer();
+        crowd.setBackdrop(background);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            Field f = new Field(cars, cars, round);
+            Graphics2D g2 = target.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                if (sprites) {
+                    drawSprites(g2, crowd, f);
+                } else {
+                    drawDetailed(g2, background, f);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            g2.dispose();
+            // Round 0 is the warm-up.
+            if (round > 0) {
+                best = Math.min(best, elapsed / 1e6 / frames);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Benchmarks both ways of drawing.
+     * @param args optional frame count and field sizes
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] sizes = {100, 1_000, 10_000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        BufferedImage background = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = background.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        RaceDisplay.drawGrass(g2, WIDTH, HEIGHT);
+        RaceDisplay.drawTrack(g2, HEIGHT);
+        g2.dispose();
+
+        System.out.printf("%16s %12s %12s %8s%n", "cars+obstacles", "detail ms", "sprites ms", "sprite fps");
+        for (int cars : sizes) {
+            double detail = measure(false, background, cars, frames);
+            double sprites = measure(true, background, cars, frames);
+            System.out.printf("%7d+%-8d %12.2f %12.2f %8.0f%n", cars, cars, detail, sprites, 1000 / sprites);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The ReplayFile reads a recording written by {@link ReplayRecorder} and decodes
+ * any tick on demand.
+ *
+ * Seeking loads only the block of records between the nearest keyframe at or
+ * before the requested tick and the next keyframe, decodes the keyframe and applies
+ * deltas up to the requested tick. Playing forward continues from the last decoded
+ * tick, so sequential playback decodes each record once.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ReplayFile implements AutoCloseable {
+    private final FileChannel channel;
+    private final int keyframeInterval;
+    private final long frameCount;
+    private final long[] keyframeOffsets;
+    private final long indexOffset;
+
+    private ByteBuffer block = ByteBuffer.allocate(0);
+    private int loadedBlock = -1;
+    private final RaceFrame decoded = new RaceFrame();
+    private long decodedFrame = -1;
+
+    /**
+     * Opens a replay file.
+     * @param path the recording
+     * @throws IOException if the file cannot be read or is not a complete replay
+     */
+    public ReplayFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, ReplayRecorder.HEADER_SIZE);
+            ByteBuffer trailer = read(size - ReplayRecorder.TRAILER_SIZE, ReplayRecorder.TRAILER_SIZE);
+            if (header.getInt(0) != ReplayRecorder.MAGIC || trailer.getInt(8) != ReplayRecorder.MAGIC) {
+                throw new IOException("Not a complete replay file: " + path);
+            }
+            if (header.getInt(4) != ReplayRecorder.VERSION) {
+                throw new IOException("Unsupported replay version " + header.getInt(4));
+            }
+            keyframeInterval = header.getInt(8);
+            indexOffset = trailer.getLong(0);
+
+            ByteBuffer index = read(indexOffset, (int) (size - ReplayRecorder.TRAILER_SIZE - indexOffset));
+            frameCount = index.getLong();
+            keyframeOffsets = new long[index.getInt()];
+            for (int i = 0; i < keyframeOffsets.length; i++) {
+                keyframeOffsets[i] = index.getLong();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of replay file");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** @return number of recorded ticks */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** @return number of ticks between keyframes */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Decodes the given recorded tick into a frame.
+     * @param frame index of the recorded tick, from 0 to {@link #getFrameCount()} - 1
+     * @param out   frame to fill
+     */
+    public void seek(long frame, RaceFrame out) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        int blockIndex = (int) (frame / keyframeInterval);
+        if (blockIndex != loadedBlock) {
+            loadBlock(blockIndex);
+        }
+        if (decodedFrame < 0 || decodedFrame > frame) {
+            block.position(0);
+            readRecord(ReplayRecorder.KEYFRAME);
+            decoded.readKeyframe(block);
+            decodedFrame = (long) blockIndex * keyframeInterval;
+        }
+        while (decodedFrame < frame) {
+            readRecord(ReplayRecorder.DELTA);
+            decoded.applyDelta(block);
+            decodedFrame++;
+        }
+        out.copyFrom(decoded);
+    }
+
+    private void readRecord(byte expectedType) {
+        byte type = block.get();
+        if (type != expectedType) {
+            throw new IllegalStateException("Corrupt replay: expected record '" + (char) expectedType
+                    + "' but found '" + (char) type + "'");
+        }
+        VarInt.getUnsigned(block);
+    }
+
+    private void loadBlock(int blockIndex) {
+        long start = keyframeOffsets[blockIndex];
+        long end = blockIndex + 1 < keyframeOffsets.length ? keyframeOffsets[blockIndex + 1] : indexOffset;
+        int length = (int) (end - start);
+        if (block.capacity() < length) {
+            block = ByteBuffer.allocate(length);
+        }
+        block.clear().limit(length);
+        try {
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    throw new IOException("Unexpected end of replay file");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read replay", e);
+        }
+        block.flip();
+        loadedBlock = blockIndex;
+        decodedFrame = -1;
+    }
+
+    /**
+     * Closes the underlying file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
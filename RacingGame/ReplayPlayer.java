@@ -0,0 +1,134 @@
+/**
+ * The ReplayPlayer plays back a {@link ReplayFile} in real time.
+ * It supports play, pause, playback speeds from 0.25x to 64x and seeking to any tick,
+ * and tells its listener whenever the displayed frame changes. A recording with no
+ * ticks, such as one from a game quit before racing, shows nothing and does not play.
+ * All methods must be called on the Event Dispatch Thread.
+ */
+
+import javax.swing.Timer;
+import java.io.IOException;
+
+public class ReplayPlayer {
+    /** Supported playback speeds. */
+    public static final double[] SPEEDS = {0.25, 0.5, 1, 2, 4, 8, 16, 32, 64};
+
+    private final ReplayFile file;
+    private final RaceFrame frame = new RaceFrame();
+    private final Timer timer;
+    private final Runnable onFrame;
+
+    private double position;
+    private long shown = -1;
+    private double speed = 1.0;
+    private long lastNanos;
+
+    /**
+     * Creates a paused player showing the first tick.
+     * @param file    the recording to play
+     * @param onFrame called after the displayed frame changes
+     */
+    public ReplayPlayer(ReplayFile file, Runnable onFrame) {
+        this.file = file;
+        this.onFrame = onFrame;
+        this.timer = new Timer(15, e -> advance());
+        if (file.getFrameCount() > 0) {
+            file.seek(0, frame);
+            shown = 0;
+        }
+    }
+
+    /**
+     * Advances playback by the wall-clock time since the previous timer tick.
+     */
+    private void advance() {
+        long now = System.nanoTime();
+        double elapsed = (now - lastNanos) / 1e9;
+        lastNanos = now;
+        long last = file.getFrameCount() - 1;
+        position = Math.min(last, position + elapsed * SimClock.TICKS_PER_SECOND * speed);
+        showFrame((long) position);
+        if (position >= last) {
+            pause();
+        }
+    }
+
+    private void showFrame(long tick) {
+        if (tick != shown) {
+            file.seek(tick, frame);
+            shown = tick;
+            onFrame.run();
+        }
+    }
+
+    /** Starts or resumes playback. */
+    public void play() {
+        if (file.getFrameCount() == 0) {
+            return;
+        }
+        if (position >= file.getFrameCount() - 1) {
+            position = 0;
+        }
+        lastNanos = System.nanoTime();
+        timer.start();
+    }
+
+    /** Pauses playback on the current tick. */
+    public void pause() {
+        timer.stop();
+    }
+
+    /** @return true while playing */
+    public boolean isPlaying() {
+        return timer.isRunning();
+    }
+
+    /**
+     * Sets the playback speed, clamped to the supported range.
+     * @param speed multiple of real time
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(SPEEDS[0], Math.min(SPEEDS[SPEEDS.length - 1], speed));
+    }
+
+    /** @return the current playback speed */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Jumps to the given tick without changing the play/pause state.
+     * @param tick recorded tick index
+     */
+    public void seek(long tick) {
+        if (file.getFrameCount() == 0) {
+            return;
+        }
+        position = Math.max(0, Math.min(file.getFrameCount() - 1, tick));
+        showFrame((long) position);
+    }
+
+    /** @return index of the displayed tick */
+    public long getPosition() {
+        return (long) position;
+    }
+
+    /** @return number of recorded ticks */
+    public long getLength() {
+        return file.getFrameCount();
+    }
+
+    /** @return the frame currently on display */
+    public RaceFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Stops playback and closes the recording.
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        timer.stop();
+        file.close();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * The ReplayRecorder writes a race to a replay file while it is being run.
+ *
+ * File layout:
+ *   Header:  magic, version, keyframe interval
+ *   Records: one per tick, each a type byte, a length and a {@link RaceFrame} payload.
+ *            Every keyframe-interval ticks the frame is written in full; the ticks
+ *            in between are written as deltas against the tick before them.
+ *   Index:   frame count and the file offset of every keyframe
+ *   Trailer: offset of the index and the magic number again
+ *
+ * The index lets {@link ReplayFile} seek to any tick by decoding at most one
+ * keyframe interval of records.
+ *
+ * The recorder may be closed from another thread, such as a shutdown hook, while
+ * the race runs: closing waits for a tick being recorded, and ticks after it are
+ * ignored.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class ReplayRecorder implements RaceListener, AutoCloseable {
+    public static final int MAGIC = 0x52504C31; // "RPL1"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+    static final int HEADER_SIZE = 16;
+    static final int TRAILER_SIZE = 12;
+    static final byte KEYFRAME = 'K';
+    static final byte DELTA = 'D';
+
+    private final FileChannel channel;
+    private final int keyframeInterval;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+    private ByteBuffer scratch = ByteBuffer.allocate(1 << 16);
+
+    private RaceFrame previous = new RaceFrame();
+    private RaceFrame current = new RaceFrame();
+    private long frameCount;
+    private long position;
+    private long[] keyframeOffsets = new long[64];
+    private int keyframeCount;
+    private boolean closed;
+
+    /**
+     * Creates a recorder with the default keyframe interval.
+     * @param path file to write; an existing file is overwritten
+     * @throws IOException if the file cannot be created
+     */
+    public ReplayRecorder(Path path) throws IOException {
+        this(path, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Creates a recorder.
+     * @param path             file to write; an existing file is overwritten
+     * @param keyframeInterval number of ticks between full keyframes
+     * @throws IOException if the file cannot be created
+     */
+    public ReplayRecorder(Path path, int keyframeInterval) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+        this.keyframeInterval = keyframeInterval;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out.putInt(MAGIC).putInt(VERSION).putInt(keyframeInterval).putInt(0);
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Records the tick that was just simulated.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public synchronized void onTick(Race race) {
+        if (closed) {
+            return;
+        }
+        current.capture(race);
+        boolean keyframe = frameCount % keyframeInterval == 0;
+        if (!keyframe && current.getCarCount() != previous.getCarCount()) {
+            throw new IllegalStateException("Car count changed during recording");
+        }
+
+        while (true) {
+            scratch.clear();
+            try {
+                if (keyframe) {
+                    current.writeKeyframe(scratch);
+                } else {
+                    current.writeDelta(previous, scratch);
+                }
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+        scratch.flip();
+
+        if (keyframe) {
+            if (keyframeCount == keyframeOffsets.length) {
+                keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+            }
+            keyframeOffsets[keyframeCount++] = position;
+        }
+        int length = scratch.remaining();
+        if (out.remaining() < 6 + length) {
+            drain();
+        }
+        int start = out.position();
+        out.put(keyframe ? KEYFRAME : DELTA);
+        VarInt.putUnsigned(out, length);
+        if (out.remaining() >= length) {
+            out.put(scratch);
+            position += out.position() - start;
+        } else {
+            // A record larger than the write buffer (a keyframe of a huge field) goes out directly.
+            position += out.position() - start + length;
+            drain();
+            write(scratch);
+        }
+        frameCount++;
+
+        RaceFrame swap = previous;
+        previous = current;
+        current = swap;
+    }
+
+    /**
+     * Writes buffered records once the race is over.
+     * @param race the finished race
+     */
+    @Override
+    public synchronized void onRaceFinished(Race race) {
+        if (!closed) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        out.flip();
+        write(out);
+        out.clear();
+    }
+
+    private void write(ByteBuffer buf) {
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write replay", e);
+        }
+    }
+
+    /**
+     * Returns the number of ticks recorded so far.
+     * @return frame count
+     */
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Writes the seek index and closes the file. Closing again does nothing.
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        drain();
+        ByteBuffer index = ByteBuffer.allocate(12 + keyframeCount * 8 + TRAILER_SIZE);
+        long indexOffset = position;
+        index.putLong(frameCount).putInt(keyframeCount);
+        for (int i = 0; i < keyframeCount; i++) {
+            index.putLong(keyframeOffsets[i]);
+        }
+        index.putLong(indexOffset).putInt(MAGIC);
+        index.flip();
+        write(index);
+        channel.close();
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Prints a summary of a {@link ResultsStore}: how many races it holds, the ten
+ * fastest laps with the time the query took and, for a given car, its number of
+ * results and the full results of its latest race.
+ *
+ * Usage: java ResultsReport <dir> [carId]
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ResultsReport {
+    /**
+     * Prints a summary of a results store: race count, the fastest laps and one car's history.
+     * @param args store directory, and optionally a car ID
+     * @throws IOException if the store cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ResultsReport <dir> [carId]");
+            return;
+        }
+        try (ResultsStore store = new ResultsStore(Path.of(args[0]))) {
+            System.out.println(store.getRaceCount() + " races stored.");
+            long start = System.nanoTime();
+            List<ResultsStore.Entry> fastest = store.fastestLaps(10);
+            System.out.printf("Fastest laps (%.1f ms):%n", (System.nanoTime() - start) / 1e6);
+            for (ResultsStore.Entry entry : fastest) {
+                System.out.println("  " + entry);
+            }
+            if (args.length > 1) {
+                start = System.nanoTime();
+                List<ResultsStore.Entry> history = store.carHistory(Integer.parseInt(args[1]));
+                System.out.printf("Car %s: %d results (%.1f ms)%n", args[1], history.size(),
+                        (System.nanoTime() - start) / 1e6);
+                if (!history.isEmpty()) {
+                    System.out.print(store.readRace(history.get(history.size() - 1)));
+                }
+            }
+        }
+    }
+}
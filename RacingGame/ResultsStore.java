@@ -0,0 +1,671 @@
+/**
+ * The ResultsStore keeps the results of every finished race in an append-only
+ * store on disk, so they outlive the window and can be queried later.
+ *
+ * Two files live in the store's directory:
+ *   results.dat  header (magic, version), then one record per race: payload length,
+ *                CRC-32 of the payload, and the payload itself: race ID, time recorded,
+ *                laps, ticks, then per car its ID, whether it finished, its setup
+ *                (horsepower, max speed, tyre grip, starting condition), total time,
+ *                best lap and every lap split, all times in {@link SimClock} ticks.
+ *   results.idx  one fixed-size entry per car per race: record offset, race ID, car ID,
+ *                total time, best lap, setup, laps and whether the car finished.
+ *
+ * Queries such as the fastest laps ever, a car's history or the results of one
+ * setup scan the memory-mapped index, 52 bytes per car, and never touch the
+ * records; {@link #readRace(Entry)} reads one when its lap splits are wanted.
+ *
+ * Records are written before their index entries and never rewritten. Each append
+ * forces its record to the disk before writing its index entries, and the entries
+ * before it returns, so a race is on the disk once {@link #append(Race)} returns.
+ * When the store is opened the records behind the last index entries are checked;
+ * index entries whose records did not reach the disk are dropped, whole records that
+ * were never indexed are indexed, and a record torn by a crash is cut off, so at
+ * worst the race being appended at the time of a crash is lost.
+ *
+ * As a {@link RaceListener} the store records lap splits while a race runs and
+ * appends the race when it finishes. It is meant for one race at a time.
+ * {@link ResultsReport} prints a summary of a store from the command line.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+public class ResultsStore implements RaceListener, AutoCloseable {
+    public static final int MAGIC = 0x52455331; // "RES1"
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = 52;
+    static final String DATA_FILE = "results.dat";
+    static final String INDEX_FILE = "results.idx";
+    static final int NO_LAP = Integer.MAX_VALUE;
+
+    /**
+     * One car's result in one race, as held in the index.
+     */
+    public static final class Entry {
+        final long offset;
+        final long raceId;
+        final int carId;
+        final int totalTicks;
+        final int bestLapTicks;
+        final float[] setup;    // horsepower, max speed, tyre grip, starting condition
+        final int laps;
+        final boolean finished;
+
+        Entry(long offset, long raceId, int carId, int totalTicks, int bestLapTicks, float[] setup,
+              int laps, boolean finished) {
+            this.offset = offset;
+            this.raceId = raceId;
+            this.carId = carId;
+            this.totalTicks = totalTicks;
+            this.bestLapTicks = bestLapTicks;
+            this.setup = setup;
+            this.laps = laps;
+            this.finished = finished;
+        }
+
+        /**
+         * Returns whether this result passes a filter; zero or null filter values match anything.
+         * @param laps  laps in the race, or 0
+         * @param carId car ID, or 0
+         * @param setup horsepower, max speed, tyre grip and starting condition, or null
+         * @return true if the result matches
+         */
+        boolean matches(int laps, int carId, float[] setup) {
+            return (laps == 0 || this.laps == laps) && (carId == 0 || this.carId == carId)
+                    && (setup == null || Arrays.equals(this.setup, setup));
+        }
+
+        /** @return the race's ID, counting from 0 in the order races were stored */
+        public long getRaceId() {
+            return raceId;
+        }
+
+        /** @return the car's ID */
+        public int getCarId() {
+            return carId;
+        }
+
+        /**
+         * Returns the time this result is ranked by.
+         * @param byLap true for the best lap, false for the race time
+         * @return the time in ticks
+         */
+        int time(boolean byLap) {
+            return byLap ? bestLapTicks : totalTicks;
+        }
+
+        /** @return laps in the race */
+        public int getLaps() {
+            return laps;
+        }
+
+        /** @return true if the car finished the race */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /** @return the car's race time in seconds */
+        public double getTotalTime() {
+            return SimClock.toSeconds(totalTicks);
+        }
+
+        /** @return the car's best lap in seconds, or NaN if it completed none */
+        public double getBestLap() {
+            return bestLapTicks == NO_LAP ? Double.NaN : SimClock.toSeconds(bestLapTicks);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("race %d car %d: %.1fs, best lap %.1fs", raceId, carId, getTotalTime(), getBestLap());
+        }
+    }
+
+    /**
+     * One car's full result in a stored race.
+     */
+    public static final class CarResult {
+        int carId;
+        boolean finished;
+        float horsePower;
+        float maxSpeed;
+        float tyreGrip;
+        float startingCondition;
+        long totalTicks;
+        int bestLapTicks;
+        int[] splits;
+
+        /** @return the car's ID */
+        public int getCarId() {
+            return carId;
+        }
+
+        /** @return lap times in ticks, in lap order */
+        public int[] getSplits() {
+            return splits.clone();
+        }
+
+        @Override
+        public String toString() {
+            double[] laps = new double[splits.length];
+            for (int i = 0; i < laps.length; i++) {
+                laps[i] = SimClock.toSeconds(splits[i]);
+            }
+            return String.format("Car %d%s Engine(%.1f hp, %.2f max) Wheel(%.2f condition, %.2f grip): %.1fs, laps %s",
+                    carId, finished ? "" : " (DNF)", horsePower, maxSpeed, startingCondition, tyreGrip,
+                    SimClock.toSeconds(totalTicks), Arrays.toString(laps));
+        }
+    }
+
+    /**
+     * A stored race with every car's result.
+     */
+    public static final class RaceResult {
+        long raceId;
+        long recordedAt;
+        int laps;
+        long ticks;
+        final List<CarResult> cars = new ArrayList<>();
+
+        /** @return the race's ID */
+        public long getRaceId() {
+            return raceId;
+        }
+
+        /** @return when the race was stored, in milliseconds since the epoch */
+        public long getRecordedAt() {
+            return recordedAt;
+        }
+
+        /** @return every car's result */
+        public List<CarResult> getCars() {
+            return cars;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Race %d: %d laps, %.1fs%n", raceId, laps, SimClock.toSeconds(ticks)));
+            for (CarResult car : cars) {
+                sb.append("  ").append(car).append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private long dataEnd;
+    private long entryCount;
+    private long nextRaceId;
+    private final CRC32 crc = new CRC32();
+    // The index as last mapped, remapped when entries are added or dropped.
+    private MappedByteBuffer indexMap;
+    private ByteBuffer record = ByteBuffer.allocate(1 << 12);
+    private ByteBuffer entries = ByteBuffer.allocate(ENTRY_SIZE * 8);
+
+    // Lap splits of the race being run, per car in race order.
+    private int[][] splits = new int[0][];
+    private int[] splitCounts = new int[0];
+    private long[] lapStartTicks = new long[0];
+    private int[] lastLap = new int[0];
+    private Race splitsRace;
+
+    /**
+     * Opens the store in a directory, creating it if needed, and recovers from any
+     * crash during a previous append.
+     * @param dir the store's directory
+     * @throws IOException if the store cannot be opened or is not a results store
+     */
+    public ResultsStore(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        data = FileChannel.open(dir.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel idx = null;
+        try {
+            idx = FileChannel.open(dir.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (data.size() < HEADER_SIZE) {
+                data.truncate(0);
+                idx.truncate(0);
+                writeFully(data, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+            } else {
+                ByteBuffer header = read(data, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a results store: " + dir);
+                }
+                if (header.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported results store version " + header.getInt(4));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            if (idx != null) {
+                idx.close();
+            }
+            throw e;
+        }
+        index = idx;
+        recover();
+    }
+
+    /**
+     * Brings the index and the data file back in step after a crash.
+     */
+    private void recover() throws IOException {
+        long count = index.size() / ENTRY_SIZE;
+        long resumeAt = HEADER_SIZE;
+        // Walk back over the last indexed record (and any whose data was lost) so it is re-indexed.
+        while (count > 0) {
+            long offset = read(index, (count - 1) * ENTRY_SIZE, 8).getLong(0);
+            while (count > 0 && read(index, (count - 1) * ENTRY_SIZE, 8).getLong(0) == offset) {
+                count--;
+            }
+            if (readRecord(offset) != null) {
+                resumeAt = offset;
+                break;
+            }
+        }
+        index.truncate(count * ENTRY_SIZE);
+        entryCount = count;
+        nextRaceId = count == 0 ? 0 : read(index, (count - 1) * ENTRY_SIZE + 8, 8).getLong(0) + 1;
+
+        dataEnd = resumeAt;
+        ByteBuffer payload;
+        while ((payload = readRecord(dataEnd)) != null) {
+            long raceId = payload.getLong(0);
+            indexRecord(dataEnd, payload);
+            dataEnd += RECORD_HEADER_SIZE + payload.limit();
+            nextRaceId = raceId + 1;
+        }
+        data.truncate(dataEnd);
+    }
+
+    /** @return number of races stored */
+    public long getRaceCount() {
+        return nextRaceId;
+    }
+
+    /**
+     * Starts recording lap splits when a race starts.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public void onTick(Race race) {
+        List<Car> cars = race.getCars();
+        if (race.getTick() == 1 || race != splitsRace || splitCounts.length != cars.size()) {
+            startSplits(race);
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            int lap = car.isFinished() ? car.getTotalLaps() + 1 : car.getCurrentLap();
+            // A lap boost can carry a car over more than one line in a tick.
+            while (lastLap[i] < lap) {
+                addSplit(i, (int) (car.getTotalTicks() - lapStartTicks[i]));
+                lapStartTicks[i] = car.getTotalTicks();
+                lastLap[i]++;
+            }
+        }
+    }
+
+    private void startSplits(Race race) {
+        List<Car> cars = race.getCars();
+        int n = cars.size();
+        splitsRace = race;
+        splits = new int[n][8];
+        splitCounts = new int[n];
+        lapStartTicks = new long[n];
+        lastLap = new int[n];
+        for (int i = 0; i < n; i++) {
+            Car car = cars.get(i);
+            lastLap[i] = car.getCurrentLap();
+            lapStartTicks[i] = race.getTick() == 1 ? 0 : car.getTotalTicks();
+        }
+    }
+
+    private void addSplit(int car, int ticks) {
+        if (splitCounts[car] == splits[car].length) {
+            splits[car] = Arrays.copyOf(splits[car], splits[car].length * 2);
+        }
+        splits[car][splitCounts[car]++] = ticks;
+    }
+
+    /**
+     * Appends the finished race.
+     * @param race the finished race
+     */
+    @Override
+    public void onRaceFinished(Race race) {
+        try {
+            append(race);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a race's results with the lap splits recorded while it ran.
+     * @param race the race to store
+     * @return the new race's ID
+     * @throws IOException if the store cannot be written
+     */
+    public long append(Race race) throws IOException {
+        List<Car> cars = race.getCars();
+        boolean haveSplits = race == splitsRace && splitCounts.length == cars.size();
+        long raceId = nextRaceId;
+
+        record.clear();
+        record.position(RECORD_HEADER_SIZE);
+        ensureRecord(36);
+        record.putLong(raceId).putLong(System.currentTimeMillis()).putInt(race.getTotalLaps())
+                .putLong(race.getTick()).putInt(cars.size());
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            int count = haveSplits ? splitCounts[i] : 0;
+            ensureRecord(41 + 4 * count);
+            long best = car.getBestLapTicks();
+            record.putInt(car.getId()).put((byte) (car.isFinished() ? 1 : 0))
+                    .putFloat(car.getEngine().getHorsePower()).putFloat(car.getEngine().getMaxSpeed())
+                    .putFloat(car.getTyreGrip()).putFloat(car.getStartingCondition())
+                    .putLong(car.getTotalTicks()).putInt(best == Long.MAX_VALUE ? NO_LAP : (int) best)
+                    .putInt(count);
+            for (int s = 0; s < count; s++) {
+                record.putInt(splits[i][s]);
+            }
+        }
+        record.flip();
+        ByteBuffer payload = record.duplicate().position(RECORD_HEADER_SIZE).slice();
+        crc.reset();
+        crc.update(payload.duplicate());
+        record.putInt(0, payload.limit()).putInt(4, (int) crc.getValue());
+
+        // Data first, then the index: a crash in between leaves a record recovery re-indexes.
+        long offset = dataEnd;
+        writeFully(data, record, offset);
+        data.force(false);
+        dataEnd += record.limit();
+        indexRecord(offset, payload);
+        index.force(false);
+        nextRaceId = raceId + 1;
+        return raceId;
+    }
+
+    private void ensureRecord(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            bigger.put(record);
+            record = bigger;
+        }
+    }
+
+    /**
+     * Writes a record's index entries, one per car.
+     */
+    private void indexRecord(long offset, ByteBuffer payload) throws IOException {
+        ByteBuffer in = payload.duplicate();
+        long raceId = in.getLong();
+        in.getLong(); // recorded at
+        int laps = in.getInt();
+        in.getLong(); // ticks
+        int carCount = in.getInt();
+        if (entries.capacity() < carCount * ENTRY_SIZE) {
+            entries = ByteBuffer.allocate(carCount * ENTRY_SIZE);
+        }
+        entries.clear();
+        for (int i = 0; i < carCount; i++) {
+            int carId = in.getInt();
+            boolean finished = in.get() != 0;
+            float horsePower = in.getFloat();
+            float maxSpeed = in.getFloat();
+            float tyreGrip = in.getFloat();
+            float startingCondition = in.getFloat();
+            long total = in.getLong();
+            int best = in.getInt();
+            int splitCount = in.getInt();
+            in.position(in.position() + 4 * splitCount);
+            entries.putLong(offset).putLong(raceId).putInt(carId)
+                    .putInt((int) Math.min(total, Integer.MAX_VALUE)).putInt(best)
+                    .putFloat(horsePower).putFloat(maxSpeed).putFloat(tyreGrip).putFloat(startingCondition)
+                    .putInt(laps).putInt(finished ? 1 : 0);
+        }
+        writeFully(index, entries.flip(), entryCount * ENTRY_SIZE);
+        entryCount += carCount;
+    }
+
+    /**
+     * Returns the fastest laps ever driven.
+     * @param n how many to return
+     * @return up to n results, fastest best lap first
+     * @throws IOException if the index cannot be read
+     */
+    public List<Entry> fastestLaps(int n) throws IOException {
+        return top(n, true, 0, 0, null);
+    }
+
+    /**
+     * Returns the best results that pass a filter, by best lap or by race time.
+     * Only cars that finished are ranked by race time.
+     * @param n     how many to return
+     * @param byLap true to rank by best lap, false by total race time
+     * @param laps  laps in the race, or 0 for any
+     * @param carId car ID, or 0 for any
+     * @param setup horsepower, max speed, tyre grip and starting condition, or null for any
+     * @return up to n results, best first; none if n is less than 1
+     * @throws IOException if the index cannot be read
+     */
+    public List<Entry> top(int n, boolean byLap, int laps, int carId, float[] setup) throws IOException {
+        if (n < 1) {
+            return new ArrayList<>();
+        }
+        MappedByteBuffer idx = mapIndex();
+        // Equal times rank in the order they were set.
+        Comparator<Entry> order = Comparator.<Entry>comparingInt(e -> e.time(byLap)).thenComparingLong(e -> e.raceId);
+        PriorityQueue<Entry> worstFirst = new PriorityQueue<>(order.reversed());
+        for (int pos = 0; pos < idx.limit(); pos += ENTRY_SIZE) {
+            int time = byLap ? idx.getInt(pos + 24) : idx.getInt(pos + 20);
+            if (byLap ? time == NO_LAP : idx.getInt(pos + 48) == 0) {
+                continue;
+            }
+            if (worstFirst.size() == n && time >= worstFirst.peek().time(byLap)) {
+                continue;
+            }
+            Entry entry = entry(idx, pos);
+            if (!entry.matches(laps, carId, setup)) {
+                continue;
+            }
+            worstFirst.add(entry);
+            if (worstFirst.size() > n) {
+                worstFirst.poll();
+            }
+        }
+        List<Entry> best = new ArrayList<>(worstFirst);
+        best.sort(order);
+        return best;
+    }
+
+    /**
+     * Returns the index entries of one race. Recent races are found quickest.
+     * @param raceId the race's ID
+     * @return one entry per car, in race order
+     * @throws IOException if the index cannot be read
+     */
+    public List<Entry> raceEntries(long raceId) throws IOException {
+        MappedByteBuffer idx = mapIndex();
+        List<Entry> race = new ArrayList<>();
+        for (int pos = idx.limit() - ENTRY_SIZE; pos >= 0; pos -= ENTRY_SIZE) {
+            long id = idx.getLong(pos + 8);
+            if (id == raceId) {
+                race.add(0, entry(idx, pos));
+            } else if (id < raceId) {
+                break;
+            }
+        }
+        return race;
+    }
+
+    /**
+     * Returns every stored result of one car.
+     * @param carId the car's ID
+     * @return its results, oldest first
+     * @throws IOException if the index cannot be read
+     */
+    public List<Entry> carHistory(int carId) throws IOException {
+        MappedByteBuffer idx = mapIndex();
+        List<Entry> history = new ArrayList<>();
+        for (int pos = 0; pos < idx.limit(); pos += ENTRY_SIZE) {
+            if (idx.getInt(pos + 16) == carId) {
+                history.add(entry(idx, pos));
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Returns every stored result of cars with the given setup.
+     * @param horsePower        engine horsepower
+     * @param maxSpeed          engine maximum speed
+     * @param tyreGrip          average base tyre grip
+     * @param startingCondition average starting tyre condition
+     * @return the results, oldest first
+     * @throws IOException if the index cannot be read
+     */
+    public List<Entry> resultsBySetup(float horsePower, float maxSpeed, float tyreGrip, float startingCondition)
+            throws IOException {
+        MappedByteBuffer idx = mapIndex();
+        List<Entry> results = new ArrayList<>();
+        for (int pos = 0; pos < idx.limit(); pos += ENTRY_SIZE) {
+            if (idx.getFloat(pos + 28) == horsePower && idx.getFloat(pos + 32) == maxSpeed
+                    && idx.getFloat(pos + 36) == tyreGrip && idx.getFloat(pos + 40) == startingCondition) {
+                results.add(entry(idx, pos));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reads the full race an index entry belongs to.
+     * @param entry an entry returned by a query
+     * @return the race with every car's result and lap splits
+     * @throws IOException if the record cannot be read or is damaged
+     */
+    public RaceResult readRace(Entry entry) throws IOException {
+        ByteBuffer in = readRecord(entry.offset);
+        if (in == null) {
+            throw new IOException("Damaged record at offset " + entry.offset);
+        }
+        RaceResult race = new RaceResult();
+        race.raceId = in.getLong();
+        race.recordedAt = in.getLong();
+        race.laps = in.getInt();
+        race.ticks = in.getLong();
+        int carCount = in.getInt();
+        for (int i = 0; i < carCount; i++) {
+            CarResult car = new CarResult();
+            car.carId = in.getInt();
+            car.finished = in.get() != 0;
+            car.horsePower = in.getFloat();
+            car.maxSpeed = in.getFloat();
+            car.tyreGrip = in.getFloat();
+            car.startingCondition = in.getFloat();
+            car.totalTicks = in.getLong();
+            car.bestLapTicks = in.getInt();
+            car.splits = new int[in.getInt()];
+            for (int s = 0; s < car.splits.length; s++) {
+                car.splits[s] = in.getInt();
+            }
+            race.cars.add(car);
+        }
+        return race;
+    }
+
+    /**
+     * Forces everything written so far to the disk. Appends already do this for
+     * their own records.
+     * @throws IOException if the files cannot be synced
+     */
+    public void flush() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Syncs and closes the store.
+     * @throws IOException if the files cannot be synced or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            indexMap = null;
+            data.close();
+            index.close();
+        }
+    }
+
+    private static Entry entry(ByteBuffer idx, int pos) {
+        float[] setup = {idx.getFloat(pos + 28), idx.getFloat(pos + 32), idx.getFloat(pos + 36), idx.getFloat(pos + 40)};
+        return new Entry(idx.getLong(pos), idx.getLong(pos + 8), idx.getInt(pos + 16),
+                idx.getInt(pos + 20), idx.getInt(pos + 24), setup, idx.getInt(pos + 44), idx.getInt(pos + 48) != 0);
+    }
+
+    private MappedByteBuffer mapIndex() throws IOException {
+        long size = entryCount * ENTRY_SIZE;
+        if (indexMap == null || indexMap.capacity() != size) {
+            indexMap = index.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return indexMap;
+    }
+
+    /**
+     * Reads the payload of the record at an offset, or returns null if the record is
+     * incomplete or fails its CRC.
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        long size = data.size();
+        if (offset < HEADER_SIZE || offset + RECORD_HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = read(data, offset, RECORD_HEADER_SIZE);
+        int length = header.getInt(0);
+        if (length < 0 || offset + RECORD_HEADER_SIZE + length > size) {
+            return null;
+        }
+        ByteBuffer payload = read(data, offset + RECORD_HEADER_SIZE, length);
+        CRC32 check = new CRC32();
+        check.update(payload.duplicate());
+        return (int) check.getValue() == header.getInt(4) ? payload : null;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buf.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long at = position;
+        while (buf.hasRemaining()) {
+            at += channel.write(buf, at);
+        }
+    }
+}
@@ -1,59 +1,180 @@
 /**
  * The Route class represents a sequential path made up of Location checkpoints
- * that a car must follow during a race.
- * It maintains an internal index to track the car's current position on the route and provides
- * methods to retrieve the next location, advance along the path, reset, and describe the full route.
+ * that a car must follow during a race, and describes the full route.
+ *
+ * Routes are immutable and interned: {@link #of(List)} returns one shared instance
+ * for each distinct list of checkpoints, with the checkpoints themselves interned
+ * too, so any number of cars can drive the same route. Where a car is along it is
+ * kept in the car as plain ints and floats. Tools that build many distinct routes
+ * over time, such as generated fields, call {@link #clearInterned()} between races
+ * so the canonical instances do not pile up.
+ *
+ * The route is also compiled once into primitive arrays: each segment's start angle,
+ * its sweep and the distance from the start of the lap to where it begins. A car then
+ * only keeps its distance into the lap, and finding its segment and angle after moving
+ * any distance is a single search that allocates nothing.
  *
  * Developed by: Abraham Arocha
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class Route {
+    // Canonical instances, so equal routes and checkpoints exist only once.
+    private static final ConcurrentHashMap<List<Location>, Route> ROUTES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Location, Location> LOCATIONS = new ConcurrentHashMap<>();
 
-public class Route {
     private final List<Location> locations;
-    private int currentIndex;
+
+    // Compiled segments: segment k runs from location k to location k + 1.
+    private final float[] segmentStart;
+    private final float[] segmentSweep;
+    private final float[] arcStart;  // distance from the lap start to segment k
+    private final float lapLength;
 
     /**
-     * Constructs a route with the given ordered list of locations.
+     * Returns the shared route through the given ordered list of locations.
      * @param locations list of {@link Location} objects defining the route
+     * @return the interned route
+     */
+    public static Route of(List<Location> locations) {
+        Route route = ROUTES.get(locations);
+        if (route != null) {
+            return route;
+        }
+        List<Location> interned = new ArrayList<>(locations.size());
+        for (Location loc : locations) {
+            interned.add(LOCATIONS.computeIfAbsent(loc, l -> l));
+        }
+        List<Location> key = Collections.unmodifiableList(interned);
+        return ROUTES.computeIfAbsent(key, Route::new);
+    }
+
+    /**
+     * Forgets the canonical routes and checkpoints. Routes already handed out stay
+     * valid; later calls to {@link #of(List)} intern afresh, so a car added after
+     * this may get a different instance of a route than a car added before it.
+     */
+    public static void clearInterned() {
+        ROUTES.clear();
+        LOCATIONS.clear();
+    }
+
+    /** @return number of distinct routes currently interned */
+    public static int internedCount() {
+        return ROUTES.size();
+    }
+
+    /**
+     * Constructs a route with the given ordered list of locations.
+     * @param locations unmodifiable list of interned {@link Location} objects
      */
-    public Route(List<Location> locations) {
+    private Route(List<Location> locations) {
         this.locations = locations;
-        this.currentIndex = 0;
+
+        int segments = Math.max(0, locations.size() - 1);
+        segmentStart = new float[segments];
+        segmentSweep = new float[segments];
+        arcStart = new float[segments];
+        float distance = 0f;
+        for (int k = 0; k < segments; k++) {
+            float start = locations.get(k).getAngle();
+            float sweep = locations.get(k + 1).getAngle() - start;
+            if (sweep < 0) {
+                sweep += 2f * (float) Math.PI;
+            }
+            segmentStart[k] = start;
+            segmentSweep[k] = sweep;
+            arcStart[k] = distance;
+            distance += sweep * Car.EFFECTIVE_RADIUS;
+        }
+        lapLength = distance;
     }
 
     /**
-     * Returns the list of all locations in the route.
-     * @return list of {@link Location} objects
+     * Returns the distance round one full lap of the route.
+     * @return lap length in pixels
      */
-    public List<Location> getLocations() {
-        return locations;
+    public float getLapLength() {
+        return lapLength;
     }
 
     /**
-     * Retrieves the next location in the route based on the current index.
-     * @return the next {@link Location}, or {@code null} if at the end
+     * Returns the number of segments between consecutive checkpoints.
+     * @return segment count
      */
-    public Location getNextLocation() {
-        if (currentIndex + 1 < locations.size()) {
-            return locations.get(currentIndex + 1);
+    public int getSegmentCount() {
+        return segmentStart.length;
+    }
+
+    /**
+     * Returns the track angle at which a segment begins.
+     * @param segment segment index
+     * @return start angle, not wrapped into [0, 2*pi)
+     */
+    public float getSegmentStart(int segment) {
+        return segmentStart[segment];
+    }
+
+    /**
+     * Returns the track angle a segment covers.
+     * @param segment segment index
+     * @return sweep in radians
+     */
+    public float getSegmentSweep(int segment) {
+        return segmentSweep[segment];
+    }
+
+    /**
+     * Returns the distance from the start of the lap to where a segment begins.
+     * @param segment segment index
+     * @return distance in pixels
+     */
+    public float getSegmentDistance(int segment) {
+        return arcStart[segment];
+    }
+
+    /**
+     * Finds the segment a car is on.
+     * @param lapDistance distance from the start of the lap
+     * @return index of the segment containing that distance; the last segment beyond the lap's end
+     */
+    public int segmentAt(float lapDistance) {
+        int k = Arrays.binarySearch(arcStart, lapDistance);
+        if (k < 0) {
+            k = -k - 2;
+        } else {
+            // Skip past zero-length segments that start at the same distance.
+            while (k + 1 < arcStart.length && arcStart[k + 1] == lapDistance) {
+                k++;
+            }
         }
-        return null;
+        return Math.max(0, k);
     }
 
     /**
-     * Advances the current checkpoint index to the next location.
+     * Returns the track angle at a distance into the lap.
+     * @param lapDistance distance from the start of the lap
+     * @param segment     the segment containing that distance, from {@link #segmentAt(float)}
+     * @return track angle, not wrapped into [0, 2*pi)
      */
-    public void advance() {
-        currentIndex++;
+    public float angleAt(float lapDistance, int segment) {
+        if (segmentStart.length == 0) {
+            return locations.isEmpty() ? 0f : locations.get(0).getAngle();
+        }
+        return segmentStart[segment] + (lapDistance - arcStart[segment]) / Car.EFFECTIVE_RADIUS;
     }
 
     /**
-     * Checks if the route is complete (i.e., final checkpoint reached or passed).
-     * @return true if the route is complete, false otherwise
+     * Returns the list of all locations in the route.
+     * @return list of {@link Location} objects
      */
-    public boolean isComplete() {
-        return currentIndex >= locations.size() - 1;
+    public List<Location> getLocations() {
+        return locations;
     }
 
     /**
@@ -71,11 +192,4 @@ public class Route {
         }
         return sb.toString();
     }
-
-    /**
-     * Resets the route to the beginning by setting the checkpoint index to zero.
-     */
-    public void reset() {
-        currentIndex = 0;
-    }
 }
@@ -0,0 +1,290 @@
+/**
+ * The SetupTuner evolves an engine and wheel setup for car #1 that finishes the
+ * standard race in the shortest time.
+ *
+ * A setup is four genes: horsepower, maximum speed, tyre grip and starting tyre
+ * condition, each kept within fixed bounds. Every generation each candidate
+ * drives the same set of seeded headless races (common random numbers, so
+ * candidates are compared on identical obstacle sequences), with all races of the
+ * generation spread over a fixed pool of worker threads. The fittest candidates
+ * survive unchanged; the rest of the next generation is bred by tournament
+ * selection, blend crossover and Gaussian mutation.
+ *
+ * At the end the best few setups are raced again on fresh seeds, so their reported
+ * mean race times and 95% confidence intervals are not biased by selection.
+ * Evaluation throughput in races per second is reported for every generation.
+ * {@link SetupTunerRunner} runs it from the command line.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SetupTuner {
+    // Gene bounds: horsepower, max speed, grip, starting condition.
+    static final float[] MIN = {150f, 8f, 0.5f, 0.5f};
+    static final float[] MAX = {300f, 14f, 1.5f, 1.0f};
+
+    private static final int ELITES = 2;
+    private static final int TOURNAMENT = 3;
+    private static final float MUTATION_RATE = 0.3f;
+    private static final float MUTATION_SIGMA = 0.1f; // fraction of each gene's range
+    private static final int FINAL_CANDIDATES = 3;
+    private static final long MAX_TICKS = 200_000;
+
+    /**
+     * Notified on the tuning thread as each generation has been raced.
+     */
+    public interface GenerationListener {
+        /**
+         * Called once a generation's candidates have been raced and ranked.
+         * @param generation     generation number, from 1
+         * @param best           the fastest candidate of the generation
+         * @param racesPerSecond evaluation throughput over the generation
+         */
+        void onGeneration(int generation, Setup best, double racesPerSecond);
+    }
+
+    /**
+     * One candidate setup and its latest evaluation.
+     */
+    static final class Setup {
+        final float[] genes;
+        double meanTime = Double.NaN;
+        double halfWidth = Double.NaN;
+
+        Setup(float[] genes) {
+            this.genes = genes;
+        }
+
+        /** @return an engine built from this setup */
+        Engine engine() {
+            return new Engine(genes[0], genes[1]);
+        }
+
+        /** @return a fresh set of four wheels built from this setup */
+        List<Wheel> wheels() {
+            List<Wheel> wheels = new ArrayList<>(4);
+            for (int i = 0; i < 4; i++) {
+                wheels.add(new Wheel(genes[3], genes[2]));
+            }
+            return wheels;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Engine(%.1f hp, %.2f max) Wheel(%.2f condition, %.2f grip)",
+                    genes[0], genes[1], genes[3], genes[2]);
+        }
+    }
+
+    private final ExecutorService pool;
+    private final int laps;
+    private final int racesPerCandidate;
+    private final Randomizer random;
+    private long racesRun;
+    private long nanosRacing;
+
+    /**
+     * Creates a tuner.
+     * @param threads           number of worker threads racing in parallel
+     * @param laps              laps per evaluation race
+     * @param racesPerCandidate races per candidate per generation
+     * @param seed              seed for the evolution and the race seeds
+     */
+    public SetupTuner(int threads, int laps, int racesPerCandidate, long seed) {
+        if (threads < 1 || laps < 1 || racesPerCandidate < 2) {
+            throw new IllegalArgumentException("Need at least one thread, one lap and two races per candidate");
+        }
+        this.laps = laps;
+        this.racesPerCandidate = racesPerCandidate;
+        this.random = new Randomizer(seed);
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "setup-tuner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs one headless race and returns car #1's race time.
+     * @param setup the setup for car #1
+     * @param seed  seed for the race's random events
+     * @return car #1's total race time in seconds
+     */
+    double raceTime(Setup setup, long seed) {
+        Race race = RaceSetup.createRace(laps, setup.engine(), setup.wheels());
+        race.setLogging(false);
+        race.getRandomizer().setState(seed);
+        Car car = race.getCars().get(0);
+        car.setHumanControlled(false);
+        race.startRace();
+        long ticks = 0;
+        while (!car.isFinished() && race.isRunning() && ticks++ < MAX_TICKS) {
+            race.updateRaceStatus();
+        }
+        return car.getTotalTime();
+    }
+
+    /**
+     * Races every setup on every seed in parallel and records mean times and confidence intervals.
+     * @param setups the setups to evaluate
+     * @param seeds  one race per seed for every setup
+     */
+    void evaluate(List<Setup> setups, long[] seeds) {
+        long start = System.nanoTime();
+        List<Future<Double>> results = new ArrayList<>(setups.size() * seeds.length);
+        for (Setup setup : setups) {
+            for (long seed : seeds) {
+                results.add(pool.submit(() -> raceTime(setup, seed)));
+            }
+        }
+        double[] times = new double[seeds.length];
+        int next = 0;
+        try {
+            for (Setup setup : setups) {
+                for (int i = 0; i < seeds.length; i++) {
+                    times[i] = results.get(next++).get();
+                }
+                summarize(setup, times);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tuning interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Evaluation race failed", e.getCause());
+        }
+        racesRun += results.size();
+        nanosRacing += System.nanoTime() - start;
+    }
+
+    /**
+     * Sets a setup's mean time and the half-width of its 95% confidence interval.
+     */
+    private static void summarize(Setup setup, double[] times) {
+        double sum = 0;
+        for (double t : times) {
+            sum += t;
+        }
+        double mean = sum / times.length;
+        double squares = 0;
+        for (double t : times) {
+            squares += (t - mean) * (t - mean);
+        }
+        double sd = Math.sqrt(squares / (times.length - 1));
+        setup.meanTime = mean;
+        setup.halfWidth = 1.96 * sd / Math.sqrt(times.length);
+    }
+
+    /**
+     * Evolves setups and returns the best ones, re-evaluated on fresh seeds.
+     * @param generations number of generations
+     * @param population  candidates per generation
+     * @param listener    told about each generation; may be null
+     * @return the best setups, fastest first
+     */
+    public List<Setup> run(int generations, int population, GenerationListener listener) {
+        if (population <= ELITES) {
+            throw new IllegalArgumentException("Population must be larger than " + ELITES);
+        }
+        List<Setup> current = new ArrayList<>(population);
+        for (int i = 0; i < population; i++) {
+            current.add(randomSetup());
+        }
+        for (int gen = 1; gen <= generations; gen++) {
+            long racesBefore = racesRun;
+            long nanosBefore = nanosRacing;
+            evaluate(current, seeds(racesPerCandidate));
+            current.sort(Comparator.comparingDouble(s -> s.meanTime));
+
+            if (listener != null) {
+                double racesPerSecond = (racesRun - racesBefore) / ((nanosRacing - nanosBefore) / 1e9);
+                listener.onGeneration(gen, current.get(0), racesPerSecond);
+            }
+
+            if (gen < generations) {
+                current = breed(current, population);
+            }
+        }
+
+        // Fresh seeds and more races for the finalists, free of the selection bias.
+        List<Setup> finalists = new ArrayList<>(current.subList(0, Math.min(FINAL_CANDIDATES, current.size())));
+        evaluate(finalists, seeds(racesPerCandidate * 4));
+        finalists.sort(Comparator.comparingDouble(s -> s.meanTime));
+        return finalists;
+    }
+
+    /** @return average evaluation throughput so far, in races per second */
+    public double getRacesPerSecond() {
+        return nanosRacing == 0 ? 0 : racesRun / (nanosRacing / 1e9);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private long[] seeds(int count) {
+        long[] seeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            seeds[i] = random.nextLong();
+        }
+        return seeds;
+    }
+
+    private Setup randomSetup() {
+        float[] genes = new float[MIN.length];
+        for (int g = 0; g < genes.length; g++) {
+            genes[g] = MIN[g] + random.nextFloat() * (MAX[g] - MIN[g]);
+        }
+        return new Setup(genes);
+    }
+
+    /**
+     * Builds the next generation from a population sorted fastest first.
+     */
+    private List<Setup> breed(List<Setup> ranked, int population) {
+        List<Setup> next = new ArrayList<>(population);
+        for (int i = 0; i < ELITES; i++) {
+            next.add(new Setup(ranked.get(i).genes.clone()));
+        }
+        while (next.size() < population) {
+            float[] a = tournament(ranked).genes;
+            float[] b = tournament(ranked).genes;
+            float[] child = new float[a.length];
+            for (int g = 0; g < child.length; g++) {
+                // Blend crossover: anywhere between the parents and a little beyond.
+                float lo = Math.min(a[g], b[g]);
+                float hi = Math.max(a[g], b[g]);
+                float extra = 0.25f * (hi - lo);
+                child[g] = lo - extra + random.nextFloat() * (hi - lo + 2 * extra);
+                if (random.nextFloat() < MUTATION_RATE) {
+                    child[g] += (float) gaussian() * MUTATION_SIGMA * (MAX[g] - MIN[g]);
+                }
+                child[g] = Math.max(MIN[g], Math.min(MAX[g], child[g]));
+            }
+            next.add(new Setup(child));
+        }
+        return next;
+    }
+
+    private Setup tournament(List<Setup> ranked) {
+        int best = random.nextInt(ranked.size());
+        for (int i = 1; i < TOURNAMENT; i++) {
+            best = Math.min(best, random.nextInt(ranked.size()));
+        }
+        return ranked.get(best);
+    }
+
+    private double gaussian() {
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Runs a {@link SetupTuner} from the command line: it tunes car #1's setup for
+ * the standard race and prints the best setup of every generation, then the
+ * finalists with their mean race times and 95% confidence intervals.
+ *
+ * Usage: java SetupTunerRunner [generations] [population] [racesPerCandidate] [laps] [threads]
+ */
+
+import java.util.List;
+
+public class SetupTunerRunner {
+    /**
+     * Tunes car #1's setup, printing each generation's best and then the best setups found.
+     * @param args optional generations, population, races per candidate, laps and threads
+     */
+    public static void main(String[] args) {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int population = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        int races = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int laps = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Tuning with " + threads + " threads, " + population + " setups x "
+                + races + " races of " + laps + " laps per generation.");
+        SetupTuner tuner = new SetupTuner(threads, laps, races, System.nanoTime());
+        try {
+            List<SetupTuner.Setup> best = tuner.run(generations, population, (gen, setup, racesPerSecond) ->
+                    System.out.printf("Generation %d: best %.2fs +/- %.2f  %s  (%.0f races/s)%n",
+                            gen, setup.meanTime, setup.halfWidth, setup, racesPerSecond));
+            System.out.println();
+            System.out.println("Best setups (" + races * 4 + " fresh races each, 95% confidence):");
+            for (SetupTuner.Setup setup : best) {
+                System.out.printf("  %.2fs +/- %.2f  %s%n", setup.meanTime, setup.halfWidth, setup);
+            }
+            System.out.printf("Throughput: %.0f races/s on %d threads%n", tuner.getRacesPerSecond(), threads);
+        } finally {
+            tuner.shutdown();
+        }
+    }
+}
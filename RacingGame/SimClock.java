@@ -0,0 +1,131 @@
+/**
+ * The SimClock is the single source of time in a race.
+ *
+ * Simulated time is a whole number of ticks, each exactly {@link #TICK_MILLIS}
+ * milliseconds of race time, so race and lap times are tick counts converted to
+ * seconds only for display and never drift however long the race runs.
+ *
+ * The clock also paces the simulation against the wall clock. At a rate of 1 a
+ * tick is due every 100ms of real time; at 10 every 10ms; at 0.1 every second; at
+ * {@link #UNLIMITED} as many ticks as the caller can run. The caller asks how many
+ * ticks are due, runs them all and renders once, so at high rates frames are
+ * skipped while every tick is still simulated.
+ */
+public final class SimClock {
+    /** Race time per tick, in milliseconds. */
+    public static final int TICK_MILLIS = 100;
+    /** Ticks per second of race time. */
+    public static final int TICKS_PER_SECOND = 1000 / TICK_MILLIS;
+    /** Race time per tick, in seconds, for the physics. */
+    public static final float TICK_SECONDS = 1f / TICKS_PER_SECOND;
+    /** Rate that runs ticks as fast as the caller can. */
+    public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+    /** Rates offered by the race controls. */
+    public static final double[] RATES = {0.1, 1, 10, 100, UNLIMITED};
+
+    private static final long NANOS_PER_TICK = TICK_MILLIS * 1_000_000L;
+    // Most ticks handed out at once; a longer stall is not caught up.
+    private static final int MAX_CATCH_UP = 1000;
+
+    private long tick;
+
+    // Pacing against the wall clock.
+    private double rate = 1;
+    private double owed;
+    private long lastNanos;
+
+    /** @return ticks elapsed since the race started or was reset */
+    public long getTick() {
+        return tick;
+    }
+
+    /** @return race time elapsed, in seconds */
+    public double getSeconds() {
+        return toSeconds(tick);
+    }
+
+    /** Advances the clock by one tick. */
+    void advance() {
+        tick++;
+    }
+
+    /**
+     * Sets the tick count, as when a saved race is restored.
+     * @param tick ticks elapsed
+     */
+    void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /** Sets the clock back to tick zero. */
+    void reset() {
+        tick = 0;
+        owed = 0;
+    }
+
+    /**
+     * Converts a tick count to seconds of race time.
+     * @param ticks number of ticks
+     * @return race time in seconds
+     */
+    public static double toSeconds(long ticks) {
+        return (double) ticks / TICKS_PER_SECOND;
+    }
+
+    /**
+     * Returns a short label for a rate, such as "10x" or "Max".
+     * @param rate simulation rate
+     * @return label for the race controls
+     */
+    public static String rateLabel(double rate) {
+        if (rate == UNLIMITED) {
+            return "Max";
+        }
+        return (rate == Math.rint(rate) ? String.valueOf((long) rate) : String.valueOf(rate)) + "x";
+    }
+
+    /** @return ticks of race time per tick of real time */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets how fast race time passes relative to real time.
+     * @param rate a positive rate, or {@link #UNLIMITED}
+     */
+    public void setRate(double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        this.rate = rate;
+        owed = 0;
+    }
+
+    /**
+     * Starts pacing from the given wall-clock time, as when the race starts or resumes.
+     * @param nowNanos current {@link System#nanoTime()}
+     */
+    public void startPacing(long nowNanos) {
+        lastNanos = nowNanos;
+        owed = 0;
+    }
+
+    /**
+     * Returns how many ticks are due since the previous call, at the current rate.
+     * At {@link #UNLIMITED} every call returns {@link Integer#MAX_VALUE} and the caller
+     * stops when its frame budget is spent.
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return ticks to run now
+     */
+    public int ticksDue(long nowNanos) {
+        long elapsed = nowNanos - lastNanos;
+        lastNanos = nowNanos;
+        if (rate == UNLIMITED) {
+            return Integer.MAX_VALUE;
+        }
+        owed += elapsed * rate / NANOS_PER_TICK;
+        int due = (int) Math.min(owed, MAX_CATCH_UP);
+        owed = Math.min(owed - due, 1);
+        return due;
+    }
+}
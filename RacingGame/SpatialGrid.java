@@ -0,0 +1,161 @@
+/**
+ * A uniform grid over points in the world, for finding what lies in a rectangle.
+ *
+ * Points are added in any order and {@link #build()} places each in its cell with
+ * a counting sort into flat arrays, covering the bounding box of the points in
+ * square cells of {@link #CELL} world units (larger if that would mean too many
+ * cells). {@link #query} visits only the cells that overlap the rectangle, so the
+ * race view touches what is on screen rather than the whole field.
+ *
+ * Points are identified by slot, the order they were added in. Query results are
+ * held in the grid, in slot order, and overwritten by the next query.
+ */
+
+import java.util.Arrays;
+
+public class SpatialGrid {
+    static final int CELL = 32;
+    private static final int MAX_CELLS_PER_SIDE = 512;
+
+    private int size;
+    private float[] xs = new float[16];
+    private float[] ys = new float[16];
+    private int[] cells = new int[16];
+
+    private float minX;
+    private float minY;
+    private float cellSize = CELL;
+    private int cols;
+    private int rows;
+
+    // Slots in cell order; cell i holds order[cellStart[i] .. cellStart[i + 1]).
+    private int[] order = new int[16];
+    private int[] cellStart = new int[1];
+    private int[] cursor = new int[0];
+
+    private int[] hits = new int[16];
+
+    /**
+     * Empties the grid before adding the points of a new frame.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a point; call {@link #build()} once all are added.
+     * @param x world X
+     * @param y world Y
+     * @return the point's slot
+     */
+    public int add(float x, float y) {
+        if (size == xs.length) {
+            int capacity = size * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cells = new int[capacity];
+            order = new int[capacity];
+            hits = new int[capacity];
+        }
+        xs[size] = x;
+        ys[size] = y;
+        return size++;
+    }
+
+    /**
+     * Sorts the added points into their cells.
+     */
+    public void build() {
+        float maxX = 0;
+        float maxY = 0;
+        minX = 0;
+        minY = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || xs[i] < minX) {
+                minX = xs[i];
+            }
+            if (i == 0 || ys[i] < minY) {
+                minY = ys[i];
+            }
+            if (i == 0 || xs[i] > maxX) {
+                maxX = xs[i];
+            }
+            if (i == 0 || ys[i] > maxY) {
+                maxY = ys[i];
+            }
+        }
+        cellSize = Math.max(CELL, Math.max(maxX - minX, maxY - minY) / (MAX_CELLS_PER_SIDE - 1));
+        cols = (int) ((maxX - minX) / cellSize) + 1;
+        rows = (int) ((maxY - minY) / cellSize) + 1;
+        int count = cols * rows;
+        if (cellStart.length < count + 1) {
+            cellStart = new int[count + 1];
+            cursor = new int[count];
+        }
+        Arrays.fill(cellStart, 0, count + 1, 0);
+        for (int i = 0; i < size; i++) {
+            int cell = row(ys[i]) * cols + col(xs[i]);
+            cells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cursor[c] = cellStart[c];
+        }
+        for (int i = 0; i < size; i++) {
+            order[cursor[cells[i]]++] = i;
+        }
+    }
+
+    private int col(float x) {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    /**
+     * Finds the points inside a rectangle, edges included.
+     * @param x0 left edge
+     * @param y0 top edge
+     * @param x1 right edge
+     * @param y1 bottom edge
+     * @return number of hits, read with {@link #getHit(int)}
+     */
+    public int query(double x0, double y0, double x1, double y1) {
+        if (size == 0 || x1 < minX || y1 < minY
+                || x0 > minX + cols * cellSize || y0 > minY + rows * cellSize) {
+            return 0;
+        }
+        int c0 = col((float) x0);
+        int c1 = col((float) x1);
+        int r0 = row((float) y0);
+        int r1 = row((float) y1);
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int j = cellStart[r * cols + c0]; j < cellStart[r * cols + c1 + 1]; j++) {
+                int slot = order[j];
+                if (xs[slot] >= x0 && xs[slot] <= x1 && ys[slot] >= y0 && ys[slot] <= y1) {
+                    hits[count++] = slot;
+                }
+            }
+        }
+        // Slot order keeps overlapping things drawn in the order they were added.
+        Arrays.sort(hits, 0, count);
+        return count;
+    }
+
+    /** @return number of points in the grid */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param k hit number, less than the count returned by the last query
+     * @return slot of the k-th point found by the last query
+     */
+    public int getHit(int k) {
+        return hits[k];
+    }
+}
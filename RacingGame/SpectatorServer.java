@@ -0,0 +1,220 @@
+/**
+ * The SpectatorServer streams a live race to any number of {@link SpectatorViewer}s.
+ *
+ * It runs entirely on the simulation thread: each tick it polls a non-blocking
+ * {@link Selector} for new and closed connections, encodes the frame once as a
+ * delta against the previous tick (and once as a keyframe if any client needs one),
+ * and copies the encoded bytes into every client's bounded outbound buffer before
+ * attempting a non-blocking write. A client whose buffer has no room for the frame
+ * simply misses it and is sent a keyframe once it has caught up, so a slow
+ * spectator never holds up the race or the other spectators.
+ *
+ * It may be closed from another thread, such as a shutdown hook: closing waits for
+ * a tick being sent, and ticks after it are ignored.
+ *
+ * Wire framing: a 4-byte payload length, a 1-byte record type ('K' or 'D'),
+ * then a {@link RaceFrame} keyframe or delta payload.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class SpectatorServer implements RaceListener, AutoCloseable {
+    public static final int DEFAULT_PORT = 7777;
+    public static final int DEFAULT_CLIENT_BUFFER = 64 * 1024;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final int clientBufferSize;
+    private final List<Client> clients = new ArrayList<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+    private final FrameEncoder encoder = new FrameEncoder();
+    private long framesDropped;
+    private boolean closed;
+
+    /** Per-connection state. */
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer outbound;
+        boolean needsKeyframe = true;
+
+        Client(SocketChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.outbound = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    /**
+     * Starts listening for spectators on all interfaces.
+     * @param port TCP port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public SpectatorServer(int port) throws IOException {
+        this(new InetSocketAddress(port), DEFAULT_CLIENT_BUFFER);
+    }
+
+    /**
+     * Starts listening for spectators.
+     * @param address          address to bind
+     * @param clientBufferSize size of each client's outbound buffer in bytes
+     * @throws IOException if the address cannot be bound
+     */
+    public SpectatorServer(InetSocketAddress address, int clientBufferSize) throws IOException {
+        this.clientBufferSize = clientBufferSize;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(address, 1024);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     * @return local port
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return number of connected spectators */
+    public synchronized int getClientCount() {
+        return clients.size();
+    }
+
+    /** @return total frames skipped because a client's buffer was full */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * Broadcasts the tick that was just simulated.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public synchronized void onTick(Race race) {
+        if (closed) {
+            return;
+        }
+        try {
+            pollConnections();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Spectator server failed", e);
+        }
+        encoder.capture(race);
+        boolean deltaPossible = encoder.isDeltaPossible();
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (!deltaPossible) {
+                client.needsKeyframe = true;
+            }
+            ByteBuffer frame = client.needsKeyframe ? encoder.keyframe() : encoder.delta();
+            if (client.outbound.remaining() >= frame.remaining()) {
+                client.outbound.put(frame);
+                client.needsKeyframe = false;
+            } else {
+                client.needsKeyframe = true;
+                framesDropped++;
+            }
+            flush(client);
+        }
+    }
+
+    /**
+     * Accepts new spectators and notices disconnected ones without blocking.
+     */
+    private void pollConnections() throws IOException {
+        if (selector.selectNow() == 0) {
+            return;
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                SocketChannel channel;
+                while ((channel = server.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    Client client = new Client(channel, clientBufferSize);
+                    channel.register(selector, SelectionKey.OP_READ, client);
+                    clients.add(client);
+                }
+            } else if (key.isReadable()) {
+                // Viewers never send anything; a read of -1 means they went away.
+                Client client = (Client) key.attachment();
+                int read;
+                try {
+                    do {
+                        discard.clear();
+                        read = client.channel.read(discard);
+                    } while (read > 0);
+                } catch (IOException e) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    disconnect(client);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the client's outbound buffer as the socket accepts right now.
+     */
+    private void flush(Client client) {
+        ByteBuffer out = client.outbound;
+        out.flip();
+        try {
+            client.channel.write(out);
+        } catch (IOException e) {
+            out.clear();
+            disconnect(client);
+            return;
+        }
+        out.compact();
+    }
+
+    private void disconnect(Client client) {
+        clients.remove(client);
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Disconnects all spectators and stops listening.
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Client client : new ArrayList<>(clients)) {
+            disconnect(client);
+        }
+        server.close();
+        selector.close();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * The SpectatorViewer connects to a {@link SpectatorServer} and shows the live race
+ * using the same drawing routines as {@link RaceDisplay}.
+ *
+ * A background thread reads and decodes frames; the Swing panel repaints with the
+ * most recent frame, so a viewer that draws slowly just shows fewer frames.
+ *
+ * Usage: java SpectatorViewer [host] [port]
+ */
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+public class SpectatorViewer extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // Refuse frames larger than this rather than allocating without bound.
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private final Object lock = new Object();
+    private final RaceFrame latest = new RaceFrame();
+    private final RaceFrame shown = new RaceFrame();
+    private boolean hasFrame;
+    private volatile String status = "Connecting...";
+
+    /**
+     * Creates an empty viewer panel.
+     */
+    public SpectatorViewer() {
+        setPreferredSize(new Dimension(1370, 1000));
+        setBackground(Color.BLUE);
+    }
+
+    /**
+     * Reads frames from the server until the connection closes.
+     * @param address server address
+     */
+    public void receive(InetSocketAddress address) {
+        RaceFrame decoding = new RaceFrame();
+        boolean synced = false;
+        ByteBuffer header = ByteBuffer.allocate(FrameEncoder.FRAME_HEADER);
+        ByteBuffer payload = ByteBuffer.allocate(1 << 16);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            status = "Connected to " + address;
+            while (true) {
+                header.clear();
+                readFully(channel, header);
+                int length = header.getInt(0);
+                byte type = header.get(4);
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (payload.capacity() < length) {
+                    payload = ByteBuffer.allocate(length);
+                }
+                payload.clear().limit(length);
+                readFully(channel, payload);
+                payload.flip();
+
+                if (type == FrameEncoder.KEYFRAME) {
+                    decoding.readKeyframe(payload);
+                    synced = true;
+                } else if (synced) {
+                    decoding.applyDelta(payload);
+                } else {
+                    continue;
+                }
+                synchronized (lock) {
+                    latest.copyFrom(decoding);
+                    hasFrame = true;
+                }
+                repaint();
+            }
+        } catch (IOException e) {
+            status = "Disconnected: " + e.getMessage();
+            repaint();
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new EOFException("server closed the connection");
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        boolean draw;
+        synchronized (lock) {
+            draw = hasFrame;
+            if (draw) {
+                shown.copyFrom(latest);
+            }
+        }
+        if (draw) {
+            RaceDisplay.drawFrame(g2, shown, getWidth(), getHeight());
+        }
+        g2.setColor(Color.WHITE);
+        g2.drawString(status, 10, getHeight() - 10);
+    }
+
+    /**
+     * Opens a viewer window connected to the given server.
+     * @param args optional host and port
+     */
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : SpectatorServer.DEFAULT_PORT;
+        SpectatorViewer viewer = new SpectatorViewer();
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Oval Car Racing Simulator - Spectator");
+            frame.add(viewer);
+            frame.pack();
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        });
+        Thread reader = new Thread(() -> viewer.receive(new InetSocketAddress(host, port)), "spectator-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
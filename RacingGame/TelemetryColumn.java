@@ -0,0 +1,27 @@
+/**
+ * The fixed-width columns written by {@link TelemetryRecorder} for every car on every tick.
+ * Each column holds one 4-byte value per car, either a float or an int.
+ */
+public enum TelemetryColumn {
+    X(false),
+    Y(false),
+    ANGLE(false),
+    SPEED(false),
+    LATERAL_OFFSET(false),
+    LAP(true),
+    PIT_TIMER(true);
+
+    private final boolean integer;
+
+    TelemetryColumn(boolean integer) {
+        this.integer = integer;
+    }
+
+    /**
+     * Indicates whether the column stores ints rather than floats.
+     * @return true for int columns
+     */
+    public boolean isInteger() {
+        return integer;
+    }
+}
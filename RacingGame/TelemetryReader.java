@@ -0,0 +1,180 @@
+/**
+ * The TelemetryReader gives read-only, zero-copy access to a trace written by
+ * {@link TelemetryRecorder}.
+ *
+ * The file is mapped lazily one chunk at a time, so traces larger than the 2 GB limit
+ * of a single mapping can be scanned. Column accessors return views directly over
+ * the mapped file rather than copies of it.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class TelemetryReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final int carCount;
+    private final int[] carIds;
+    private final int ticksPerChunk;
+    private final long tickCount;
+    private final int columnBytes;
+    private final int tickBytes;
+    private final long dataStart;
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Opens a telemetry file for reading.
+     * @param path the file written by a {@link TelemetryRecorder}
+     * @throws IOException if the file cannot be read or is not a telemetry trace
+     */
+    public TelemetryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer fixed = ByteBuffer.allocate(TelemetryRecorder.CAR_IDS_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fixed, 0);
+        if (fixed.getInt(0) != TelemetryRecorder.MAGIC) {
+            channel.close();
+            throw new IOException("Not a telemetry file: " + path);
+        }
+        if (fixed.getInt(4) != TelemetryRecorder.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported telemetry version " + fixed.getInt(4));
+        }
+        carCount = fixed.getInt(TelemetryRecorder.CAR_COUNT_OFFSET);
+        ticksPerChunk = fixed.getInt(TelemetryRecorder.TICKS_PER_CHUNK_OFFSET);
+        tickCount = fixed.getLong(TelemetryRecorder.TICK_COUNT_OFFSET);
+
+        ByteBuffer ids = ByteBuffer.allocate(carCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ids, TelemetryRecorder.CAR_IDS_OFFSET);
+        carIds = new int[carCount];
+        ids.asIntBuffer().get(carIds);
+
+        columnBytes = carCount * 4;
+        tickBytes = columnBytes * TelemetryColumn.values().length;
+        dataStart = TelemetryRecorder.headerSize(carCount);
+        chunks = new MappedByteBuffer[(int) ((tickCount + ticksPerChunk - 1) / ticksPerChunk)];
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Truncated telemetry header");
+            }
+        }
+        dst.flip();
+    }
+
+    /** @return number of recorded cars */
+    public int getCarCount() {
+        return carCount;
+    }
+
+    /** @return number of recorded ticks */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns the ID of the car stored at the given column position.
+     * @param carIndex position of the car within each column
+     * @return car ID
+     */
+    public int getCarId(int carIndex) {
+        return carIds[carIndex];
+    }
+
+    /**
+     * Returns a read-only view of one float column for one tick.
+     * @param tick   tick number, starting at 0
+     * @param column a float column
+     * @return buffer holding one value per car
+     */
+    public FloatBuffer floatColumn(long tick, TelemetryColumn column) {
+        if (column.isInteger()) {
+            throw new IllegalArgumentException(column + " is not a float column");
+        }
+        return columnSlice(tick, column).asFloatBuffer();
+    }
+
+    /**
+     * Returns a read-only view of one int column for one tick.
+     * @param tick   tick number, starting at 0
+     * @param column an int column
+     * @return buffer holding one value per car
+     */
+    public IntBuffer intColumn(long tick, TelemetryColumn column) {
+        if (!column.isInteger()) {
+            throw new IllegalArgumentException(column + " is not an int column");
+        }
+        return columnSlice(tick, column).asIntBuffer();
+    }
+
+    /**
+     * Reads a single float value without creating any views.
+     * @param tick     tick number
+     * @param column   a float column
+     * @param carIndex position of the car within the column
+     * @return recorded value
+     */
+    public float getFloat(long tick, TelemetryColumn column, int carIndex) {
+        return chunkFor(tick).getFloat(offset(tick, column) + carIndex * 4);
+    }
+
+    /**
+     * Reads a single int value without creating any views.
+     * @param tick     tick number
+     * @param column   an int column
+     * @param carIndex position of the car within the column
+     * @return recorded value
+     */
+    public int getInt(long tick, TelemetryColumn column, int carIndex) {
+        return chunkFor(tick).getInt(offset(tick, column) + carIndex * 4);
+    }
+
+    private ByteBuffer columnSlice(long tick, TelemetryColumn column) {
+        ByteBuffer chunk = chunkFor(tick).duplicate();
+        int start = offset(tick, column);
+        chunk.position(start).limit(start + columnBytes);
+        return chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int offset(long tick, TelemetryColumn column) {
+        return (int) (tick % ticksPerChunk) * tickBytes + column.ordinal() * columnBytes;
+    }
+
+    private MappedByteBuffer chunkFor(long tick) {
+        if (tick < 0 || tick >= tickCount) {
+            throw new IndexOutOfBoundsException("Tick " + tick + " of " + tickCount);
+        }
+        int index = (int) (tick / ticksPerChunk);
+        MappedByteBuffer chunk = chunks[index];
+        if (chunk == null) {
+            long chunkBytes = (long) ticksPerChunk * tickBytes;
+            long start = dataStart + index * chunkBytes;
+            long length = Math.min(chunkBytes, dataStart + tickCount * tickBytes - start);
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map telemetry chunk " + index, e);
+            }
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks[index] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Closes the underlying file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * The TelemetryRecorder captures a per-tick trace of every car into a memory-mapped file.
+ *
+ * File layout (little endian):
+ *   Header: magic, version, car count, ticks per chunk, tick count, then one car ID per car
+ *   Data:   one record per tick; each record holds every {@link TelemetryColumn}
+ *           as a contiguous block of one 4-byte value per car
+ *
+ * The data region is mapped with {@link FileChannel#map} one chunk at a time, and every
+ * chunk holds a whole number of ticks, so recording a tick is only a few absolute puts
+ * into the current mapping with no object allocation.
+ * The tick count in the header is updated on every tick, so a trace stays readable
+ * up to the last recorded tick even if the program is killed. Closing trims the
+ * file to the ticks recorded, dropping the unused end of the last chunk.
+ *
+ * The recorder may be closed from another thread, such as a shutdown hook, while
+ * the race runs: closing waits for a tick being recorded, and ticks after it are
+ * ignored.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TelemetryRecorder implements RaceListener, AutoCloseable {
+    public static final int MAGIC = 0x544C4D31; // "TLM1"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_TICKS_PER_CHUNK = 16384;
+
+    // Offsets of the fixed header fields.
+    static final int CAR_COUNT_OFFSET = 8;
+    static final int TICKS_PER_CHUNK_OFFSET = 12;
+    static final int TICK_COUNT_OFFSET = 16;
+    static final int CAR_IDS_OFFSET = 24;
+
+    private static final TelemetryColumn[] COLUMNS = TelemetryColumn.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int carCount;
+    private final int columnBytes;
+    private final int tickBytes;
+    private final int ticksPerChunk;
+    private final long dataStart;
+
+    private MappedByteBuffer chunk;
+    private long chunkIndex = -1;
+    private int ticksInChunk;
+    private long tickCount;
+    private boolean closed;
+
+    /**
+     * Creates a recorder for the given cars using the default chunk size.
+     * @param path file to write; an existing file is overwritten
+     * @param cars cars to record, in the order they will be passed to {@link #record(List)}
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public TelemetryRecorder(Path path, List<Car> cars) throws IOException {
+        this(path, cars, DEFAULT_TICKS_PER_CHUNK);
+    }
+
+    /**
+     * Creates a recorder for the given cars.
+     * @param path          file to write; an existing file is overwritten
+     * @param cars          cars to record, in the order they will be passed to {@link #record(List)}
+     * @param ticksPerChunk number of ticks held by each mapped chunk
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public TelemetryRecorder(Path path, List<Car> cars, int ticksPerChunk) throws IOException {
+        this.carCount = cars.size();
+        this.columnBytes = carCount * 4;
+        this.tickBytes = columnBytes * COLUMNS.length;
+        if (ticksPerChunk < 1 || (long) ticksPerChunk * tickBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid chunk size: " + ticksPerChunk + " ticks");
+        }
+        this.ticksPerChunk = ticksPerChunk;
+        this.dataStart = headerSize(carCount);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(CAR_COUNT_OFFSET, carCount);
+        header.putInt(TICKS_PER_CHUNK_OFFSET, ticksPerChunk);
+        header.putLong(TICK_COUNT_OFFSET, 0L);
+        for (int i = 0; i < carCount; i++) {
+            header.putInt(CAR_IDS_OFFSET + i * 4, cars.get(i).getId());
+        }
+    }
+
+    /**
+     * Returns the size of the file header for the given number of cars.
+     * @param carCount number of recorded cars
+     * @return header size in bytes
+     */
+    static long headerSize(int carCount) {
+        return CAR_IDS_OFFSET + 4L * carCount;
+    }
+
+    /**
+     * Records the current tick of the race.
+     * @param race the race that was just advanced
+     */
+    @Override
+    public void onTick(Race race) {
+        record(race.getCars());
+    }
+
+    /**
+     * Flushes the trace to disk once the race is over.
+     * @param race the finished race
+     */
+    @Override
+    public void onRaceFinished(Race race) {
+        flush();
+    }
+
+    /**
+     * Appends one tick for the given cars.
+     * @param cars the cars, in the same order and number as when the recorder was created
+     */
+    public synchronized void record(List<Car> cars) {
+        if (closed) {
+            return;
+        }
+        if (ticksInChunk == ticksPerChunk || chunk == null) {
+            nextChunk();
+        }
+        MappedByteBuffer buf = chunk;
+        int cb = columnBytes;
+        int base = ticksInChunk * tickBytes;
+        for (int i = 0; i < carCount; i++) {
+            Car car = cars.get(i);
+            int o = base + i * 4;
+            buf.putFloat(o, car.getCurrentX());
+            buf.putFloat(o + cb, car.getCurrentY());
+            buf.putFloat(o + 2 * cb, car.getCurrentAngle());
+            buf.putFloat(o + 3 * cb, car.getCurrentSpeed());
+            buf.putFloat(o + 4 * cb, car.getLateralOffset());
+            buf.putInt(o + 5 * cb, car.getCurrentLap());
+            buf.putInt(o + 6 * cb, car.getPitStopTimer());
+        }
+        ticksInChunk++;
+        tickCount++;
+        header.putLong(TICK_COUNT_OFFSET, tickCount);
+    }
+
+    /**
+     * Maps the next chunk of the file, growing it as needed.
+     */
+    private void nextChunk() {
+        if (chunk != null) {
+            chunk.force();
+        }
+        chunkIndex++;
+        long chunkBytes = (long) ticksPerChunk * tickBytes;
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, dataStart + chunkIndex * chunkBytes, chunkBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow telemetry file", e);
+        }
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        ticksInChunk = 0;
+    }
+
+    /**
+     * Returns the number of ticks recorded so far.
+     * @return tick count
+     */
+    public synchronized long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Forces all recorded ticks to the storage device.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        if (chunk != null) {
+            chunk.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Flushes the trace, trims the file to the recorded ticks and closes it. Closing
+     * again does nothing.
+     * @throws IOException if the file cannot be trimmed or closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        // Nothing writes through the mappings from here on; drop the last one before
+        // cutting the file under it.
+        chunk = null;
+        channel.truncate(dataStart + tickCount * tickBytes);
+        channel.close();
+    }
+}
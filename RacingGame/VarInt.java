@@ -0,0 +1,61 @@
+/**
+ * Helpers for writing and reading variable-length integers.
+ * Values are stored seven bits per byte with the high bit marking a continuation,
+ * and signed values are zigzag encoded first so small negative deltas stay short.
+ */
+
+import java.nio.ByteBuffer;
+
+public final class VarInt {
+    private VarInt() {
+    }
+
+    /**
+     * Writes an unsigned variable-length int.
+     * @param out   destination buffer
+     * @param value value treated as unsigned
+     */
+    public static void putUnsigned(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length int.
+     * @param in source buffer
+     * @return decoded value
+     */
+    public static int getUnsigned(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Writes a signed variable-length int using zigzag encoding.
+     * @param out   destination buffer
+     * @param value signed value
+     */
+    public static void putSigned(ByteBuffer out, int value) {
+        putUnsigned(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a zigzag encoded signed variable-length int.
+     * @param in source buffer
+     * @return decoded value
+     */
+    public static int getSigned(ByteBuffer in) {
+        int raw = getUnsigned(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -3,10 +3,17 @@
  * Each wheel has a grip level and a wear-based condition that degrades
  * over time. The wheel's effective grip decreases as the condition worsens.
  *
+ * A Wheel describes the tyres a car starts with. During the race a {@link Car}
+ * keeps its wheels' conditions and grips in packed float arrays and wears them
+ * all at once with {@link #wear(float[], float[], float)}.
+ *
  * Developed by: Lucas Martins, Gabi
  */
 
 public class Wheel {
+    /** Condition lost per pixel travelled by a wheel with grip 1.0; grippier compounds wear faster. */
+    public static final float WEAR_PER_PIXEL = 0.00015f;
+
     private float condition;  // 1.0 => new, 0 => worn out
     private final float gripLevel;
 
@@ -21,11 +28,19 @@ public class Wheel {
     }
 
     /**
-     * Simulates wear on the wheel by reducing its condition slightly.
-     * Minimum value is 0.0.
+     * Returns the wheel's current condition.
+     * @return condition from 0.0 (worn out) to 1.0 (new)
      */
-    public void wearDown() {
-        condition = Math.max(0, condition - 0.01f);
+    public float getCondition() {
+        return condition;
+    }
+
+    /**
+     * Returns the grip of the wheel when new.
+     * @return base grip factor
+     */
+    public float getBaseGripLevel() {
+        return gripLevel;
     }
 
     /**
@@ -35,4 +50,37 @@ public class Wheel {
     public float getGripLevel() {
         return gripLevel * condition;
     }
+
+    /**
+     * Wears a set of packed wheels over the distance travelled in one tick.
+     * Condition never drops below 0.0.
+     * @param condition per-wheel condition, updated in place
+     * @param grip      per-wheel base grip
+     * @param distance  distance travelled, in pixels
+     * @return the average effective grip of the set after wearing
+     */
+    public static float wear(float[] condition, float[] grip, float distance) {
+        float wear = WEAR_PER_PIXEL * distance;
+        float total = 0f;
+        for (int i = 0; i < condition.length; i++) {
+            float c = Math.max(0f, condition[i] - wear * grip[i]);
+            condition[i] = c;
+            total += grip[i] * c;
+        }
+        return total / condition.length;
+    }
+
+    /**
+     * Returns the average effective grip of a set of packed wheels.
+     * @param condition per-wheel condition
+     * @param grip      per-wheel base grip
+     * @return average of grip x condition
+     */
+    public static float averageGrip(float[] condition, float[] grip) {
+        float total = 0f;
+        for (int i = 0; i < condition.length; i++) {
+            total += grip[i] * condition[i];
+        }
+        return total / condition.length;
+    }
 }
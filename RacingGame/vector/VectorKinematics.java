@@ -0,0 +1,96 @@
+/**
+ * The SIMD kernel for {@link CarKinematics}, built on the incubating Vector API.
+ *
+ * Cars are moved a full vector of lanes at a time with exactly the float
+ * operations of {@code CarKinematics.place}, so results match the scalar kernel
+ * bit for bit. Lanes whose car reaches a checkpoint this tick are left untouched
+ * by the vector stores and handed to the scalar {@code stepCar}, as is the tail
+ * that does not fill a whole vector.
+ *
+ * This file lives apart from the rest of the game because it needs the incubator
+ * module to compile and to run:
+ *
+ *   javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp out -d out vector/VectorKinematics.java
+ *   java --add-modules jdk.incubator.vector -cp out KinematicsBenchmark
+ *
+ * Without it {@link CarKinematics#bestKernel()} quietly uses the scalar kernel.
+ */
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKinematics implements CarKinematics.Kernel {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void step(CarKinematics cars) {
+        int n = cars.size;
+        int lanes = FLOATS.length();
+        int bound = FLOATS.loopBound(n);
+        float k = CarKinematics.DISTANCE_PER_SPEED;
+        for (int i = 0; i < bound; i += lanes) {
+            FloatVector speed = FloatVector.fromArray(FLOATS, cars.speed, i);
+            FloatVector arc = FloatVector.fromArray(FLOATS, cars.arcLength, i);
+            FloatVector p = FloatVector.fromArray(FLOATS, cars.progress, i)
+                    .add(speed.mul(k).div(arc));
+            VectorMask<Float> inSegment = p.compare(VectorOperators.LT, 1f);
+
+            FloatVector a = FloatVector.fromArray(FLOATS, cars.segmentStart, i)
+                    .add(p.mul(FloatVector.fromArray(FLOATS, cars.segmentSweep, i)));
+            a = a.sub(CarKinematics.TWO_PI, a.compare(VectorOperators.GE, CarKinematics.TWO_PI));
+
+            // Reduce to r in [-pi/2, pi/2]: sin(a) = -sin(r), cos(a) = +/-cos(r).
+            FloatVector q = a.sub(CarKinematics.PI);
+            VectorMask<Float> high = q.compare(VectorOperators.GT, CarKinematics.HALF_PI);
+            VectorMask<Float> low = q.compare(VectorOperators.LT, -CarKinematics.HALF_PI);
+            FloatVector r = q.blend(q.neg().add(CarKinematics.PI), high)
+                    .blend(q.neg().sub(CarKinematics.PI), low);
+            FloatVector r2 = r.mul(r);
+            FloatVector ps = r2.mul(CarKinematics.S11).add(CarKinematics.S9);
+            ps = r2.mul(ps).add(CarKinematics.S7);
+            ps = r2.mul(ps).add(CarKinematics.S5);
+            ps = r2.mul(ps).add(CarKinematics.S3);
+            FloatVector sinR = r.mul(r2).mul(ps).add(r);
+            FloatVector pc = r2.mul(CarKinematics.C12).add(CarKinematics.C10);
+            pc = r2.mul(pc).add(CarKinematics.C8);
+            pc = r2.mul(pc).add(CarKinematics.C6);
+            pc = r2.mul(pc).add(CarKinematics.C4);
+            pc = r2.mul(pc).add(CarKinematics.C2);
+            FloatVector cosR = r2.mul(pc).add(1f);
+            FloatVector sin = sinR.neg();
+            FloatVector cos = cosR.neg().blend(cosR, high.or(low));
+
+            FloatVector tx = sin.mul(-CarKinematics.A);
+            FloatVector ty = cos.mul(CarKinematics.B);
+            FloatVector norm = tx.mul(tx).add(ty.mul(ty)).sqrt();
+            FloatVector nx = ty.div(norm);
+            FloatVector ny = tx.neg().div(norm);
+            FloatVector lateral = FloatVector.fromArray(FLOATS, cars.lateral, i);
+            FloatVector x = cos.mul(CarKinematics.A).add(CarKinematics.CENTER_X).add(lateral.mul(nx));
+            FloatVector y = sin.mul(CarKinematics.B).add(CarKinematics.CENTER_Y).add(lateral.mul(ny));
+
+            p.intoArray(cars.progress, i, inSegment);
+            a.intoArray(cars.angle, i, inSegment);
+            x.intoArray(cars.x, i, inSegment);
+            y.intoArray(cars.y, i, inSegment);
+
+            if (!inSegment.allTrue()) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    if (!inSegment.laneIsSet(lane)) {
+                        cars.stepCar(i + lane);
+                    }
+                }
+            }
+        }
+        for (int i = bound; i < n; i++) {
+            cars.stepCar(i);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector x" + FLOATS.length();
+    }
+}